@@ -0,0 +1,138 @@
+package fr.cryptohash.test;
+
+import fr.cryptohash.Shabal256;
+import nxt.crypto.Shabal256Lanes;
+
+import java.util.Random;
+
+/**
+ * This class is a program entry point; it checks that every lane of
+ * {@link Shabal256Lanes} hashes to the same output as {@link Shabal256}.
+ */
+
+public class TestShabal256Lanes {
+
+	private static final int[] LENGTHS = {
+		0, 1, 31, 32, 55, 63, 64, 65, 127, 128, 129, 200, 4096, 4112
+	};
+
+	/**
+	 * Program entry. Parameters are ignored.
+	 *
+	 * @param args   the parameter input (ignored)
+	 */
+	public static void main(String[] args)
+	{
+		Random random = new Random(0x5ABA1L);
+
+		testLanes(random, 1, 1);
+		testLanes(random, 16, 5);
+		testLanes(random, 5, 5);
+		testLanes(random, 16, 16);
+		reportSuccess("Shabal256Lanes");
+
+		testSplitUpdates(random, 16);
+		reportSuccess("Shabal256Lanes split updates");
+
+		testOffsets(random, 16);
+		reportSuccess("Shabal256Lanes offsets");
+	}
+
+	private static final void fail(String message)
+	{
+		throw new RuntimeException("test failed: " + message);
+	}
+
+	private static final void assertEquals(byte[] b1, byte[] b2, String message)
+	{
+		if (b1.length != b2.length)
+			fail(message);
+		for (int i = 0; i < b1.length; i ++)
+			if (b1[i] != b2[i])
+				fail(message);
+	}
+
+	private static final void reportSuccess(String name)
+	{
+		System.out.println("===== test " + name + " passed");
+	}
+
+	private static byte[][] messages(Random random, int lanes, int used, int len)
+	{
+		byte[][] in = new byte[lanes][len];
+		for (int l = 0; l < used; l ++)
+			random.nextBytes(in[l]);
+		/*
+		 * Unused lanes repeat the first message, as ScoopGenerator
+		 * fills a partial batch.
+		 */
+		for (int l = used; l < lanes; l ++)
+			System.arraycopy(in[0], 0, in[l], 0, len);
+		return in;
+	}
+
+	private static void testLanes(Random random, int lanes, int used)
+	{
+		Shabal256Lanes md = new Shabal256Lanes(lanes);
+		Shabal256 ref = new Shabal256();
+		for (int len : LENGTHS) {
+			byte[][] in = messages(random, lanes, used, len);
+			byte[][] out = new byte[lanes][32];
+			md.update(in, 0, len);
+			md.digest(out, 0);
+			for (int l = 0; l < lanes; l ++)
+				assertEquals(out[l], ref.digest(in[l]), "lane " + l
+					+ " of " + lanes + ", " + used + " used, length "
+					+ len);
+		}
+	}
+
+	/*
+	 * Feeds each message in uneven pieces, so the partial block buffer
+	 * is filled across several calls.
+	 */
+	private static void testSplitUpdates(Random random, int lanes)
+	{
+		Shabal256Lanes md = new Shabal256Lanes(lanes);
+		Shabal256 ref = new Shabal256();
+		int[] pieces = { 1, 7, 30, 64, 3, 100 };
+		for (int len : LENGTHS) {
+			byte[][] in = messages(random, lanes, lanes, len);
+			byte[][] out = new byte[lanes][32];
+			int off = 0;
+			for (int p = 0; off < len; p ++) {
+				int n = Math.min(pieces[p % pieces.length], len - off);
+				md.update(in, off, n);
+				off += n;
+			}
+			md.digest(out, 0);
+			for (int l = 0; l < lanes; l ++)
+				assertEquals(out[l], ref.digest(in[l]), "lane " + l
+					+ ", split length " + len);
+		}
+	}
+
+	/*
+	 * Hashes from and digests into the middle of the lane buffers, the
+	 * way the plot hash chain does.
+	 */
+	private static void testOffsets(Random random, int lanes)
+	{
+		Shabal256Lanes md = new Shabal256Lanes(lanes);
+		Shabal256 ref = new Shabal256();
+		for (int len : LENGTHS) {
+			byte[][] in = messages(random, lanes, lanes, len + 96);
+			byte[][] out = new byte[lanes][64];
+			md.update(in, 40, len);
+			md.digest(out, 16);
+			for (int l = 0; l < lanes; l ++) {
+				ref.update(in[l], 40, len);
+				byte[] expected = ref.digest();
+				byte[] actual = new byte[32];
+				System.arraycopy(out[l], 16, actual, 0, 32);
+				assertEquals(actual, expected, "lane " + l
+					+ ", offset length " + len);
+			}
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package nxt;
 
 import nxt.crypto.Crypto;
+import nxt.crypto.Digests;
 import nxt.crypto.EncryptedData;
 import nxt.db.NxtIterator;
 import nxt.db.VersionedBatchEntityTable;
@@ -217,7 +218,7 @@ public  class Account {
     }
 
     public static long getId(byte[] publicKey) {
-        byte[] publicKeyHash = Crypto.sha256().digest(publicKey);
+        byte[] publicKeyHash = Digests.sha256(publicKey);
         return Convert.fullHashToId(publicKeyHash);
     }
 
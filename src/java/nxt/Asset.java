@@ -14,6 +14,10 @@ public class Asset {
         return assetTable.getAll(from, to);
     }
 
+    public static NxtIterator<Asset> getAllAssets(String continuationToken, int limit) {
+        return assetTable.getAll(continuationToken, limit);
+    }
+
     public static int getCount() {
         return assetTable.getCount();
     }
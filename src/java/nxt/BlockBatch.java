@@ -0,0 +1,103 @@
+package nxt;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary form of a list of blocks as sent in reply to getNextBlocks.
+ *
+ * The batch starts with the number of blocks. Every block follows as its length-prefixed {@link BlockImpl#getBytes()},
+ * which contain the number of transactions, and then as many length-prefixed {@link TransactionImpl#getBytes()}.
+ * Lengths and counts are 4 byte big-endian integers.
+ */
+public final class BlockBatch {
+
+    /** Longest block bytes, the fixed fields plus at most a whole payload of AT bytes */
+    private static final int MAX_BLOCK_BYTES = 240 + Constants.MAX_PAYLOAD_LENGTH;
+
+    private BlockBatch() {} //never
+
+    /**
+     * Only blocks whose transactions are all signed can be sent in binary form, the bytes of other transactions
+     * don't contain their sender's public key.
+     */
+    public static boolean isEncodable(List<? extends Block> blocks) {
+        for (Block block : blocks) {
+            for (Transaction transaction : block.getTransactions()) {
+                if (!transaction.getType().isSigned()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    public static void write(List<? extends Block> blocks, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(blocks.size());
+        for (Block block : blocks) {
+            byte[] blockBytes = ((BlockImpl) block).getBytes();
+            data.writeInt(blockBytes.length);
+            data.write(blockBytes);
+            for (Transaction transaction : block.getTransactions()) {
+                byte[] transactionBytes = transaction.getBytes();
+                data.writeInt(transactionBytes.length);
+                data.write(transactionBytes);
+            }
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads the blocks of a batch without parsing them, entry 0 of every element are the block bytes and the
+     * remaining entries the bytes of its transactions. Use {@link #parseBlock(byte[][])} to get the block.
+     */
+    public static List<byte[][]> read(InputStream in, int maxBlocks) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        int count = data.readInt();
+        if (count < 0 || count > maxBlocks) {
+            throw new IOException("Invalid number of blocks: " + count);
+        }
+        List<byte[][]> blocks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] blockBytes = readBytes(data, MAX_BLOCK_BYTES);
+            if (blockBytes.length < 20) {
+                throw new IOException("Block bytes too short: " + blockBytes.length);
+            }
+            int transactionCount = (blockBytes[16] & 0xFF) | ((blockBytes[17] & 0xFF) << 8)
+                    | ((blockBytes[18] & 0xFF) << 16) | ((blockBytes[19] & 0xFF) << 24);
+            if (transactionCount < 0 || transactionCount > Constants.MAX_NUMBER_OF_TRANSACTIONS) {
+                throw new IOException("Invalid number of transactions: " + transactionCount);
+            }
+            byte[][] entry = new byte[1 + transactionCount][];
+            entry[0] = blockBytes;
+            for (int j = 1; j <= transactionCount; j++) {
+                entry[j] = readBytes(data, Constants.MAX_PAYLOAD_LENGTH);
+            }
+            blocks.add(entry);
+        }
+        return blocks;
+    }
+
+    static BlockImpl parseBlock(byte[][] entry) throws NxtException.ValidationException {
+        byte[][] transactionBytes = new byte[entry.length - 1][];
+        System.arraycopy(entry, 1, transactionBytes, 0, transactionBytes.length);
+        return BlockImpl.parseBlock(entry[0], transactionBytes);
+    }
+
+    private static byte[] readBytes(DataInputStream data, int maxLength) throws IOException {
+        int length = data.readInt();
+        if (length < 0 || length > maxLength) {
+            throw new IOException("Invalid length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        data.readFully(bytes);
+        return bytes;
+    }
+
+}
@@ -0,0 +1,354 @@
+package nxt;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import nxt.peer.Peer;
+import nxt.peer.Peers;
+import nxt.util.Convert;
+import nxt.util.JSON;
+import nxt.util.ThreadPool;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Downloads the blocks following a block from several peers at once.
+ *
+ * The peer the download was started with provides the ids of the next blocks, which are split into segments of
+ * consecutive blocks. Every participating peer takes the next open segment as soon as it is done with its previous
+ * one, so faster peers download more of them. A segment is only accepted if it contains exactly the announced blocks,
+ * peers which are on a different chain, fail or send unrequested blocks drop out and their segment is taken over by
+ * the remaining ones, as is a segment whose peer stalls.
+ */
+final class BlockDownloader {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlockDownloader.class);
+
+    /** Maximum number of blocks and block ids returned by a peer for one request */
+    static final int MAX_BLOCKS = 1440;
+
+    private static final int maxPeers = Nxt.getIntProperty("burst.downloadPeers") == 0 ? 4 : Nxt.getIntProperty("burst.downloadPeers");
+    private static final int segmentSize = Nxt.getIntProperty("burst.downloadSegmentSize") == 0 ? 180 : Nxt.getIntProperty("burst.downloadSegmentSize");
+    private static final int segmentTimeout = Nxt.getIntProperty("burst.downloadSegmentTimeout") == 0 ? 30000 : Nxt.getIntProperty("burst.downloadSegmentTimeout");
+
+    private static final AtomicInteger threadNumber = new AtomicInteger();
+    private static final ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, maxPeers), runnable -> {
+        Thread thread = new Thread(runnable, "DownloadBlocks-" + threadNumber.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final Timer segmentTimer = Nxt.metrics.timer(MetricRegistry.name(BlockDownloader.class, "segment"));
+    private static final Meter reassignedSegments = Nxt.metrics.meter(MetricRegistry.name(BlockDownloader.class, "reassigned"));
+
+    private static final Peer.ResponseReader<List<?>> nextBlocksReader = new Peer.ResponseReader<List<?>>() {
+
+        @Override
+        public List<?> readBinary(InputStream in) throws IOException {
+            return BlockBatch.read(in, MAX_BLOCKS);
+        }
+
+        @Override
+        public List<?> readJSON(JSONObject response) {
+            return response == null ? null : (JSONArray) response.get("nextBlocks");
+        }
+
+    };
+
+    private BlockDownloader() {} //never
+
+    /**
+     * Returns the blocks following blockId in chain order, each with the peer it was downloaded from. Only the blocks
+     * up to the first segment that couldn't be downloaded are returned, null if peer didn't respond.
+     */
+    static List<BlockImpl> download(Peer peer, long blockId) {
+        List<Peer> helpers = getHelpers(peer);
+        if (helpers.isEmpty()) {
+            return getNextBlocks(peer, blockId, MAX_BLOCKS, null);
+        }
+        List<Long> blockIds = getNextBlockIds(peer, blockId);
+        if (blockIds == null) {
+            return null;
+        }
+        if (blockIds.size() <= segmentSize) {
+            return getNextBlocks(peer, blockId, MAX_BLOCKS, null);
+        }
+
+        List<Segment> segments = new ArrayList<>();
+        for (int from = 0; from < blockIds.size(); from += segmentSize) {
+            long previousBlockId = from == 0 ? blockId : blockIds.get(from - 1);
+            segments.add(new Segment(previousBlockId, blockIds.subList(from, Math.min(from + segmentSize, blockIds.size()))));
+        }
+
+        List<Peer> downloadPeers = new ArrayList<>(helpers.size() + 1);
+        downloadPeers.add(peer);
+        downloadPeers.addAll(helpers);
+        Download download = new Download(segments, downloadPeers.size());
+        for (Peer downloadPeer : downloadPeers) {
+            pool.submit(() -> download.run(downloadPeer));
+        }
+
+        List<BlockImpl> result = new ArrayList<>(blockIds.size());
+        try {
+            for (Segment segment : segments) {
+                List<BlockImpl> blocks = download.await(segment);
+                if (blocks == null) {
+                    break;
+                }
+                result.addAll(blocks);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            download.stop();
+        }
+        logger.debug("Downloaded " + result.size() + " of " + blockIds.size() + " blocks after " + Convert.toUnsignedLong(blockId)
+                + " from " + downloadPeers.size() + " peers");
+        return result;
+    }
+
+    static void shutdown() {
+        ThreadPool.shutdownExecutor(pool);
+    }
+
+    private static List<Peer> getHelpers(Peer peer) {
+        if (maxPeers <= 1) {
+            return Collections.emptyList();
+        }
+        List<Peer> helpers = new ArrayList<>();
+        for (Peer candidate : Peers.getPeers(Peer.State.CONNECTED)) {
+            if (candidate != peer && !candidate.isBlacklisted()) {
+                helpers.add(candidate);
+            }
+        }
+        Collections.shuffle(helpers);
+        return helpers.size() < maxPeers ? helpers : helpers.subList(0, maxPeers - 1);
+    }
+
+    private static List<Long> getNextBlockIds(Peer peer, long blockId) {
+        JSONObject request = new JSONObject();
+        request.put("requestType", "getNextBlockIds");
+        request.put("blockId", Convert.toUnsignedLong(blockId));
+        JSONObject response = peer.send(JSON.prepareRequest(request));
+        if (response == null) {
+            return null;
+        }
+        JSONArray nextBlockIds = (JSONArray) response.get("nextBlockIds");
+        if (nextBlockIds == null) {
+            return null;
+        }
+        // prevent overloading with blockIds
+        if (nextBlockIds.size() > MAX_BLOCKS) {
+            logger.debug("Obsolete or rogue peer " + peer.getPeerAddress() + " sends too many nextBlockIds, blacklisting");
+            peer.blacklist();
+            return null;
+        }
+        List<Long> blockIds = new ArrayList<>(nextBlockIds.size());
+        for (Object nextBlockId : nextBlockIds) {
+            blockIds.add(Convert.parseUnsignedLong((String) nextBlockId));
+        }
+        return blockIds;
+    }
+
+    /**
+     * Requests up to limit blocks following blockId. If expectedIds is given, every block has to be the expected one
+     * and null is returned otherwise. Blocks that can't be parsed get the peer blacklisted, so do blocks which don't
+     * build on the requested one.
+     */
+    private static List<BlockImpl> getNextBlocks(Peer peer, long blockId, int limit, List<Long> expectedIds) {
+
+        JSONObject request = new JSONObject();
+        request.put("requestType", "getNextBlocks");
+        request.put("blockId", Convert.toUnsignedLong(blockId));
+        request.put("binary", true);
+        request.put("limit", limit);
+        logger.debug("Getting next Blocks after " + blockId + " from " + peer.getPeerAddress());
+        List<?> nextBlocks = peer.send(JSON.prepareRequest(request), nextBlocksReader);
+        if (nextBlocks == null) {
+            return null;
+        }
+        // prevent overloading with blocks
+        if (nextBlocks.size() > MAX_BLOCKS) {
+            logger.debug("Obsolete or rogue peer " + peer.getPeerAddress() + " sends too many nextBlocks, blacklisting");
+            peer.blacklist();
+            return null;
+        }
+        logger.debug("Got " + nextBlocks.size() + " Blocks after " + blockId + " from " + peer.getPeerAddress());
+
+        List<BlockImpl> blocks = new ArrayList<>(Math.min(limit, nextBlocks.size()));
+        long previousBlockId = blockId;
+        for (Object o : nextBlocks) {
+            if (blocks.size() == limit) {
+                break;
+            }
+            BlockImpl block;
+            try {
+                if (o instanceof byte[][]) {
+                    block = BlockBatch.parseBlock((byte[][]) o);
+                } else {
+                    block = BlockImpl.parseBlock((JSONObject) o);
+                }
+            } catch (RuntimeException | NxtException.ValidationException e) {
+                logger.info("Failed to parse block: " + e.toString(), e);
+                peer.blacklist(e);
+                return expectedIds == null ? blocks : null;
+            }
+            if (block.getPreviousBlockId() != previousBlockId) {
+                logger.info("Peer sent unrequested block. Blacklisting...");
+                peer.blacklist();
+                return expectedIds == null ? blocks : null;
+            }
+            if (expectedIds != null && block.getId() != expectedIds.get(blocks.size())) {
+                logger.debug("Peer " + peer.getPeerAddress() + " is on a different chain");
+                return null;
+            }
+            block.setPeer(peer);
+            blocks.add(block);
+            previousBlockId = block.getId();
+        }
+        return blocks;
+    }
+
+    private static final class Segment {
+
+        private final long previousBlockId;
+        private final List<Long> blockIds;
+        private final CompletableFuture<List<BlockImpl>> result = new CompletableFuture<>();
+
+        private Segment(long previousBlockId, List<Long> blockIds) {
+            this.previousBlockId = previousBlockId;
+            this.blockIds = blockIds;
+        }
+
+        /**
+         * Downloads the segment from peer, in several requests if the peer's response size limit is hit.
+         */
+        private List<BlockImpl> download(Peer peer) {
+            List<BlockImpl> blocks = new ArrayList<>(blockIds.size());
+            long blockId = previousBlockId;
+            while (blocks.size() < blockIds.size()) {
+                List<Long> expectedIds = blockIds.subList(blocks.size(), blockIds.size());
+                List<BlockImpl> nextBlocks = getNextBlocks(peer, blockId, expectedIds.size(), expectedIds);
+                if (nextBlocks == null || nextBlocks.isEmpty()) {
+                    return null;
+                }
+                blocks.addAll(nextBlocks);
+                blockId = nextBlocks.get(nextBlocks.size() - 1).getId();
+            }
+            return blocks;
+        }
+    }
+
+    /**
+     * Open segments of one call to {@link #download}, shared by the workers of all participating peers.
+     */
+    private static final class Download {
+
+        private final List<Segment> segments;
+        private final BlockingDeque<Segment> open;
+        private final AtomicInteger activePeers;
+        private volatile boolean stopped;
+
+        private Download(List<Segment> segments, int peers) {
+            this.segments = segments;
+            this.open = new LinkedBlockingDeque<>(segments);
+            this.activePeers = new AtomicInteger(peers);
+        }
+
+        private void run(Peer peer) {
+            try {
+                while (!stopped) {
+                    // keep waiting while segments are unfinished, a stalled one may be offered again
+                    Segment segment = open.poll(1, TimeUnit.SECONDS);
+                    if (segment == null) {
+                        if (isDone()) {
+                            return;
+                        }
+                        continue;
+                    }
+                    if (segment.result.isDone()) {
+                        continue;
+                    }
+                    List<BlockImpl> blocks;
+                    Timer.Context context = segmentTimer.time();
+                    try {
+                        blocks = segment.download(peer);
+                    } finally {
+                        context.stop();
+                    }
+                    if (blocks == null) {
+                        // give the segment to the other peers and drop out
+                        if (!segment.result.isDone()) {
+                            open.addFirst(segment);
+                            reassignedSegments.mark();
+                        }
+                        return;
+                    }
+                    segment.result.complete(blocks);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                logger.info("Error downloading blocks from " + peer.getPeerAddress(), e);
+            } finally {
+                if (activePeers.decrementAndGet() == 0) {
+                    // nobody left to take over the open segments
+                    for (Segment segment : segments) {
+                        segment.result.complete(null);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Waits for the segment, if it takes longer than the segment timeout it is offered to the other peers once.
+         */
+        private List<BlockImpl> await(Segment segment) throws InterruptedException {
+            for (int attempt = 0; attempt < 2; attempt++) {
+                try {
+                    return segment.result.get(segmentTimeout, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    if (attempt == 0 && !open.contains(segment)) {
+                        open.addFirst(segment);
+                        reassignedSegments.mark();
+                    }
+                } catch (ExecutionException e) {
+                    return null;
+                }
+            }
+            return null;
+        }
+
+        private boolean isDone() {
+            for (Segment segment : segments) {
+                if (!segment.result.isDone()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void stop() {
+            stopped = true;
+            open.clear();
+        }
+    }
+
+}
@@ -1,6 +1,8 @@
 package nxt;
 
 import nxt.crypto.Crypto;
+import nxt.crypto.Digests;
+import nxt.crypto.SignatureBatch;
 import nxt.peer.Peer;
 import nxt.util.Convert;
 import org.json.simple.JSONArray;
@@ -16,7 +18,9 @@ import java.util.*;
 public final class BlockImpl implements Block {
 
     private static final Logger logger = LoggerFactory.getLogger(BlockImpl.class);
-    private final TransactionDb transactionDb = Nxt.getDbs().getTransactionDb();
+
+    /** Number of transaction signatures checked by a single task when pre-verifying */
+    static final int SIGNATURES_PER_TASK = 32;
     private final int version;
     private final int timestamp;
     private final long previousBlockId;
@@ -138,7 +142,7 @@ public final class BlockImpl implements Block {
 
     @Override
     public byte[] getBlockHash() {
-    	return Crypto.sha256().digest(getBytes());
+    	return Digests.sha256(getBytes());
     }
 
     @Override
@@ -179,7 +183,7 @@ public final class BlockImpl implements Block {
     @Override
     public List<TransactionImpl> getTransactions() {
     	if (blockTransactions == null) {
-            this.blockTransactions = Collections.unmodifiableList(transactionDb.findBlockTransactions(getId()));
+            this.blockTransactions = Collections.unmodifiableList(Nxt.getDbs().getTransactionDb().findBlockTransactions(getId()));
             for (TransactionImpl transaction : this.blockTransactions) {
                 transaction.setBlock(this);
             }
@@ -217,7 +221,7 @@ public final class BlockImpl implements Block {
             if (blockSignature == null) {
                 throw new IllegalStateException("Block is not signed yet");
             }
-            byte[] hash = Crypto.sha256().digest(getBytes());
+            byte[] hash = Digests.sha256(getBytes());
             BigInteger bigInteger = new BigInteger(1, new byte[] {hash[7], hash[6], hash[5], hash[4], hash[3], hash[2], hash[1], hash[0]});
             id = bigInteger.longValue();
             stringId = bigInteger.toString();
@@ -322,6 +326,71 @@ public final class BlockImpl implements Block {
     	}
     }
 
+    /**
+     * Inverse of {@link #getBytes()}, the transactions are given as their {@link TransactionImpl#getBytes()}.
+     * Everything between the nonce and the block signature are the block's AT bytes.
+     */
+    static BlockImpl parseBlock(byte[] blockBytes, byte[][] transactionBytes) throws NxtException.ValidationException {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(blockBytes);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            int version = buffer.getInt();
+            int timestamp = buffer.getInt();
+            long previousBlock = buffer.getLong();
+            int transactionCount = buffer.getInt();
+            long totalAmountNQT;
+            long totalFeeNQT;
+            if (version < 3) {
+                totalAmountNQT = buffer.getInt() * Constants.ONE_NXT;
+                totalFeeNQT = buffer.getInt() * Constants.ONE_NXT;
+            } else {
+                totalAmountNQT = buffer.getLong();
+                totalFeeNQT = buffer.getLong();
+            }
+            int payloadLength = buffer.getInt();
+            byte[] payloadHash = new byte[32];
+            buffer.get(payloadHash);
+            byte[] generatorPublicKey = new byte[32];
+            buffer.get(generatorPublicKey);
+            byte[] generationSignature = new byte[32];
+            buffer.get(generationSignature);
+            byte[] previousBlockHash = null;
+            if (version > 1) {
+                previousBlockHash = new byte[32];
+                buffer.get(previousBlockHash);
+            }
+            long nonce = buffer.getLong();
+            int atLength = buffer.remaining() - 64;
+            if (atLength < 0) {
+                throw new NxtException.NotValidException("Block bytes too short");
+            }
+            byte[] blockATs = null;
+            if (atLength > 0) {
+                blockATs = new byte[atLength];
+                buffer.get(blockATs);
+            }
+            byte[] blockSignature = new byte[64];
+            buffer.get(blockSignature);
+
+            if (transactionCount != transactionBytes.length) {
+                throw new NxtException.NotValidException("Block has " + transactionCount + " transactions but "
+                        + transactionBytes.length + " were sent");
+            }
+            SortedMap<Long, TransactionImpl> blockTransactions = new TreeMap<>();
+            for (byte[] bytes : transactionBytes) {
+                TransactionImpl transaction = TransactionImpl.parseTransaction(bytes);
+                if (blockTransactions.put(transaction.getId(), transaction) != null) {
+                    throw new NxtException.NotValidException("Block contains duplicate transactions: " + transaction.getStringId());
+                }
+            }
+            return new BlockImpl(version, timestamp, previousBlock, totalAmountNQT, totalFeeNQT, payloadLength, payloadHash, generatorPublicKey,
+                    generationSignature, blockSignature, previousBlockHash, new ArrayList<>(blockTransactions.values()), nonce, blockATs);
+        } catch (NxtException.ValidationException|RuntimeException e) {
+            logger.debug("Failed to parse block bytes: " + Convert.toHexString(blockBytes));
+            throw e;
+        }
+    }
+
     byte[] getBytes() {
         ByteBuffer buffer = ByteBuffer.allocate(4 + 4 + 8 + 4 + (version < 3 ? (4 + 4) : (8 + 8)) + 4 + 32 + 32 + (32 + 32)
                 + 8 + (blockATs != null ? blockATs.length : 0) + 64);
@@ -442,9 +511,7 @@ public final class BlockImpl implements Block {
     public void preVerify(byte[] scoopData) throws BlockchainProcessor.BlockNotAcceptedException {
 	synchronized(this) {
 		// Remove from todo-list:
-		synchronized(BlockchainProcessorImpl.blockCache) {
-			BlockchainProcessorImpl.unverified.remove(this.getId());
-		}
+		BlockchainProcessorImpl.blockPipeline.removeUnverified(this.getId());
 
 		// Just in case its already verified
 		if(this.pocTime != null)
@@ -452,24 +519,56 @@ public final class BlockImpl implements Block {
 
 		try {
 		    // Pre-verify poc:
-            if(scoopData == null) {
-                this.pocTime = Nxt.getGenerator().calculateHit(getGeneratorId(), nonce, generationSignature, getScoopNum());
-            }
-            else {
-                this.pocTime = Nxt.getGenerator().calculateHit(getGeneratorId(), nonce, generationSignature, scoopData);
-            }
+		    this.pocTime = calculatePocTime(scoopData);
 		} catch (RuntimeException e) {
 		    logger.info("Error pre-verifying block generation signature", e);
 		    return;
 		}
 
-        for(TransactionImpl transaction : getTransactions()) {
-            if(!transaction.verifySignature()) {
-                logger.info("Bad transaction signature during block pre-verification for tx: " + Convert.toUnsignedLong(transaction.getId()) + " at block height: " + getHeight());
-                throw new BlockchainProcessor.TransactionNotAcceptedException("Invalid signature for tx: " + Convert.toUnsignedLong(transaction.getId()) + "at block height: " + getHeight(), transaction);
+        verifyTransactionSignatures(0, getTransactions().size(), SIGNATURES_PER_TASK);
+        BlockchainProcessorImpl.blockPipeline.markVerified(this);
+	}
+    }
+
+    /**
+     * Calculates the hit of this block's nonce without changing any state, scoopData may be null.
+     */
+    BigInteger calculatePocTime(byte[] scoopData) {
+        if(scoopData == null) {
+            return Nxt.getGenerator().calculateHit(getGeneratorId(), nonce, generationSignature, getScoopNum());
+        }
+        return Nxt.getGenerator().calculateHit(getGeneratorId(), nonce, generationSignature, scoopData);
+    }
+
+    /**
+     * Checks the signatures of the given range of transactions, ranges of more than signaturesPerTask transactions are
+     * checked in parallel.
+     */
+    void verifyTransactionSignatures(int fromIndex, int toIndex, int signaturesPerTask) throws BlockchainProcessor.TransactionNotAcceptedException {
+        List<TransactionImpl> transactions = getTransactions();
+        SignatureBatch batch = new SignatureBatch(toIndex - fromIndex);
+        for (int i = fromIndex; i < toIndex; i++) {
+            transactions.get(i).addToSignatureBatch(batch);
+        }
+        int failure = batch.verify(signaturesPerTask);
+        if (failure >= 0) {
+            TransactionImpl transaction = transactions.get(fromIndex + failure);
+            logger.info("Bad transaction signature during block pre-verification for tx: " + Convert.toUnsignedLong(transaction.getId()) + " at block height: " + getHeight());
+            throw new BlockchainProcessor.TransactionNotAcceptedException("Invalid signature for tx: " + Convert.toUnsignedLong(transaction.getId()) + "at block height: " + getHeight(), transaction);
+        }
+    }
+
+    /**
+     * Stores a pocTime calculated outside of {@link #preVerify()} once all transaction signatures have been checked.
+     */
+    void setPreVerified(BigInteger pocTime) {
+        synchronized(this) {
+            BlockchainProcessorImpl.blockPipeline.removeUnverified(this.getId());
+            if(this.pocTime == null) {
+                this.pocTime = pocTime;
             }
         }
-	}
+        BlockchainProcessorImpl.blockPipeline.markVerified(this);
     }
 
     void apply() {
@@ -0,0 +1,344 @@
+package nxt;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Staged download / verify / import queue used while syncing.
+ *
+ * Downloaded blocks are kept in a height ordered queue until they have been pre-verified and are then moved to the
+ * ready-to-import frontier, which the importer takes the block following the last block from. A block the verifiers
+ * haven't reached yet is found through the index of blocks by their previous block, so the importer can verify it
+ * itself. None of the stages share a monitor, waiting threads are woken up by {@link Signal}s.
+ */
+final class BlockPipeline {
+
+    private final ConcurrentMap<Long, Entry> blocks = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, Long> successors = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Entry> unverified = new ConcurrentSkipListSet<>();
+    private final ConcurrentSkipListSet<Entry> ready = new ConcurrentSkipListSet<>();
+    private final AtomicLong byteSize = new AtomicLong();
+    private final long maxByteSize;
+
+    private final Signal unverifiedSignal = new Signal();
+    private final Signal importSignal = new Signal();
+    private final Signal capacitySignal = new Signal();
+
+    private final Timer verifyLatency;
+    private final Timer importLatency;
+
+    BlockPipeline(long maxByteSize, MetricRegistry metrics) {
+        this.maxByteSize = maxByteSize;
+        metrics.register(MetricRegistry.name(BlockchainProcessorImpl.class, "BlockCache", "size"), (Gauge<Integer>) blocks::size);
+        metrics.register(MetricRegistry.name(BlockchainProcessorImpl.class, "Unverified", "size"), (Gauge<Integer>) unverified::size);
+        metrics.register(MetricRegistry.name(BlockchainProcessorImpl.class, "ReadyToImport", "size"), (Gauge<Integer>) ready::size);
+        metrics.register(MetricRegistry.name(BlockchainProcessorImpl.class, "BlockCacheSize", "size"), (Gauge<Long>) byteSize::get);
+        verifyLatency = metrics.timer(MetricRegistry.name(BlockchainProcessorImpl.class, "BlockPipeline", "queuedToVerified"));
+        importLatency = metrics.timer(MetricRegistry.name(BlockchainProcessorImpl.class, "BlockPipeline", "verifiedToImported"));
+    }
+
+    BlockImpl get(long blockId) {
+        Entry entry = blocks.get(blockId);
+        return entry == null ? null : entry.block;
+    }
+
+    boolean contains(long blockId) {
+        return blocks.containsKey(blockId);
+    }
+
+    boolean hasSuccessor(long previousBlockId) {
+        return successors.containsKey(previousBlockId);
+    }
+
+    Long getSuccessorId(long previousBlockId) {
+        return successors.get(previousBlockId);
+    }
+
+    BlockImpl getSuccessor(long previousBlockId) {
+        Long blockId = successors.get(previousBlockId);
+        return blockId == null ? null : get(blockId);
+    }
+
+    int size() {
+        return blocks.size();
+    }
+
+    /**
+     * Returns the verified block following the given last block from the ready-to-import frontier, or null if it
+     * hasn't been verified yet.
+     */
+    BlockImpl getReady(long lastBlockId, int lastHeight) {
+        for (Entry entry : ready.subSet(new Entry(lastHeight + 1, Long.MIN_VALUE), true,
+                new Entry(lastHeight + 1, Long.MAX_VALUE), true)) {
+            if (entry.block.getPreviousBlockId() == lastBlockId) {
+                return entry.block;
+            }
+        }
+        return null;
+    }
+
+    int unverifiedSize() {
+        return unverified.size();
+    }
+
+    long getByteSize() {
+        return byteSize.get();
+    }
+
+    boolean hasCapacity() {
+        return byteSize.get() < maxByteSize;
+    }
+
+    /**
+     * Adds a block whose height is already set. Returns false if a different block with the same previous block is
+     * already queued.
+     */
+    boolean add(BlockImpl block, boolean verify) {
+        Entry entry = new Entry(block);
+        Long existing = successors.putIfAbsent(block.getPreviousBlockId(), block.getId());
+        if (existing != null && existing != block.getId()) {
+            return false;
+        }
+        if (blocks.putIfAbsent(block.getId(), entry) != null) {
+            return true;
+        }
+        byteSize.addAndGet(block.getByteLength());
+        if (verify && !block.isVerified()) {
+            unverified.add(entry);
+            unverifiedSignal.signalAll();
+        } else {
+            entry.verifiedAt = entry.queuedAt;
+            ready.add(entry);
+        }
+        importSignal.signalAll();
+        return true;
+    }
+
+    /**
+     * Removes up to max blocks with the lowest heights from the unverified queue.
+     */
+    List<BlockImpl> pollUnverified(int max) {
+        List<BlockImpl> result = new ArrayList<>(Math.min(max, 64));
+        Entry entry;
+        while (result.size() < max && (entry = unverified.pollFirst()) != null) {
+            result.add(entry.block);
+        }
+        return result;
+    }
+
+    void removeUnverified(long blockId) {
+        Entry entry = blocks.get(blockId);
+        if (entry != null) {
+            unverified.remove(entry);
+        }
+    }
+
+    void markVerified(BlockImpl block) {
+        Entry entry = blocks.get(block.getId());
+        if (entry == null || entry.block != block) {
+            return;
+        }
+        unverified.remove(entry);
+        if (entry.verifiedAt == 0) {
+            entry.verifiedAt = System.nanoTime();
+            verifyLatency.update(entry.verifiedAt - entry.queuedAt, TimeUnit.NANOSECONDS);
+        }
+        ready.add(entry);
+        // removed concurrently, don't leave it behind in the frontier
+        if (blocks.get(block.getId()) != entry) {
+            ready.remove(entry);
+        }
+        importSignal.signalAll();
+    }
+
+    /**
+     * Waits until a block following the last block is queued or the timeout elapses. The last block is read again on
+     * every wake-up, {@link #tipChanged()} wakes the waiter when it changes.
+     */
+    BlockImpl awaitSuccessor(LongSupplier lastBlockId, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        for (;;) {
+            long generation = importSignal.generation();
+            BlockImpl block = getSuccessor(lastBlockId.getAsLong());
+            if (block != null) {
+                return block;
+            }
+            if (!importSignal.await(generation, deadline - System.nanoTime())) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Wakes up the importer after blocks were pushed or popped off outside of it.
+     */
+    void tipChanged() {
+        importSignal.signalAll();
+    }
+
+    /**
+     * Waits until an unverified block is queued or the timeout elapses.
+     */
+    boolean awaitUnverified(long timeoutMillis) throws InterruptedException {
+        long generation = unverifiedSignal.generation();
+        return !unverified.isEmpty() || unverifiedSignal.await(generation, TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+    }
+
+    /**
+     * Waits until the cache drops below its byte limit or the timeout elapses.
+     */
+    boolean awaitCapacity(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        for (;;) {
+            long generation = capacitySignal.generation();
+            if (hasCapacity()) {
+                return true;
+            }
+            if (!capacitySignal.await(generation, deadline - System.nanoTime())) {
+                return hasCapacity();
+            }
+        }
+    }
+
+    /**
+     * Removes a block after it has been pushed to the blockchain.
+     */
+    void removeImported(BlockImpl block) {
+        Entry entry = remove(block.getId());
+        if (entry != null && entry.verifiedAt != 0) {
+            importLatency.update(System.nanoTime() - entry.verifiedAt, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Removes a block and every queued block building on it.
+     */
+    void removeChain(BlockImpl block) {
+        if (remove(block.getId()) == null) {
+            return;
+        }
+        long removeId = block.getId();
+        Long nextId;
+        while ((nextId = successors.get(removeId)) != null) {
+            remove(nextId);
+            removeId = nextId;
+        }
+    }
+
+    void clear() {
+        for (Long blockId : new ArrayList<>(blocks.keySet())) {
+            remove(blockId);
+        }
+        successors.clear();
+        capacitySignal.signalAll();
+        importSignal.signalAll();
+    }
+
+    private Entry remove(long blockId) {
+        Entry entry = blocks.remove(blockId);
+        if (entry == null) {
+            return null;
+        }
+        successors.remove(entry.block.getPreviousBlockId(), blockId);
+        unverified.remove(entry);
+        ready.remove(entry);
+        long length = entry.block.getByteLength();
+        long after = byteSize.addAndGet(-length);
+        if (after < maxByteSize && after + length >= maxByteSize) {
+            capacitySignal.signalAll();
+        }
+        return entry;
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+
+        private final BlockImpl block;
+        private final int height;
+        private final long id;
+        private final long queuedAt = System.nanoTime();
+        private volatile long verifiedAt;
+
+        private Entry(BlockImpl block) {
+            this.block = block;
+            this.height = block.getHeight();
+            this.id = block.getId();
+        }
+
+        /** A bound for looking up a range of the queues */
+        private Entry(int height, long id) {
+            this.block = null;
+            this.height = height;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int result = Integer.compare(height, other.height);
+            return result != 0 ? result : Long.compare(id, other.id);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Entry && ((Entry) o).id == id && ((Entry) o).height == height;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(id);
+        }
+    }
+
+    /**
+     * Generation counted wake-up signal. A waiter reads the generation before checking its condition so that a
+     * signal sent in between is never lost.
+     */
+    static final class Signal {
+
+        private final Lock lock = new ReentrantLock();
+        private final Condition condition = lock.newCondition();
+        private volatile long generation;
+
+        long generation() {
+            return generation;
+        }
+
+        void signalAll() {
+            lock.lock();
+            try {
+                generation++;
+                condition.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean await(long seenGeneration, long timeoutNanos) throws InterruptedException {
+            lock.lock();
+            try {
+                long nanos = timeoutNanos;
+                while (generation == seenGeneration) {
+                    if (nanos <= 0) {
+                        return false;
+                    }
+                    nanos = condition.awaitNanos(nanos);
+                }
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
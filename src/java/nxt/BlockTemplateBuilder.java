@@ -0,0 +1,104 @@
+package nxt;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import nxt.db.NxtIterator;
+import nxt.util.Convert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks the transactions of a block to generate from the unconfirmed pool.
+ *
+ * The pool keeps its transactions ordered by fee per byte as they arrive, so assembling a block is a single pass over
+ * it which takes every transaction that is valid and still fits into {@link Constants#MAX_PAYLOAD_LENGTH}. Smaller
+ * transactions further down can still fill the space a large one didn't fit into. ATs get the payload left over.
+ * Only transactions referencing another one need a database lookup.
+ */
+final class BlockTemplateBuilder {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlockTemplateBuilder.class);
+
+    private final Timer assemblyTimer = Nxt.metrics.timer(MetricRegistry.name(BlockchainImpl.class, "blockTemplate"));
+
+    BlockTemplate build(Block previousBlock, int blockTimestamp) {
+        final Timer.Context context = assemblyTimer.time();
+        BlockchainProcessorImpl blockchainProcessor = BlockchainProcessorImpl.getInstance();
+        TransactionProcessorImpl transactionProcessor = TransactionProcessorImpl.getInstance();
+        BlockTemplate template = new BlockTemplate();
+        Map<TransactionType, Set<String>> duplicates = new HashMap<>();
+        int transactionVersion = transactionProcessor.getTransactionVersion(previousBlock.getHeight());
+        int considered = 0;
+
+        try (NxtIterator<TransactionImpl> candidates = transactionProcessor.getAllUnconfirmedTransactions()) {
+            while (candidates.hasNext() && template.transactions.size() < Constants.MAX_NUMBER_OF_TRANSACTIONS) {
+                TransactionImpl transaction = candidates.next();
+                considered++;
+
+                int transactionLength = transaction.getSize();
+                if (template.payloadLength + transactionLength > Constants.MAX_PAYLOAD_LENGTH) {
+                    continue;
+                }
+
+                if (transaction.getVersion() != transactionVersion) {
+                    continue;
+                }
+
+                if (transaction.getTimestamp() > blockTimestamp + BlockchainProcessorImpl.MAX_TIMESTAMP_DIFFERENCE || transaction.getExpiration() < blockTimestamp) {
+                    continue;
+                }
+
+                if (!blockchainProcessor.hasAllReferencedTransactions(transaction, transaction.getTimestamp(), 0)) {
+                    continue;
+                }
+
+                if (Nxt.getBlockchain().getHeight() >= Constants.AUTOMATED_TRANSACTION_BLOCK) {
+                    if (!EconomicClustering.verifyFork(transaction)) {
+                        logger.debug("Including transaction that was generated on a fork: " + transaction.getStringId()
+                                + " ecBlockHeight " + transaction.getECBlockHeight() + " ecBlockId " + Convert.toUnsignedLong(transaction.getECBlockId()));
+                        continue;
+                    }
+                }
+
+                if (transaction.isDuplicate(duplicates)) {
+                    continue;
+                }
+
+                try {
+                    transaction.validate();
+                } catch (NxtException.NotCurrentlyValidException e) {
+                    continue;
+                } catch (NxtException.ValidationException e) {
+                    transactionProcessor.removeUnconfirmedTransaction(transaction);
+                    continue;
+                }
+
+                template.transactions.add(transaction);
+                template.payloadLength += transactionLength;
+                template.totalAmountNQT += transaction.getAmountNQT();
+                template.totalFeeNQT += transaction.getFeeNQT();
+            }
+        } finally {
+            long elapsed = context.stop();
+            logger.debug("Assembled block template of " + template.transactions.size() + " out of " + considered
+                    + " considered transactions in " + TimeUnit.NANOSECONDS.toMicros(elapsed) + " us");
+        }
+        return template;
+    }
+
+    static final class BlockTemplate {
+        /** In the order of the block */
+        final SortedSet<TransactionImpl> transactions = new TreeSet<>();
+        int payloadLength;
+        long totalAmountNQT;
+        long totalFeeNQT;
+    }
+
+}
@@ -54,6 +54,8 @@ public interface Blockchain {
 
     NxtIterator<TransactionImpl> getTransactions(Account account, int numberOfConfirmations, byte type, byte subtype, int blockTimestamp, int from, int to);
 
+    NxtIterator<TransactionImpl> getTransactions(Account account, int numberOfConfirmations, byte type, byte subtype, int blockTimestamp, String continuationToken, int limit);
+
 //    NxtIterator<TransactionImpl> getTransactions(Connection con, PreparedStatement pstmt);
 
 }
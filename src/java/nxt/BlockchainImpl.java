@@ -2,7 +2,6 @@ package nxt;
 
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
-import nxt.db.BlockDb;
 import nxt.db.NxtIterator;
 
 import java.util.List;
@@ -11,8 +10,6 @@ import java.util.concurrent.atomic.AtomicReference;
 public final class BlockchainImpl implements Blockchain {
 
     private static final BlockchainImpl instance = new BlockchainImpl();
-    private final TransactionDb transactionDb = Nxt.getDbs().getTransactionDb();
-    private final BlockDb blockDb =  Nxt.getDbs().getBlockDb();;
 
     public static BlockchainImpl getInstance() {
         return instance;
@@ -53,7 +50,7 @@ public final class BlockchainImpl implements Blockchain {
         if (timestamp >= block.getTimestamp()) {
             return block;
         }
-        return blockDb.findLastBlock(timestamp);
+        return Nxt.getDbs().getBlockDb().findLastBlock(timestamp);
     }
 
     @Override
@@ -62,12 +59,12 @@ public final class BlockchainImpl implements Blockchain {
         if (block.getId() == blockId) {
             return block;
         }
-        return blockDb.findBlock(blockId);
+        return Nxt.getDbs().getBlockDb().findBlock(blockId);
     }
 
     @Override
     public boolean hasBlock(long blockId) {
-        return lastBlock.get().getId() == blockId || blockDb.hasBlock(blockId);
+        return lastBlock.get().getId() == blockId || Nxt.getDbs().getBlockDb().hasBlock(blockId);
     }
 
     @Override
@@ -109,7 +106,7 @@ public final class BlockchainImpl implements Blockchain {
         if (height == block.getHeight()) {
             return block.getId();
         }
-        return blockDb.findBlockIdAtHeight(height);
+        return Nxt.getDbs().getBlockDb().findBlockIdAtHeight(height);
     }
 
     @Override
@@ -121,27 +118,27 @@ public final class BlockchainImpl implements Blockchain {
         if (height == block.getHeight()) {
             return block;
         }
-        return blockDb.findBlockAtHeight(height);
+        return Nxt.getDbs().getBlockDb().findBlockAtHeight(height);
     }
 
     @Override
     public Transaction getTransaction(long transactionId) {
-        return transactionDb.findTransaction(transactionId);
+        return Nxt.getDbs().getTransactionDb().findTransaction(transactionId);
     }
 
     @Override
     public Transaction getTransactionByFullHash(String fullHash) {
-        return transactionDb.findTransactionByFullHash(fullHash);
+        return Nxt.getDbs().getTransactionDb().findTransactionByFullHash(fullHash);
     }
 
     @Override
     public boolean hasTransaction(long transactionId) {
-        return transactionDb.hasTransaction(transactionId);
+        return Nxt.getDbs().getTransactionDb().hasTransaction(transactionId);
     }
 
     @Override
     public boolean hasTransactionByFullHash(String fullHash) {
-        return transactionDb.hasTransactionByFullHash(fullHash);
+        return Nxt.getDbs().getTransactionDb().hasTransactionByFullHash(fullHash);
     }
 
     @Override
@@ -166,5 +163,11 @@ public final class BlockchainImpl implements Blockchain {
 
     }
 
+    @Override
+    public NxtIterator<TransactionImpl> getTransactions(Account account, int numberOfConfirmations, byte type, byte subtype,
+                                                        int blockTimestamp, String continuationToken, int limit) {
+        return Nxt.getStores().getBlockchainStore().getTransactions(account, numberOfConfirmations, type, subtype, blockTimestamp, continuationToken, limit);
+    }
+
 
 }
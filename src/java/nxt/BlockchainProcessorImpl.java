@@ -1,12 +1,12 @@
 package nxt;
 
-import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import nxt.at.AT_Block;
 import nxt.at.AT_Controller;
 import nxt.at.AT_Exception;
 import nxt.crypto.Crypto;
+import nxt.crypto.Digests;
 import nxt.db.BlockDb;
 import nxt.db.DerivedTable;
 import nxt.peer.Peer;
@@ -33,7 +33,7 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
 	private final BlockDb blockDb = Nxt.getDbs().getBlockDb();
 	private final TransactionDb transactionDb = Nxt.getDbs().getTransactionDb();
 
-	public static final int BLOCKCACHEMB = Nxt.getIntProperty("burst.blockCacheMB") == 0 ? 40 : Nxt.getIntProperty("blockCacheMB");
+	public static final int BLOCKCACHEMB = Nxt.getIntProperty("burst.blockCacheMB") == 0 ? 40 : Nxt.getIntProperty("burst.blockCacheMB");
     public static final int MAX_TIMESTAMP_DIFFERENCE = 15;
 	public static boolean oclVerify = Nxt.getBooleanProperty("burst.oclVerify");
 	public static final int oclThreshold = Nxt.getIntProperty("burst.oclThreshold") == 0 ? 50 : Nxt.getIntProperty("burst.oclThreshold");
@@ -60,11 +60,10 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
 	private volatile int lastBlockchainFeederHeight;
 	private volatile boolean getMoreBlocks = true;
 
-	// blockCache for faster sync
-	public static final Map<Long, Block> blockCache = new HashMap<Long, Block>();
-	public static final Map<Long, Long> reverseCache = new HashMap<Long, Long>();
-	public static final List<Long> unverified = new LinkedList<Long>();
-	private static int blockCacheSize = 0;
+	// download / verify / import pipeline for faster sync
+	static final BlockPipeline blockPipeline = new BlockPipeline(BLOCKCACHEMB * 1024L * 1024L, Nxt.metrics);
+	/** Upper bound for waiting on a pipeline signal, waiters re-check their state afterwards */
+	private static final long PIPELINE_WAIT_MILLIS = 30000;
 
 	private volatile boolean isScanning;
 	private volatile boolean forceScan = Nxt.getBooleanProperty("nxt.forceScan");
@@ -72,194 +71,142 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
 
 
 	// Last downloaded block:
-	private Long lastDownloaded = 0L;
+	private volatile long lastDownloaded = 0L;
 
 	private final Runnable debugInfoThread = new Runnable() {
 		@Override
 		public void run() {
-                        logger.info("Unverified blocks: " + String.valueOf(unverified.size()));
-                        logger.info("Blocks in cache: " + String.valueOf(blockCache.size()));
-                        logger.info("Bytes in cache: " + String.valueOf(blockCacheSize));
+                        logger.info("Unverified blocks: " + String.valueOf(blockPipeline.unverifiedSize()));
+                        logger.info("Blocks in cache: " + String.valueOf(blockPipeline.size()));
+                        logger.info("Bytes in cache: " + String.valueOf(blockPipeline.getByteSize()));
 		}
 	};
 
 
 
-    private static void addCollectionGauge (MetricRegistry metrics, final Collection c, String name) {
-        metrics.register(MetricRegistry.name(BlockchainProcessorImpl.class, name, "size"),
-                (Gauge<Integer>) () -> c.size());
-    }
-
-    static {
-        addCollectionGauge(Nxt.metrics, blockCache.keySet(), "BlockCache");
-        addCollectionGauge(Nxt.metrics, unverified, "Unverified");
-        Nxt.metrics.register(MetricRegistry.name(BlockchainProcessorImpl.class, "BlockCacheSize", "size"),
-                (Gauge<Integer>) () -> blockCacheSize);
-    }
-
     private final Timer pocTimer = Nxt.metrics.timer(MetricRegistry.name(BlockchainImpl.class, "pocVerification"));
 
     private final Runnable pocVerificationThread = new Runnable() {
         @Override
         public void run() {
-            for (; ; ) {
-                final Timer.Context context = pocTimer.time();
-                try {
-                    if (oclVerify) {
-                        boolean gpuAcquired = false;
-                        try {
-                            List<BlockImpl> blocks = new LinkedList<>();
-                            synchronized (blockCache) {
-                                if (unverified.size() == 0) {
-                                    return;
-                                }
-
-                                int verifiedCached = blockCache.size() - unverified.size();
-                                if (verifiedCached >= oclWaitThreshold && unverified.size() < OCLPoC.getMaxItems() / 2) {
+            try {
+                for (; ; ) {
+                    if (!blockPipeline.awaitUnverified(PIPELINE_WAIT_MILLIS)) {
+                        continue;
+                    }
+                    final Timer.Context context = pocTimer.time();
+                    try {
+                        if (oclVerify) {
+                            boolean gpuAcquired = false;
+                            try {
+                                List<BlockImpl> blocks;
+                                int unverifiedCount = blockPipeline.unverifiedSize();
+                                int verifiedCached = blockPipeline.size() - unverifiedCount;
+                                if (verifiedCached >= oclWaitThreshold && unverifiedCount < OCLPoC.getMaxItems() / 2) {
                                     return;
                                 }
 
-                                if (unverified.size() < oclThreshold) {
-                                    Long blockId = BlockchainProcessorImpl.unverified.get(0);
-                                    BlockchainProcessorImpl.unverified.remove(blockId);
-
-                                    blocks.add((BlockImpl) BlockchainProcessorImpl.blockCache.get(blockId));
+                                if (unverifiedCount < oclThreshold) {
+                                    blocks = blockPipeline.pollUnverified(1);
                                 } else {
                                     if (!gpuUsage.tryAcquire()) {
                                         logger.debug("already max locked");
                                         return;
                                     }
                                     gpuAcquired = true;
-
-                                    while (unverified.size() > 0 && blocks.size() < OCLPoC.getMaxItems()) {
-                                        Long blockId = BlockchainProcessorImpl.unverified.get(0);
-                                        BlockchainProcessorImpl.unverified.remove(blockId);
-
-                                        blocks.add((BlockImpl) BlockchainProcessorImpl.blockCache.get(blockId));
+                                    blocks = blockPipeline.pollUnverified((int) Math.min(OCLPoC.getMaxItems(), Integer.MAX_VALUE));
+                                }
+                                if (blocks.isEmpty()) {
+                                    continue;
+                                }
+                                try {
+                                    if (blocks.size() > 1) {
+                                        OCLPoC.validatePoC(blocks);
+                                    } else {
+                                        blocks.get(0).preVerify();
                                     }
+                                } catch (OCLPoC.PreValidateFailException e) {
+                                    e.printStackTrace();
+                                    blacklistClean(e.getBlock(), e);
+                                } catch (BlockNotAcceptedException e) {
+                                    e.printStackTrace();
+                                    blacklistClean(blocks.get(0), e);
                                 }
-                            }
-                            try {
-                                if (blocks.size() > 1) {
-                                    OCLPoC.validatePoC(blocks);
-                                } else {
-                                    blocks.get(0).preVerify();
+                            } finally {
+                                if (gpuAcquired) {
+                                    gpuUsage.release();
                                 }
-                            } catch (OCLPoC.PreValidateFailException e) {
-                                e.printStackTrace();
-                                blacklistClean(e.getBlock(), e);
-                            } catch (BlockNotAcceptedException e) {
-                                e.printStackTrace();
-                                blacklistClean(blocks.get(0), e);
                             }
-                        } finally {
-                            if (gpuAcquired) {
-                                gpuUsage.release();
+                        } else {
+                            List<BlockImpl> blocks = blockPipeline.pollUnverified(CPUPoC.getBatchSize());
+                            if (blocks.isEmpty()) {
+                                continue;
                             }
-                        }
-                    } else {
-                        BlockImpl block;
-                        synchronized (BlockchainProcessorImpl.blockCache) {
-                            if (BlockchainProcessorImpl.unverified.size() == 0)
-                                return;
-
-                            Long blockId = BlockchainProcessorImpl.unverified.get(0);
-                            BlockchainProcessorImpl.unverified.remove(blockId);
-
-                            block = (BlockImpl) BlockchainProcessorImpl.blockCache.get(blockId);
-                        }
-
-                        try {
-
-                            block.preVerify();
-                        } catch (BlockchainProcessor.BlockNotAcceptedException e) {
-                            blacklistClean(block, e);
 
+                            for (Map.Entry<BlockImpl, BlockNotAcceptedException> failure : CPUPoC.validatePoC(blocks).entrySet()) {
+                                blacklistClean(failure.getKey(), failure.getValue());
+                            }
                         }
+                    } finally {
+                        context.stop();
                     }
-
-
-                } finally {
-                    context.stop();
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
         }
-    }
-        ;
-        private final Timer blockImportTimer = Nxt.metrics.timer(MetricRegistry.name(BlockchainImpl.class, "blockImport"));
-        private final Runnable blockImporterThread = new Runnable() {
-		@Override
-		public void run() {
-			try{
-				while(true) {
-					synchronized (blockchain) {
-						for (; ; ) {
-                            final Timer.Context context = blockImportTimer.time();
-						    try{
-                            Long lastId = blockchain.getLastBlock().getId();
+    };
 
-                            Long currentBlockId;
-                            BlockImpl currentBlock;
-
-                            synchronized (BlockchainProcessorImpl.blockCache) {
-                                if (!BlockchainProcessorImpl.reverseCache.containsKey(lastId))
-                                    break;
-
-                                currentBlockId = BlockchainProcessorImpl.reverseCache.get(lastId);
-                                currentBlock = (BlockImpl) BlockchainProcessorImpl.blockCache.get(currentBlockId);
-                            }
+    private final Timer blockImportTimer = Nxt.metrics.timer(MetricRegistry.name(BlockchainImpl.class, "blockImport"));
+    private final Runnable blockImporterThread = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    if (blockPipeline.awaitSuccessor(() -> blockchain.getLastBlock().getId(), PIPELINE_WAIT_MILLIS) == null) {
+                        continue;
+                    }
+                    synchronized (blockchain) {
+                        for (; ; ) {
+                            final Timer.Context context = blockImportTimer.time();
                             try {
-                                if (!currentBlock.isVerified()) {
-                                    currentBlock.preVerify();
-                                }
-                                pushBlock(currentBlock);
-                            } catch (BlockNotAcceptedException e) {
-                                logger.error("Block not accepted", e);
-                                blacklistClean(currentBlock, e);
-                                logger.warn("Sleeping for one second and trying again");
-                                // Lets sleep about it for a second
+                                Block lastBlock = blockchain.getLastBlock();
+                                BlockImpl currentBlock = blockPipeline.getReady(lastBlock.getId(), lastBlock.getHeight());
                                 try {
+                                    if (currentBlock == null) {
+                                        // not reached by the verifiers yet
+                                        currentBlock = blockPipeline.getSuccessor(lastBlock.getId());
+                                        if (currentBlock == null) {
+                                            break;
+                                        }
+                                        if (!currentBlock.isVerified()) {
+                                            currentBlock.preVerify();
+                                        }
+                                    }
+                                    pushBlock(currentBlock);
+                                } catch (BlockNotAcceptedException e) {
+                                    logger.error("Block not accepted", e);
+                                    blacklistClean(currentBlock, e);
+                                    logger.warn("Sleeping for one second and trying again");
+                                    // Lets sleep about it for a second
                                     Thread.sleep(1000L);
-                                } catch (InterruptedException ignored) {
-                                    logger.trace("Interrupted", ignored);
-                                }
-                                break;
-                            }
-                            // Clean up cache
-                            synchronized (BlockchainProcessorImpl.blockCache) {
-                                if (blockCache.containsKey(currentBlockId)) { // make sure it wasn't already removed(ex failed preValidate) to avoid double subtracting from blockCacheSize
-                                    BlockchainProcessorImpl.reverseCache.remove(lastId);
-
-                                    BlockchainProcessorImpl.blockCache.remove(currentBlockId);
-                                    blockCacheSize -= currentBlock.getByteLength();
+                                    break;
                                 }
-
-						/*if (blockchain.getLastBlock().getId() == block.getPreviousBlockId()) {
-						} else if (!BlockDb.hasBlock(block.getId())) {
-							forkBlocks.add(block);
-						}*/
+                                // Clean up cache
+                                blockPipeline.removeImported(currentBlock);
+                            } finally {
+                                context.stop();
                             }
                         }
-                        finally {
-                            context.stop();
-                        }
-					}
-
-				}
-					synchronized (blockCache) {
-						while (!reverseCache.containsKey(blockchain.getLastBlock().getId())) {
-							try {
-							blockCache.wait(2000);
-							} catch (InterruptedException ignore) {}
-					}
-				}
-			}
-		}
-			catch (Throwable exception) {
-				logger.error("Uncaught exception in blockImporterThread", exception);
-			}
-		}
-	};
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable exception) {
+                logger.error("Uncaught exception in blockImporterThread", exception);
+            }
+        }
+    };
 
     private void blacklistClean(BlockImpl block, Exception e) {
         logger.debug("Blacklisting peer and cleaning queue");
@@ -268,24 +215,9 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
     	Peer peer = block.getPeer();
         if (peer != null)
         	peer.blacklist(e);
-        long removeId = block.getId();
-        synchronized (BlockchainProcessorImpl.blockCache) {
-			if(blockCache.containsKey(block.getId())) {
-				blockCacheSize -= block.getByteLength();
-				reverseCache.remove(block.getPreviousBlockId());
-			}
-            blockCache.remove(block.getId());
-            while(reverseCache.containsKey(removeId)) {
-                long id = reverseCache.get(removeId);
-                reverseCache.remove(removeId);
-                blockCacheSize -= ((BlockImpl)blockCache.get(id)).getByteLength();
-                blockCache.remove(id);
-                removeId = id;
-            }
-			Block lastBlock = blockchain.getLastBlock();
-			lastDownloaded = lastBlock.getHeight() >= block.getHeight() ? lastBlock.getId() : block.getPreviousBlockId();
-			blockCache.notify();
-        }
+        blockPipeline.removeChain(block);
+        Block lastBlock = blockchain.getLastBlock();
+        lastDownloaded = lastBlock.getHeight() >= block.getHeight() ? lastBlock.getId() : block.getPreviousBlockId();
 		logger.debug("Blacklisted peer and cleaned queue");
     }
 
@@ -308,7 +240,7 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
 						return;
 					}
 
-					if(blockCacheSize > BLOCKCACHEMB * 1024 * 1024)
+					if (!blockPipeline.awaitCapacity(PIPELINE_WAIT_MILLIS))
 						return;
 
 					peerHasMore = true;
@@ -361,15 +293,14 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
 						currentBlockId = commonBlockId;
 					}
 					else {
-						synchronized (blockCache) {
-							long checkBlockId = currentBlockId;
-							while (checkBlockId != blockchain.getLastBlock().getId()) {
-								if (blockCache.get(checkBlockId) == null) {
-									currentBlockId = blockchain.getLastBlock().getId();
-									break;
-								}
-								checkBlockId = blockCache.get(checkBlockId).getPreviousBlockId();
+						long checkBlockId = currentBlockId;
+						while (checkBlockId != blockchain.getLastBlock().getId()) {
+							BlockImpl checkBlock = blockPipeline.get(checkBlockId);
+							if (checkBlock == null) {
+								currentBlockId = blockchain.getLastBlock().getId();
+								break;
 							}
+							checkBlockId = checkBlock.getPreviousBlockId();
 						}
 					}
 
@@ -380,7 +311,7 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
 					boolean processedAll = true;
 					int requestCount = 0;
 					outer:
-						while (forkBlocks.size() < 1440 && requestCount++ < 10 && ((blockCacheSize < BLOCKCACHEMB * 1024 * 1024) || forkBlocks.size() > 0)) { // fork decision could be wrong if cut off so ignore cache size for forks
+						while (forkBlocks.size() < 1440 && requestCount++ < 10 && (blockPipeline.hasCapacity() || forkBlocks.size() > 0)) { // fork decision could be wrong if cut off so ignore cache size for forks
 							//logger.info("Downloading " + String.valueOf(currentBlockId));
 							Long blockToDownload = currentBlockId;
                             if (useRiskyCatchupStrategy && lastDownloaded != 0)
@@ -391,112 +322,96 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
                                 }
 
                             }
-							JSONArray nextBlocks = getNextBlocks(peer, blockToDownload);
+							List<BlockImpl> nextBlocks = BlockDownloader.download(peer, blockToDownload);
 							if (nextBlocks == null || nextBlocks.size() == 0) {
 								break;
 							}
-							// Insert Blocks to blockCache
-							synchronized(BlockchainProcessorImpl.blockCache) {
-								for(Object o : nextBlocks) {
-									BlockImpl block;
-									JSONObject blockData = (JSONObject) o;
-
-									try {
-										block = BlockImpl.parseBlock(blockData);
-										if(block.getPreviousBlockId() != currentBlockId && block.getPreviousBlockId() != blockToDownload) { // ensure peer isn't cluttering cache with unrequested stuff
-											logger.info("Peer sent unrequested block. Blacklisting...");
-											peer.blacklist();
-											return;
-										}
-										currentBlockId = block.getId();
+							// Insert Blocks to block pipeline
+							for(BlockImpl block : nextBlocks) {
+								try {
+									if(block.getPreviousBlockId() != currentBlockId && block.getPreviousBlockId() != blockToDownload) { // ensure peer isn't cluttering cache with unrequested stuff
+										logger.info("Peer sent unrequested block. Blacklisting...");
+										block.getPeer().blacklist();
+										return;
+									}
+									currentBlockId = block.getId();
 
-										if(blockCache.containsKey(block.getId()) || blockDb.hasBlock(block.getId())) {
-											lastDownloaded = currentBlockId;
-											logger.debug ("Skipping "+block.getId());
-											continue;
-										}
+									if(blockPipeline.contains(block.getId()) || blockDb.hasBlock(block.getId())) {
+										lastDownloaded = currentBlockId;
+										logger.debug ("Skipping "+block.getId());
+										continue;
+									}
+
+									Long existingId = blockPipeline.getSuccessorId(block.getPreviousBlockId());
+									if(existingId != null && existingId != block.getId()) {
+										logger.info("Aborting getMoreBlocks. Conflicting fork already in queue.");
+										return;
+									}
 
-										if(reverseCache.containsKey(block.getPreviousBlockId())) {
-											long existingId = reverseCache.get(block.getPreviousBlockId());
-											if(existingId != block.getId()) {
-												logger.info("Aborting getMoreBlocks. Conflicting fork already in queue.");
+									block.setByteLength(getByteLength(block));
+
+									long prevId = block.getPreviousBlockId();
+									// Try to find previous Block:
+									BlockImpl cachedPrevBlock = blockPipeline.get(prevId);
+									if(cachedPrevBlock != null) {
+										block.setHeight(cachedPrevBlock.getHeight() + 1);
+									} else {
+										// First in cache? Get from blockchain:
+										BlockImpl prevBlock = (BlockImpl)Nxt.getBlockchain().getBlock(prevId);
+										if(prevBlock == null) {
+											// We may be on a fork: Add all other Blocks to forkQueue:
+											if(forkBlocks.size() > 0) {
+												block.setHeight(forkBlocks.get(forkBlocks.size() - 1).getHeight() + 1);
+												forkBlocks.add(block);
+											} else {
+												// logger.info("Previous Block with ID " + String.valueOf(prevId) + " not found. Blacklisting ...");
+												// peer.blacklist();
+
+												// We've already verified that we asked for a block with that prevBlock,
+												// so not the peer's fault if we changed what we wanted before we receive the data.
 												return;
 											}
 										}
-
-										block.setPeer(peer);
-										int blockSize = blockData.toString().length();
-										block.setByteLength(blockSize);
-
-										Long prevId = Convert.parseUnsignedLong((String) blockData.get("previousBlock"));
-										// Try to find previous Block:
-										if(BlockchainProcessorImpl.blockCache.containsKey(prevId)) {
-											block.setHeight(BlockchainProcessorImpl.blockCache.get(prevId).getHeight() + 1);
-										} else {
-											// First in cache? Get from blockchain:
-											BlockImpl prevBlock = (BlockImpl)Nxt.getBlockchain().getBlock(prevId);
-											if(prevBlock == null) {
-												// We may be on a fork: Add all other Blocks to forkQueue:
-												if(forkBlocks.size() > 0) {
-													block.setHeight(forkBlocks.get(forkBlocks.size() - 1).getHeight() + 1);
+										Long altBlockId = null;
+										if(forkBlocks.size() == 0) {
+											try {
+												altBlockId = blockDb.findBlockIdAtHeight(prevBlock.getHeight() + 1);
+											} catch (Exception e) {}
+											if(altBlockId != null) {
+												if(altBlockId.longValue() != block.getId()) {
+													// fork
 													forkBlocks.add(block);
-												} else {
-													// logger.info("Previous Block with ID " + String.valueOf(prevId) + " not found. Blacklisting ...");
-													// peer.blacklist();
-
-													// We've already verified that we asked for a block with that prevBlock,
-													// so not the peer's fault if we changed what we wanted before we receive the data.
-													return;
 												}
-											}
-											Long altBlockId = null;
-											if(forkBlocks.size() == 0) {
-												try {
-													altBlockId = blockDb.findBlockIdAtHeight(prevBlock.getHeight() + 1);
-												} catch (Exception e) {}
-												if(altBlockId != null) {
-													if(altBlockId.longValue() != block.getId()) {
-														// fork
-														forkBlocks.add(block);
-													}
-													else {
-														lastDownloaded = currentBlockId;
-														continue; // don't clutter cache with stuff we already have
-													}
+												else {
+													lastDownloaded = currentBlockId;
+													continue; // don't clutter cache with stuff we already have
 												}
-												block.setHeight(prevBlock.getHeight() + 1);
 											}
+											block.setHeight(prevBlock.getHeight() + 1);
 										}
-										//logger.info("Block Height " + String.valueOf(block.getHeight()) + " ID " + String.valueOf(block.getId()));
-
-										if(forkBlocks.size() == 0) { // keep old cache separate from fork. blindly adding to reverseCache could cause it to end up in an uncleanable state
-											// Add to Blockcache
-											BlockchainProcessorImpl.blockCache.put(block.getId(), block);
-
-											// Add to reverse cache
-											BlockchainProcessorImpl.reverseCache.put(prevId, currentBlockId);
-
-											// Mark for threaded poc verification
-											BlockchainProcessorImpl.unverified.add(block.getId());
-
-                                            blockCacheSize += blockSize;
+									}
+									//logger.info("Block Height " + String.valueOf(block.getHeight()) + " ID " + String.valueOf(block.getId()));
 
-											lastDownloaded = currentBlockId;
+									if(forkBlocks.size() == 0) { // keep old cache separate from fork. blindly adding to the successor index could cause it to end up in an uncleanable state
+										// Add to pipeline and mark for threaded poc verification
+										if(!blockPipeline.add(block, true)) {
+											logger.info("Aborting getMoreBlocks. Conflicting fork already in queue.");
+											return;
 										}
-
-                                                                        } catch (RuntimeException | NxtException.ValidationException e) {
-                                                                                logger.info("Failed to parse block: " + e.toString(), e);
-                                                                                peer.blacklist(e);
-                                                                                return;
-									} catch (Exception e) {
-										logger.warn("Unhandled exception",e);
+										lastDownloaded = currentBlockId;
 									}
+
+								} catch (RuntimeException e) {
+									logger.info("Failed to process block: " + e.toString(), e);
+									block.getPeer().blacklist(e);
+									return;
+								} catch (Exception e) {
+									logger.warn("Unhandled exception",e);
 								}
-								blockCache.notify();
-								logger.trace("Unverified blocks: " + String.valueOf(unverified.size()));
-								logger.trace("Blocks in cache: " + String.valueOf(blockCache.size()));
-								logger.trace("Bytes in cache: " + String.valueOf(blockCacheSize));
 							}
+							logger.trace("Unverified blocks: " + String.valueOf(blockPipeline.unverifiedSize()));
+							logger.trace("Blocks in cache: " + String.valueOf(blockPipeline.size()));
+							logger.trace("Bytes in cache: " + String.valueOf(blockPipeline.getByteSize()));
 						}
 					if(forkBlocks.size() > 0 && blockchain.getHeight() - commonBlock.getHeight() < 720) {
 						processFork(forkBlocks.get(0).getPeer(), forkBlocks, commonBlock);
@@ -608,32 +523,6 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
 
 		}
 
-		private JSONArray getNextBlocks(Peer peer, long curBlockId) {
-
-			JSONObject request = new JSONObject();
-			request.put("requestType", "getNextBlocks");
-			request.put("blockId", Convert.toUnsignedLong(curBlockId));
-			logger.debug("Getting next Blocks after "+curBlockId+ " from "+peer.getPeerAddress());
-			JSONObject response = peer.send(JSON.prepareRequest(request));
-			if (response == null) {
-				return null;
-			}
-
-			JSONArray nextBlocks = (JSONArray) response.get("nextBlocks");
-			if (nextBlocks == null) {
-				return null;
-			}
-			// prevent overloading with blocks
-			if (nextBlocks.size() > 1440) {
-				logger.debug("Obsolete or rogue peer " + peer.getPeerAddress() + " sends too many nextBlocks, blacklisting");
-				peer.blacklist();
-				return null;
-			}
-			logger.debug("Got "+nextBlocks.size()+" Blocks after "+curBlockId+ " from "+peer.getPeerAddress());
-			return nextBlocks;
-
-		}
-
 		private void processFork(Peer peer, final List<BlockImpl> forkBlocks, final Block commonBlock) {
 
 			synchronized (blockchain) {
@@ -683,14 +572,9 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
 				}
 			} // synchronized
 
-			synchronized (blockCache) { // cache may no longer correspond with current chain, so dump it
-				blockCache.clear();
-				reverseCache.clear();
-				unverified.clear();
-				lastDownloaded = blockchain.getLastBlock().getId();
-				blockCacheSize = 0;
-				blockCache.notify();
-			}
+			// cache may no longer correspond with current chain, so dump it
+			blockPipeline.clear();
+			lastDownloaded = blockchain.getLastBlock().getId();
 		}
 
 	};
@@ -795,43 +679,36 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
 	public void processPeerBlock(JSONObject request) throws NxtException {
 		BlockImpl block = BlockImpl.parseBlock(request);
 		synchronized (blockchain) {
-			synchronized (blockCache) {
-				Block prevBlock = blockchain.getLastBlock();
-				if(blockCache.containsKey(block.getPreviousBlockId()) && !(reverseCache.containsKey(block.getPreviousBlockId()))) {
-					prevBlock = blockCache.get(block.getPreviousBlockId());
-				}
-				if (block.getPreviousBlockId() == prevBlock.getId()) {
-					if(reverseCache.containsKey(prevBlock.getId())) {
-						Long existingId = reverseCache.get(prevBlock.getId());
-						if(existingId != block.getId()) {
-							logger.info("Ignoring peer broadcast block with ID " + Convert.toUnsignedLong(block.getId())
-								+ ". Conflicting block " + Convert.toUnsignedLong(existingId) + " already exists in queue");
-						}
-						else {
-							logger.debug("Ignoring peer broadcast block with ID " + Convert.toUnsignedLong(block.getId()) + ". Already exists in queue");
-						}
-					}
-					else {
-						block.setHeight(prevBlock.getHeight() + 1);
-						blockCache.put(block.getId(), block);
-						reverseCache.put(block.getPreviousBlockId(), block.getId());
-						int blockSize = block.toString().length();
-						block.setByteLength(blockSize);
-						blockCacheSize += block.getByteLength();
-						// do not add to unverified as it will be processed immediately
-						lastDownloaded = block.getId();
-						blockCache.notify();
-					}
+			Block prevBlock = blockchain.getLastBlock();
+			BlockImpl cachedPrevBlock = blockPipeline.get(block.getPreviousBlockId());
+			if(cachedPrevBlock != null && !blockPipeline.hasSuccessor(block.getPreviousBlockId())) {
+				prevBlock = cachedPrevBlock;
+			}
+			if (block.getPreviousBlockId() == prevBlock.getId()) {
+				block.setHeight(prevBlock.getHeight() + 1);
+				block.setByteLength(getByteLength(block));
+				// do not add to unverified as it will be processed immediately
+				if (blockPipeline.add(block, false)) {
+					lastDownloaded = block.getId();
 				}
 				else {
-					logger.debug("Ignoring peer broadcast block with ID " + Convert.toUnsignedLong(block.getId())
-							+ ". Previous block " + Convert.toUnsignedLong(block.getPreviousBlockId())
-							+ " does not match actual previous block ID " + Convert.toUnsignedLong(prevBlock.getId()));
+					logger.info("Ignoring peer broadcast block with ID " + Convert.toUnsignedLong(block.getId())
+						+ ". Conflicting block already exists in queue");
 				}
 			}
+			else {
+				logger.debug("Ignoring peer broadcast block with ID " + Convert.toUnsignedLong(block.getId())
+						+ ". Previous block " + Convert.toUnsignedLong(block.getPreviousBlockId())
+						+ " does not match actual previous block ID " + Convert.toUnsignedLong(prevBlock.getId()));
+			}
 		}
 	}
 
+	/** Memory used by a queued block, the serialized header plus its payload */
+	private static int getByteLength(BlockImpl block) {
+		return block.getBytes().length + block.getPayloadLength();
+	}
+
 	@Override
 	public List<BlockImpl> popOffTo(int height) {
 		return popOffTo(blockchain.getBlockAtHeight(height));
@@ -918,7 +795,7 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
                         throw new BlockNotAcceptedException("Invalid version " + block.getVersion());
                     }
 
-                    if (block.getVersion() != 1 && !Arrays.equals(Crypto.sha256().digest(previousLastBlock.getBytes()), block.getPreviousBlockHash())) {
+                    if (block.getVersion() != 1 && !Arrays.equals(Digests.sha256(previousLastBlock.getBytes()), block.getPreviousBlockHash())) {
                         throw new BlockNotAcceptedException("Previous block hash doesn't match");
                     }
                     if (block.getTimestamp() > curTime + MAX_TIMESTAMP_DIFFERENCE || block.getTimestamp() <= previousLastBlock.getTimestamp()) {
@@ -1019,8 +896,11 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
 
                     block.setPrevious(previousLastBlock);
                     blockListeners.notify(block, Event.BEFORE_BLOCK_ACCEPT);
-                    transactionProcessor.requeueAllUnconfirmedTransactions();
-                    Account.flushAccountTable();
+                    transactionProcessor.reconcileUnconfirmedTransactions(block);
+                    // changes made so far belong to the previous height
+                    for (DerivedTable table : derivedTables) {
+                        table.finish();
+                    }
                     addBlock(block);
                     accept(block, remainingAmount, remainingFee);
 					Timer.Context finishContext = finishTimer.time();
@@ -1042,6 +922,7 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
             } // synchronized
 
             blockListeners.notify(block, Event.BLOCK_PUSHED);
+            blockPipeline.tipChanged();
 
             if (block.getTimestamp() >= Nxt.getEpochTime() - MAX_TIMESTAMP_DIFFERENCE) {
                 Peers.sendToSomePeers(block);
@@ -1052,6 +933,7 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
         }
     }
     private final Timer acceptBlockTimer = Nxt.metrics.timer(MetricRegistry.name(BlockchainImpl.class, "acceptBlock"));
+    private final BlockTemplateBuilder blockTemplateBuilder = new BlockTemplateBuilder();
 
 	private void accept(BlockImpl block, Long remainingAmount, Long remainingFee) throws TransactionNotAcceptedException, BlockNotAcceptedException {
 	    final Timer.Context context = acceptBlockTimer.time();
@@ -1133,6 +1015,7 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
 				throw e;
 			} finally {
                 Nxt.getStores().endTransaction();
+				blockPipeline.tipChanged();
 			}
 			return poppedOffBlocks;
 		} // synchronized
@@ -1162,93 +1045,23 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
 	void generateBlock(String secretPhrase, byte[] publicKey, Long nonce) throws BlockNotAcceptedException {
 
 		TransactionProcessorImpl transactionProcessor = TransactionProcessorImpl.getInstance();
-		List<TransactionImpl> orderedUnconfirmedTransactions = new ArrayList<>();
-		try (FilteringIterator<TransactionImpl> transactions = new FilteringIterator<>(transactionProcessor.getAllUnconfirmedTransactions(),
-				new FilteringIterator.Filter<TransactionImpl>() {
-			@Override
-			public boolean ok(TransactionImpl transaction) {
-				return hasAllReferencedTransactions(transaction, transaction.getTimestamp(), 0);
-			}
-		})) {
-			for (TransactionImpl transaction : transactions) {
-				orderedUnconfirmedTransactions.add(transaction);
-			}
-		}
 
 		BlockImpl previousBlock = blockchain.getLastBlock();
 
-		SortedSet<TransactionImpl> blockTransactions = new TreeSet<>();
-
-		Map<TransactionType, Set<String>> duplicates = new HashMap<>();
-
-		long totalAmountNQT = 0;
-		long totalFeeNQT = 0;
-		int payloadLength = 0;
-
 		int blockTimestamp = Nxt.getEpochTime();
 
-		while (payloadLength <= Constants.MAX_PAYLOAD_LENGTH && blockTransactions.size() <= Constants.MAX_NUMBER_OF_TRANSACTIONS) {
-
-			int prevNumberOfNewTransactions = blockTransactions.size();
-
-			for (TransactionImpl transaction : orderedUnconfirmedTransactions) {
-
-				if(blockTransactions.size() >= Constants.MAX_NUMBER_OF_TRANSACTIONS) {
-					break;
-				}
-
-				int transactionLength = transaction.getSize();
-				if (blockTransactions.contains(transaction) || payloadLength + transactionLength > Constants.MAX_PAYLOAD_LENGTH) {
-					continue;
-				}
-
-				if (transaction.getVersion() != transactionProcessor.getTransactionVersion(previousBlock.getHeight())) {
-					continue;
-				}
-
-				if (transaction.getTimestamp() > blockTimestamp + MAX_TIMESTAMP_DIFFERENCE || transaction.getExpiration() < blockTimestamp) {
-					continue;
-				}
-
-				if (Nxt.getBlockchain().getHeight() >= Constants.AUTOMATED_TRANSACTION_BLOCK) {
-                	if (!EconomicClustering.verifyFork(transaction)) {
-                        logger.debug("Including transaction that was generated on a fork: " + transaction.getStringId()
-                                + " ecBlockHeight " + transaction.getECBlockHeight() + " ecBlockId " + Convert.toUnsignedLong(transaction.getECBlockId()));
-                        continue;
-                    }
-                }
-
-				if (transaction.isDuplicate(duplicates)) {
-					continue;
-				}
-
-				try {
-					transaction.validate();
-				} catch (NxtException.NotCurrentlyValidException e) {
-					continue;
-				} catch (NxtException.ValidationException e) {
-					transactionProcessor.removeUnconfirmedTransaction(transaction);
-					continue;
-				}
-
-				 blockTransactions.add(transaction);
-				 payloadLength += transactionLength;
-				 totalAmountNQT += transaction.getAmountNQT();
-				 totalFeeNQT += transaction.getFeeNQT();
-
-			}
-
-			if (blockTransactions.size() == prevNumberOfNewTransactions) {
-				break;
-			}
-		}
+		BlockTemplateBuilder.BlockTemplate template = blockTemplateBuilder.build(previousBlock, blockTimestamp);
+		SortedSet<TransactionImpl> blockTransactions = template.transactions;
+		long totalAmountNQT = template.totalAmountNQT;
+		long totalFeeNQT = template.totalFeeNQT;
+		int payloadLength = template.payloadLength;
 
 		if(Subscription.isEnabled()) {
 			synchronized(blockchain) {
 				Subscription.clearRemovals();
 				try {
                     Nxt.getStores().beginTransaction();
-					transactionProcessor.requeueAllUnconfirmedTransactions();
+					transactionProcessor.removeConflictingUnconfirmedTransactions(blockTransactions, blockTimestamp);
 					//transactionProcessor.processTransactions(newTransactions, false);
 					for(TransactionImpl transaction : blockTransactions) {
 						transaction.applyUnconfirmed();
@@ -1291,7 +1104,7 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
 		byte[] generationSignature = Nxt.getGenerator().calculateGenerationSignature(previousBlock.getGenerationSignature(), previousBlock.getGeneratorId());
 
 		BlockImpl block;
-		byte[] previousBlockHash = Crypto.sha256().digest(previousBlock.getBytes());
+		byte[] previousBlockHash = Digests.sha256(previousBlock.getBytes());
 
 		try {
 
@@ -1314,13 +1127,8 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
 			logger.debug("Account " + Convert.toUnsignedLong(block.getGeneratorId()) + " generated block " + block.getStringId()
 					+ " at height " + block.getHeight());
 
-			synchronized (blockCache) {
-				blockCache.clear();
-				reverseCache.clear();
-				unverified.clear();
-				lastDownloaded = blockchain.getLastBlock().getId();
-				blockCacheSize = 0;
-			}
+			blockPipeline.clear();
+			lastDownloaded = blockchain.getLastBlock().getId();
 		} catch (TransactionNotAcceptedException e) {
 			logger.debug("Generate block failed: " + e.getMessage());
 			Transaction transaction = e.getTransaction();
@@ -1333,7 +1141,7 @@ final class BlockchainProcessorImpl implements BlockchainProcessor {
 		}
 	}
 
-	private boolean hasAllReferencedTransactions(Transaction transaction, int timestamp, int count) {
+	boolean hasAllReferencedTransactions(Transaction transaction, int timestamp, int count) {
 		if (transaction.getReferencedTransactionFullHash() == null) {
 			return timestamp - transaction.getTimestamp() < 60 * 1440 * 60 && count < 10;
 		}
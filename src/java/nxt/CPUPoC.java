@@ -0,0 +1,165 @@
+package nxt;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import nxt.util.ScoopGenerator;
+import nxt.util.ThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * CPU counterpart of {@link OCLPoC}. Pre-verifies batches of blocks on a dedicated work-stealing pool. The batch is
+ * split into chunks of {@link ScoopGenerator#LANES} blocks whose PoC hits are generated together, while the transaction
+ * signatures of every block are checked as separate tasks so large blocks spread over all cores.
+ */
+final class CPUPoC {
+
+    private static final Logger logger = LoggerFactory.getLogger(CPUPoC.class);
+
+    private static final int threads = Nxt.getIntProperty("burst.cpuVerifyThreads") == 0 ? Runtime.getRuntime().availableProcessors() : Nxt.getIntProperty("burst.cpuVerifyThreads");
+    private static final int batchSize = Nxt.getIntProperty("burst.cpuVerifyBatch") == 0 ? ScoopGenerator.LANES * threads : Nxt.getIntProperty("burst.cpuVerifyBatch");
+
+    private static final ForkJoinPool pool = new ForkJoinPool(threads, pool -> {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("VerifyPoc-" + thread.getPoolIndex());
+        return thread;
+    }, null, false);
+
+    private static final Timer batchTimer = Nxt.metrics.timer(MetricRegistry.name(CPUPoC.class, "batch"));
+
+    static int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Pre-verifies the given blocks and returns the ones that were rejected together with the reason.
+     */
+    static Map<BlockImpl, BlockchainProcessor.BlockNotAcceptedException> validatePoC(List<BlockImpl> blocks) {
+        Map<BlockImpl, BlockchainProcessor.BlockNotAcceptedException> failures = new ConcurrentHashMap<>();
+        final Timer.Context context = batchTimer.time();
+        try {
+            pool.invoke(new BatchTask(blocks, 0, blocks.size(), failures));
+        } finally {
+            context.stop();
+        }
+        return failures;
+    }
+
+    static void shutdown() {
+        ThreadPool.shutdownExecutor(pool);
+    }
+
+    private static final class BatchTask extends RecursiveAction {
+
+        private final List<BlockImpl> blocks;
+        private final int from;
+        private final int to;
+        private final Map<BlockImpl, BlockchainProcessor.BlockNotAcceptedException> failures;
+
+        private BatchTask(List<BlockImpl> blocks, int from, int to, Map<BlockImpl, BlockchainProcessor.BlockNotAcceptedException> failures) {
+            this.blocks = blocks;
+            this.from = from;
+            this.to = to;
+            this.failures = failures;
+        }
+
+        @Override
+        protected void compute() {
+            int lanes = ScoopGenerator.LANES;
+            if (to - from <= lanes) {
+                verify(blocks.subList(from, to));
+                return;
+            }
+            int chunks = (to - from + lanes - 1) / lanes;
+            int middle = from + (chunks >>> 1) * lanes;
+            invokeAll(new BatchTask(blocks, from, middle, failures), new BatchTask(blocks, middle, to, failures));
+        }
+
+        private void verify(List<BlockImpl> chunk) {
+            List<BlockImpl> pending = new ArrayList<>(chunk.size());
+            List<SignatureTask> signatureTasks = new ArrayList<>(chunk.size());
+            for (BlockImpl block : chunk) {
+                if (!block.isVerified()) {
+                    pending.add(block);
+                    signatureTasks.add(new SignatureTask(block));
+                }
+            }
+            if (pending.isEmpty()) {
+                return;
+            }
+            for (SignatureTask signatureTask : signatureTasks) {
+                signatureTask.fork();
+            }
+            BigInteger[] pocTimes;
+            try {
+                pocTimes = calculatePocTimes(pending);
+            } catch (RuntimeException e) {
+                logger.info("Error pre-verifying block generation signature", e);
+                pocTimes = null;
+            }
+            for (int i = 0; i < pending.size(); i++) {
+                BlockchainProcessor.TransactionNotAcceptedException failure = signatureTasks.get(i).join();
+                if (pocTimes == null) {
+                    continue;
+                }
+                if (failure != null) {
+                    failures.put(pending.get(i), failure);
+                } else {
+                    pending.get(i).setPreVerified(pocTimes[i]);
+                }
+            }
+        }
+
+        private BigInteger[] calculatePocTimes(List<BlockImpl> pending) {
+            int count = pending.size();
+            long[] generatorIds = new long[count];
+            long[] nonces = new long[count];
+            byte[][] generationSignatures = new byte[count][];
+            int[] scoops = new int[count];
+            for (int i = 0; i < count; i++) {
+                BlockImpl block = pending.get(i);
+                generatorIds[i] = block.getGeneratorId();
+                nonces[i] = block.getNonce();
+                generationSignatures[i] = block.getGenerationSignature();
+                scoops[i] = block.getScoopNum();
+            }
+            return ScoopGenerator.calculateHits(generatorIds, nonces, generationSignatures, scoops, count);
+        }
+    }
+
+    /**
+     * Returns the first signature failure of the block's transactions, or null. Large blocks are split further into
+     * the same pool.
+     */
+    private static final class SignatureTask extends RecursiveTask<BlockchainProcessor.TransactionNotAcceptedException> {
+
+        private final BlockImpl block;
+
+        private SignatureTask(BlockImpl block) {
+            this.block = block;
+        }
+
+        @Override
+        protected BlockchainProcessor.TransactionNotAcceptedException compute() {
+            try {
+                block.verifyTransactionSignatures(0, block.getTransactions().size(), BlockImpl.SIGNATURES_PER_TASK);
+                return null;
+            } catch (BlockchainProcessor.TransactionNotAcceptedException e) {
+                return e;
+            }
+        }
+    }
+
+    private CPUPoC() {} //never
+
+}
@@ -1,7 +1,7 @@
 package nxt;
 
-import fr.cryptohash.Shabal256;
 import nxt.crypto.Crypto;
+import nxt.crypto.Digests;
 import nxt.util.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,8 +10,9 @@ import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
-import java.util.Map.Entry;
+import java.util.PriorityQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
@@ -25,27 +26,55 @@ public final class GeneratorImpl implements Generator {
     private static final ConcurrentMap<Long, GeneratorStateImpl> generators = new ConcurrentHashMap<>();
     private static final Collection<? extends GeneratorState> allGenerators = Collections.unmodifiableCollection(generators.values());
 
+    /** Earliest deadline first, generators for an older block are dropped when they come up */
+    private static final Comparator<GeneratorStateImpl> DUE_ORDER = new Comparator<GeneratorStateImpl>() {
+        @Override
+        public int compare(GeneratorStateImpl g1, GeneratorStateImpl g2) {
+            int result = Long.compare(g1.block, g2.block);
+            return result != 0 ? result : g1.deadline.compareTo(g2.deadline);
+        }
+    };
+
+    private static final Comparator<GeneratorStateImpl> RETRY_ORDER = new Comparator<GeneratorStateImpl>() {
+        @Override
+        public int compare(GeneratorStateImpl g1, GeneratorStateImpl g2) {
+            int result = Long.compare(g1.retryAt, g2.retryAt);
+            return result != 0 ? result : DUE_ORDER.compare(g1, g2);
+        }
+    };
+
+    /** Longest the generation thread sleeps, so it notices a shutdown or a changed clock */
+    private static final long MAX_WAIT_MILLIS = 1000;
+    /** Pause before a generator is tried again after its block wasn't accepted */
+    private static final long RETRY_MILLIS = 500;
+    /** Times a block is generated again right away after it contained an invalid transaction */
+    private static final int MAX_IMMEDIATE_RETRIES = 10;
+
+    /** The generators which haven't forged yet, guarded by itself */
+    private static final PriorityQueue<GeneratorStateImpl> schedule = new PriorityQueue<>(11, DUE_ORDER);
+    /** The generators whose block wasn't accepted, by the time they are tried again, guarded by schedule */
+    private static final PriorityQueue<GeneratorStateImpl> retries = new PriorityQueue<>(11, RETRY_ORDER);
+
     private static final Runnable generateBlockThread = new Runnable() {
 
         @Override
         public void run() {
 
             try {
-                if (Nxt.getBlockchainProcessor().isScanning()) {
-                    return;
-                }
                 try {
-                    long currentBlock = Nxt.getBlockchain().getLastBlock().getHeight();
-                    Iterator<Entry<Long, GeneratorStateImpl>> it = generators.entrySet().iterator();
-                    while(it.hasNext()) {
-                    	Entry<Long, GeneratorStateImpl> generator = it.next();
-                    	if(currentBlock < generator.getValue().getBlock()) {
-                    		generator.getValue().forge();
-                    	}
-                    	else {
-                    		it.remove();
-                    	}
+                    GeneratorStateImpl generator = takeDueGenerator();
+                    if (generator != null) {
+                        try {
+                            generator.forge();
+                        } catch (BlockchainProcessor.BlockNotAcceptedException e) {
+                            retryLater(generator, e);
+                        } catch (RuntimeException e) {
+                            retryLater(generator, e);
+                            throw e;
+                        }
                     }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
                 } catch (Exception e) {
                     logger.debug("Error in block generation thread", e);
                 }
@@ -60,11 +89,103 @@ public final class GeneratorImpl implements Generator {
     };
 
     static {
-        ThreadPool.scheduleThread("GenerateBlocks", generateBlockThread, 500, TimeUnit.MILLISECONDS);
+        ThreadPool.scheduleThread("GenerateBlocks", generateBlockThread, 1, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Takes the generator with the best deadline off the schedule once its deadline has passed, generators to be
+     * tried again come first. Until then it waits for the deadline to pass, a better nonce or a new block, and
+     * returns null.
+     */
+    private static GeneratorStateImpl takeDueGenerator() throws InterruptedException {
+        synchronized (schedule) {
+            long waitMillis = MAX_WAIT_MILLIS;
+            if (!Nxt.getBlockchainProcessor().isScanning()) {
+                Block lastBlock = Nxt.getBlockchain().getLastBlock();
+                dropStale(retries, lastBlock.getHeight());
+                dropStale(schedule, lastBlock.getHeight());
+                GeneratorStateImpl retry = retries.peek();
+                if (retry != null) {
+                    long millis = retry.retryAt - System.currentTimeMillis();
+                    if (millis <= 0) {
+                        return retries.poll();
+                    }
+                    waitMillis = Math.min(millis, waitMillis);
+                }
+                GeneratorStateImpl generator = schedule.peek();
+                if (generator != null && generator.deadline.compareTo(BigInteger.valueOf(Integer.MAX_VALUE)) < 0) {
+                    // the same condition as forge(), more seconds than the deadline have elapsed since the last block
+                    long forgeTime = lastBlock.getTimestamp() + generator.deadline.longValue() + 1;
+                    if (Nxt.getEpochTime() >= forgeTime) {
+                        return schedule.poll();
+                    }
+                    long millis = Constants.EPOCH_BEGINNING + forgeTime * 1000 - 500 - System.currentTimeMillis();
+                    waitMillis = Math.min(millis, waitMillis);
+                }
+            }
+            schedule.wait(Math.max(waitMillis, 1));
+            return null;
+        }
+    }
+
+    private static void dropStale(PriorityQueue<GeneratorStateImpl> queue, int height) {
+        Iterator<GeneratorStateImpl> it = queue.iterator();
+        while (it.hasNext()) {
+            if (it.next().block <= height) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Puts a generator whose block wasn't accepted back while its block is still the next one. After an invalid
+     * transaction, which generateBlock has removed from the pool, it is tried again right away.
+     */
+    private static void retryLater(GeneratorStateImpl generator, Exception e) {
+        synchronized (schedule) {
+            if (generators.get(generator.accountId) != generator
+                    || generator.block != Nxt.getBlockchain().getLastBlock().getHeight() + 1) {
+                return;
+            }
+            generator.failures++;
+            boolean immediate = e instanceof BlockchainProcessor.TransactionNotAcceptedException
+                    && generator.failures <= MAX_IMMEDIATE_RETRIES;
+            generator.retryAt = System.currentTimeMillis() + (immediate ? 0 : RETRY_MILLIS);
+            retries.add(generator);
+            logger.debug("Account " + Convert.toUnsignedLong(generator.accountId) + " will retry generating block "
+                    + generator.block + (immediate ? " now" : " in " + RETRY_MILLIS + " ms"));
+        }
+    }
+
+    /**
+     * Drops the generators for blocks which are already in the chain and wakes up the generation thread, the deadlines
+     * count from the timestamp of the new last block.
+     */
+    private static void onBlock(Block block) {
+        synchronized (schedule) {
+            dropStale(schedule, block.getHeight());
+            dropStale(retries, block.getHeight());
+            Iterator<GeneratorStateImpl> all = generators.values().iterator();
+            while (all.hasNext()) {
+                if (all.next().block <= block.getHeight()) {
+                    all.remove();
+                }
+            }
+            schedule.notifyAll();
+        }
     }
 
     @Override
-    public void init() {}
+    public void init() {
+        Listener<Block> blockListener = new Listener<Block>() {
+            @Override
+            public void notify(Block block) {
+                onBlock(block);
+            }
+        };
+        Nxt.getBlockchainProcessor().addListener(blockListener, BlockchainProcessor.Event.BLOCK_PUSHED);
+        Nxt.getBlockchainProcessor().addListener(blockListener, BlockchainProcessor.Event.BLOCK_POPPED);
+    }
 
     void clear() {
     }
@@ -95,20 +216,31 @@ public final class GeneratorImpl implements Generator {
 
     @Override
     public GeneratorState addNonce(String secretPhrase, Long nonce, byte[] publicKey) {
-		byte[] publicKeyHash = Crypto.sha256().digest(publicKey);
+		byte[] publicKeyHash = Digests.sha256(publicKey);
 		Long id = Convert.fullHashToId(publicKeyHash);
 		
 		GeneratorStateImpl generator = new GeneratorStateImpl(secretPhrase, nonce, publicKey, id);
-		GeneratorStateImpl curGen = generators.get(id);
-		if(curGen == null || generator.getBlock() > curGen.getBlock() || generator.getDeadline().compareTo(curGen.getDeadline()) < 0) {
-		    generators.put(id, generator);
-			listeners.notify(generator, Event.START_FORGING);
-			logger.debug("Account " + Convert.toUnsignedLong(id) + " started mining, deadline "
-			        + generator.getDeadline() + " seconds");
-		}
-		else {
-			logger.debug("Account " + Convert.toUnsignedLong(id) + " already has better nonce");
+		synchronized (schedule) {
+			GeneratorStateImpl curGen = generators.get(id);
+			if (curGen == null || generator.getBlock() > curGen.getBlock()
+			        || (generator.getBlock() == curGen.getBlock() && generator.getDeadline().compareTo(curGen.getDeadline()) < 0)) {
+			    // the dominated nonce of the account won't forge anymore
+			    if (curGen != null) {
+			        schedule.remove(curGen);
+			        retries.remove(curGen);
+			    }
+			    generators.put(id, generator);
+			    schedule.add(generator);
+			    schedule.notifyAll();
+			}
+			else {
+				logger.debug("Account " + Convert.toUnsignedLong(id) + " already has better nonce");
+				return generator;
+			}
 		}
+		listeners.notify(generator, Event.START_FORGING);
+		logger.debug("Account " + Convert.toUnsignedLong(id) + " started mining, deadline "
+		        + generator.getDeadline() + " seconds");
 		
 		return generator;
     }
@@ -132,9 +264,7 @@ public final class GeneratorImpl implements Generator {
         gensigbuf.put(lastGenSig);
         gensigbuf.putLong(lastGenId);
 
-        Shabal256 md = new Shabal256();
-        md.update(gensigbuf.array());
-        return md.digest();
+        return Digests.shabal256(gensigbuf.array());
     }
 
     @Override
@@ -143,30 +273,18 @@ public final class GeneratorImpl implements Generator {
         posbuf.put(genSig);
         posbuf.putLong(height);
 
-        Shabal256 md = new Shabal256();
-        md.update(posbuf.array());
-        BigInteger hashnum = new BigInteger(1, md.digest());
+        BigInteger hashnum = new BigInteger(1, Digests.shabal256(posbuf.array()));
         return hashnum.mod(BigInteger.valueOf(MiningPlot.SCOOPS_PER_PLOT)).intValue();
     }
 
     @Override
     public BigInteger calculateHit(long accountId, long nonce, byte[] genSig, int scoop) {
-        MiningPlot plot = new MiningPlot(accountId, nonce);
-
-        Shabal256 md = new Shabal256();
-        md.update(genSig);
-        plot.hashScoop(md, scoop);
-        byte[] hash = md.digest();
-        return new BigInteger(1, new byte[] {hash[7], hash[6], hash[5], hash[4], hash[3], hash[2], hash[1], hash[0]});
+        return ScoopGenerator.calculateHit(accountId, nonce, genSig, scoop);
     }
 
     @Override
     public BigInteger calculateHit(long accountId, long nonce, byte[] genSig, byte[] scoopData) {
-        Shabal256 md = new Shabal256();
-        md.update(genSig);
-        md.update(scoopData);
-        byte[] hash = md.digest();
-        return new BigInteger(1, new byte[] {hash[7], hash[6], hash[5], hash[4], hash[3], hash[2], hash[1], hash[0]});
+        return ScoopGenerator.calculateHit(genSig, scoopData, 0);
     }
 
     @Override
@@ -183,6 +301,9 @@ public final class GeneratorImpl implements Generator {
         private volatile BigInteger deadline;
         private final long nonce;
         private final long block;
+        /** When a block that wasn't accepted is generated again and how often that happened, guarded by schedule */
+        private long retryAt;
+        private int failures;
 
         private GeneratorStateImpl(String secretPhrase, Long nonce, byte[] publicKey, Long account) {
             this.secretPhrase = secretPhrase;
@@ -1,14 +1,17 @@
 package nxt;
 
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.JmxReporter;
 import com.codahale.metrics.MetricRegistry;
 import com.github.gquintana.metrics.util.SqlObjectNameFactory;
+import nxt.crypto.Digests;
 import nxt.db.firebird.FirebirdDbs;
 import nxt.db.firebird.FirebirdStores;
 import nxt.db.h2.H2Dbs;
 import nxt.db.h2.H2Stores;
 import nxt.db.mariadb.MariadbDbs;
 import nxt.db.mariadb.MariadbStores;
+import nxt.db.quicksync.BinDumps;
 import nxt.db.sql.Db;
 import nxt.db.store.Dbs;
 import nxt.db.store.Stores;
@@ -24,6 +27,8 @@ import org.slf4j.LoggerFactory;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -197,6 +202,8 @@ public final class Nxt {
         Users.shutdown();
         Peers.shutdown();
         ThreadPool.shutdown();
+        CPUPoC.shutdown();
+        BlockDownloader.shutdown();
         Db.shutdown();
         if (BlockchainProcessorImpl.oclVerify) {
             OCLPoC.destroy();
@@ -213,12 +220,34 @@ public final class Nxt {
         return dbs;
     }
 
+    /**
+     * Digest instances created and bytes allocated by all live threads, the deltas of both give the allocation rate.
+     */
+    private static void registerAllocationMetrics() {
+        metrics.register(MetricRegistry.name(Digests.class, "created"), (Gauge<Long>) Digests::getCreatedCount);
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (threadBean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported()) {
+            com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+            metrics.register(MetricRegistry.name(Nxt.class, "jvm", "allocatedBytes"), (Gauge<Long>) () -> {
+                long total = 0;
+                for (long bytes : allocationBean.getThreadAllocatedBytes(allocationBean.getAllThreadIds())) {
+                    if (bytes > 0) {
+                        total += bytes;
+                    }
+                }
+                return total;
+            });
+        }
+    }
+
     private static class Init {
 
         static {
             try {
                 final JmxReporter reporter = JmxReporter.forRegistry(metrics).createsObjectNamesWith(new SqlObjectNameFactory()).build();
                 reporter.start();
+                registerAllocationMetrics();
 
                 long startTime = System.currentTimeMillis();
 
@@ -251,6 +280,7 @@ public final class Nxt {
                     default:
                         throw new RuntimeException("Error initializing wallet: Unknown database type");
                 }
+                BinDumps.checkLoadCompleted();
                 TransactionProcessorImpl.getInstance();
                 BlockchainProcessorImpl.getInstance();
 
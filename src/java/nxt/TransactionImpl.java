@@ -1,6 +1,8 @@
 package nxt;
 
 import nxt.crypto.Crypto;
+import nxt.crypto.Digests;
+import nxt.crypto.SignatureBatch;
 import nxt.db.NxtKey;
 import nxt.util.Convert;
 import org.json.simple.JSONObject;
@@ -394,12 +396,12 @@ public final class TransactionImpl implements Transaction {
             byte[] hash;
             if (useNQT()) {
                 byte[] data = zeroSignature(getBytes());
-                byte[] signatureHash = Crypto.sha256().digest(signature != null ? signature : new byte[64]);
-                MessageDigest digest = Crypto.sha256();
+                byte[] signatureHash = Digests.sha256(signature != null ? signature : new byte[64]);
+                MessageDigest digest = Digests.sha256();
                 digest.update(data);
                 hash = digest.digest(signatureHash);
             } else {
-                hash = Crypto.sha256().digest(getBytes());
+                hash = Digests.sha256(getBytes());
             }
             BigInteger bigInteger = new BigInteger(1, new byte[] {hash[7], hash[6], hash[5], hash[4], hash[3], hash[2], hash[1], hash[0]});
             id = bigInteger.longValue();
@@ -722,6 +724,13 @@ public final class TransactionImpl implements Transaction {
         return Crypto.verify(signature, data, senderPublicKey, useNQT());
     }
 
+    /**
+     * Queues the same check as {@link #verifySignature()}.
+     */
+    void addToSignatureBatch(SignatureBatch batch) {
+        batch.add(signature, zeroSignature(getBytes()), senderPublicKey, useNQT());
+    }
+
     public int getSize() {
         return signatureOffset() + 64  + (version > 0 ? 4 + 4 + 8 : 0) + appendagesSize;
     }
@@ -18,6 +18,11 @@ public interface TransactionProcessor extends Observable<List<? extends Transact
     NxtIterator<? extends Transaction> getAllUnconfirmedTransactions();
 
     Transaction getUnconfirmedTransaction(long transactionId);
+
+    /**
+     * The unconfirmed transactions the account sends or receives.
+     */
+    List<? extends Transaction> getUnconfirmedTransactions(long accountId);
     
     void clearUnconfirmedTransactions();
 
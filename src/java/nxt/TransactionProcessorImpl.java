@@ -1,10 +1,13 @@
 package nxt;
 
-import nxt.db.EntityTable;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import nxt.db.NxtIterator;
 import nxt.db.NxtKey;
 //import nxt.db.sql.*;
-import nxt.db.sql.EntitySqlTable;
+import nxt.crypto.SignatureBatch;
+import nxt.db.store.TransactionProcessorStore;
 import nxt.peer.Peer;
 import nxt.peer.Peers;
 import nxt.util.JSON;
@@ -23,6 +26,7 @@ import org.slf4j.LoggerFactory;
 //import java.sql.SQLException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
 
 public final class TransactionProcessorImpl implements TransactionProcessor {
 
@@ -44,13 +48,19 @@ public final class TransactionProcessorImpl implements TransactionProcessor {
             Nxt.getStores().getTransactionProcessorStore().getUnconfirmedTransactionDbKeyFactory();
 
 
-    private final EntityTable<TransactionImpl> unconfirmedTransactionTable =
-            Nxt.getStores().getTransactionProcessorStore().getUnconfirmedTransactionTable();
+    private final TransactionProcessorStore transactionProcessorStore = Nxt.getStores().getTransactionProcessorStore();
 
     private final Set<TransactionImpl> nonBroadcastedTransactions = Collections.newSetFromMap(new ConcurrentHashMap<TransactionImpl,Boolean>());
     private final Listeners<List<? extends Transaction>,Event> transactionListeners = new Listeners<>();
-    private final Set<TransactionImpl> lostTransactions = new HashSet<>();
-    private final Map<Long, Integer> lostTransactionHeights = new HashMap<>();
+    // shared with the store, rolling back the pool hands its transactions back through processLater
+    private final Set<TransactionImpl> lostTransactions = transactionProcessorStore.getLostTransactions();
+    private final Map<Long, Integer> lostTransactionHeights = transactionProcessorStore.getLostTransactionHeights();
+    private int rebroadcastCheckHeight = -1;
+
+    private final Timer precheckTimer = Nxt.metrics.timer(MetricRegistry.name(TransactionProcessorImpl.class, "precheck"));
+    private final Meter precheckMeter = Nxt.metrics.meter(MetricRegistry.name(TransactionProcessorImpl.class, "precheck", "transactions"));
+    private final Timer applyTimer = Nxt.metrics.timer(MetricRegistry.name(TransactionProcessorImpl.class, "apply"));
+    private final Meter applyMeter = Nxt.metrics.meter(MetricRegistry.name(TransactionProcessorImpl.class, "apply", "transactions"));
 
     private final Runnable removeUnconfirmedTransactionsThread = new Runnable() {
 
@@ -60,7 +70,7 @@ public final class TransactionProcessorImpl implements TransactionProcessor {
             try {
                 try {
                     List<TransactionImpl> expiredTransactions = new ArrayList<>();
-                    try (NxtIterator<TransactionImpl> iterator = Nxt.getStores().getTransactionProcessorStore().getExpiredTransactions()) {
+                    try (NxtIterator<TransactionImpl> iterator = transactionProcessorStore.getExpiredTransactions()) {
                         while (iterator.hasNext()) {
                             expiredTransactions.add(iterator.next());
                         }
@@ -147,19 +157,27 @@ public final class TransactionProcessorImpl implements TransactionProcessor {
                 try {
                     synchronized (BlockchainImpl.getInstance()) {
                         if(lostTransactions.size() > 0) {
-                            List<Transaction> reAdded = processTransactions(lostTransactions, false);
+                            processTransactions(lostTransactions, false, verifySignatures(lostTransactions), true);
+                            lostTransactions.clear();
+                        }
 
-                            if(enableTransactionRebroadcasting && Nxt.getEpochTime() - Nxt.getBlockchain().getLastBlock().getTimestamp() < 4 * 60) {
+                        // unconfirmed transactions stay in the pool across blocks, check them once per block
+                        int height = Nxt.getBlockchain().getHeight();
+                        if(enableTransactionRebroadcasting && height != rebroadcastCheckHeight) {
+                            rebroadcastCheckHeight = height;
+                            if(Nxt.getEpochTime() - Nxt.getBlockchain().getLastBlock().getTimestamp() < 4 * 60) {
                                 List<Transaction> rebroadcastLost = new ArrayList<>();
-                                for (Transaction lost : reAdded) {
-                                    if (lostTransactionHeights.containsKey(lost.getId())) {
-                                        int addedHeight = lostTransactionHeights.get(lost.getId());
-                                        if (Nxt.getBlockchain().getHeight() - addedHeight >= rebroadcastAfter
-                                                && (Nxt.getBlockchain().getHeight() - addedHeight - rebroadcastAfter) % rebroadcastEvery == 0) {
-                                            rebroadcastLost.add(lost);
+                                try (NxtIterator<TransactionImpl> unconfirmed = getAllUnconfirmedTransactions()) {
+                                    for (TransactionImpl lost : unconfirmed) {
+                                        if (lostTransactionHeights.containsKey(lost.getId())) {
+                                            int addedHeight = lostTransactionHeights.get(lost.getId());
+                                            if (height - addedHeight >= rebroadcastAfter
+                                                    && (height - addedHeight - rebroadcastAfter) % rebroadcastEvery == 0) {
+                                                rebroadcastLost.add(lost);
+                                            }
+                                        } else {
+                                            lostTransactionHeights.put(lost.getId(), height);
                                         }
-                                    } else {
-                                        lostTransactionHeights.put(lost.getId(), Nxt.getBlockchain().getHeight());
                                     }
                                 }
 
@@ -177,8 +195,6 @@ public final class TransactionProcessorImpl implements TransactionProcessor {
                                     }
                                 }
                             }
-
-                            lostTransactions.clear();
                         }
                     }
                     Peer peer = Peers.getAnyPeer(Peer.State.CONNECTED, true);
@@ -244,12 +260,17 @@ public final class TransactionProcessorImpl implements TransactionProcessor {
 
     @Override
     public NxtIterator<TransactionImpl> getAllUnconfirmedTransactions() {
-        return unconfirmedTransactionTable.getAll(0, -1);
+        return transactionProcessorStore.getAllUnconfirmedTransactions();
     }
 
     @Override
     public Transaction getUnconfirmedTransaction(long transactionId) {
-        return unconfirmedTransactionTable.get(unconfirmedTransactionDbKeyFactory.newKey(transactionId));
+        return transactionProcessorStore.getUnconfirmedTransaction(transactionId);
+    }
+
+    @Override
+    public List<TransactionImpl> getUnconfirmedTransactions(long accountId) {
+        return transactionProcessorStore.getUnconfirmedTransactions(accountId);
     }
 
     public Transaction.Builder newTransactionBuilder(byte[] senderPublicKey, long amountNQT, long feeNQT, short deadline,
@@ -277,7 +298,7 @@ public final class TransactionProcessorImpl implements TransactionProcessor {
                 logger.info("Transaction " + transaction.getStringId() + " already in blockchain, will not broadcast again");
                 return;
             }
-            if (unconfirmedTransactionTable.get(((TransactionImpl) transaction).getDbKey()) != null) {
+            if (transactionProcessorStore.getUnconfirmedTransaction(transaction.getId()) != null) {
                 if (enableTransactionRebroadcasting) {
                     nonBroadcastedTransactions.add((TransactionImpl) transaction);
                     logger.info("Transaction " + transaction.getStringId() + " already in unconfirmed pool, will re-broadcast");
@@ -328,7 +349,7 @@ public final class TransactionProcessorImpl implements TransactionProcessor {
                         removed.add(transaction);
                     }
                 }
-                unconfirmedTransactionTable.truncate();
+                transactionProcessorStore.clearUnconfirmedTransactions();
                 Account.flushAccountTable();
                 Nxt.getStores().commitTransaction();
             } catch (Exception e) {
@@ -344,17 +365,52 @@ public final class TransactionProcessorImpl implements TransactionProcessor {
         }
     }
 
-    void requeueAllUnconfirmedTransactions() {
-        List<Transaction> removed = new ArrayList<>();
-        try (NxtIterator<TransactionImpl> unconfirmedTransactions = getAllUnconfirmedTransactions()) {
-            for (TransactionImpl transaction : unconfirmedTransactions) {
-                transaction.undoUnconfirmed();
-                removed.add(transaction);
+    /**
+     * Undoes the unconfirmed transactions which compete with the given transactions of a block for the same balances
+     * and takes them out of the pool: the block's own transactions, every other one of their senders, and those of the
+     * accounts paying a subscription at the block's timestamp. Applying the block then starts from the same unconfirmed
+     * balances as on a node without these transactions, all other unconfirmed transactions stay applied.
+     */
+    List<TransactionImpl> removeConflictingUnconfirmedTransactions(Collection<TransactionImpl> blockTransactions, int timestamp) {
+        Set<Long> accountIds = new HashSet<>();
+        for (TransactionImpl transaction : blockTransactions) {
+            accountIds.add(transaction.getSenderId());
+        }
+        if (Subscription.isEnabled()) {
+            try (NxtIterator<Subscription> subscriptions = Nxt.getStores().getSubscriptionStore().getUpdateSubscriptions(timestamp)) {
+                for (Subscription subscription : subscriptions) {
+                    accountIds.add(subscription.senderId);
+                }
+            }
+        }
+        List<TransactionImpl> removed = new ArrayList<>();
+        for (long accountId : accountIds) {
+            for (TransactionImpl transaction : transactionProcessorStore.getUnconfirmedTransactions(accountId)) {
+                if (transaction.getSenderId() == accountId) {
+                    transactionProcessorStore.deleteTransaction(transaction);
+                    transaction.undoUnconfirmed();
+                    removed.add(transaction);
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Makes room for the block in the pool, see {@link #removeConflictingUnconfirmedTransactions}. The removed
+     * transactions which aren't part of the block are processed again once it is accepted.
+     */
+    void reconcileUnconfirmedTransactions(BlockImpl block) {
+        List<TransactionImpl> removed = removeConflictingUnconfirmedTransactions(block.getTransactions(), block.getTimestamp());
+        Set<TransactionImpl> included = new HashSet<>(block.getTransactions());
+        for (TransactionImpl transaction : removed) {
+            if (!included.contains(transaction)) {
                 lostTransactions.add(transaction);
             }
         }
-        unconfirmedTransactionTable.truncate();
-        transactionListeners.notify(removed, Event.REMOVED_UNCONFIRMED_TRANSACTIONS);
+        if (!removed.isEmpty()) {
+            transactionListeners.notify(removed, Event.REMOVED_UNCONFIRMED_TRANSACTIONS);
+        }
     }
 
     void removeUnconfirmedTransaction(TransactionImpl transaction) {
@@ -376,7 +432,7 @@ public final class TransactionProcessorImpl implements TransactionProcessor {
             return;
         }
 
-        int deleted = Nxt.getStores().getTransactionProcessorStore().deleteTransaction(transaction);
+        int deleted = transactionProcessorStore.deleteTransaction(transaction);
         if (deleted > 0) {
             transaction.undoUnconfirmed();
             transactionListeners.notify(Collections.singletonList(transaction), Event.REMOVED_UNCONFIRMED_TRANSACTIONS);
@@ -389,7 +445,7 @@ public final class TransactionProcessorImpl implements TransactionProcessor {
 
     // Watch: This is not really clean
     void processLater(Collection<TransactionImpl> transactions) {
-        Nxt.getStores().getTransactionProcessorStore().processLater(transactions);
+        transactionProcessorStore.processLater(transactions);
     }
 
     private void processPeerTransactions(JSONArray transactionsData) throws NxtException.ValidationException {
@@ -399,108 +455,254 @@ public final class TransactionProcessorImpl implements TransactionProcessor {
         if (Nxt.getBlockchain().getHeight() <= Constants.NQT_BLOCK) {
             return;
         }
-        List<TransactionImpl> transactions = new ArrayList<>();
-        for (Object transactionData : transactionsData) {
-            try {
-                TransactionImpl transaction = parseTransaction((JSONObject) transactionData);
-                transaction.validate();
-                if(!EconomicClustering.verifyFork(transaction)) {
-                	/*if(Nxt.getBlockchain().getHeight() >= Constants.EC_CHANGE_BLOCK_1) {
-                		throw new NxtException.NotValidException("Transaction from wrong fork");
-                	}*/
-                	continue;
+        List<TransactionImpl> transactions = precheckPeerTransactions(transactionsData);
+        // the signatures have been checked already
+        processTransactions(transactions, true, new HashSet<>(transactions), true);
+        nonBroadcastedTransactions.removeAll(transactions);
+    }
+
+    /**
+     * Parses the transactions sent by a peer and runs all checks which don't need the blockchain lock, in parallel.
+     * Returns the transactions which are worth applying, throws if the peer sent an invalid one.
+     */
+    private List<TransactionImpl> precheckPeerTransactions(final JSONArray transactionsData) throws NxtException.ValidationException {
+        final Timer.Context context = precheckTimer.time();
+        try {
+            final int curTime = Nxt.getEpochTime();
+            final TransactionImpl[] transactions = new TransactionImpl[transactionsData.size()];
+            final NxtException.ValidationException[] failures = new NxtException.ValidationException[transactions.length];
+            IntStream.range(0, transactions.length).parallel().forEach(i -> {
+                try {
+                    transactions[i] = precheck((JSONObject) transactionsData.get(i), curTime);
+                } catch (NxtException.ValidationException e) {
+                    failures[i] = e;
+                }
+            });
+            precheckMeter.mark(transactions.length);
+
+            List<TransactionImpl> result = new ArrayList<>();
+            for (int i = 0; i < transactions.length; i++) {
+                if (failures[i] != null) {
+                    logger.debug("Invalid transaction from peer: " + ((JSONObject) transactionsData.get(i)).toJSONString());
+                    throw failures[i];
+                }
+                if (transactions[i] != null) {
+                    result.add(transactions[i]);
                 }
-                transactions.add(transaction);
-            } catch (NxtException.NotCurrentlyValidException ignore) {
-            } catch (NxtException.NotValidException e) {
-                logger.debug("Invalid transaction from peer: " + ((JSONObject) transactionData).toJSONString());
-                throw e;
             }
+            return result;
+        } finally {
+            context.stop();
         }
-        processTransactions(transactions, true);
-        nonBroadcastedTransactions.removeAll(transactions);
+    }
+
+    /**
+     * The parsed transaction, or null if it isn't worth applying now.
+     */
+    private TransactionImpl precheck(JSONObject transactionData, int curTime) throws NxtException.ValidationException {
+        TransactionImpl transaction;
+        try {
+            transaction = parseTransaction(transactionData);
+            transaction.validate();
+        } catch (NxtException.NotCurrentlyValidException e) {
+            markRejected("precheck", "notCurrentlyValid");
+            return null;
+        } catch (NxtException.ValidationException e) {
+            markRejected("precheck", "invalid");
+            throw e;
+        }
+        if(!EconomicClustering.verifyFork(transaction)) {
+            /*if(Nxt.getBlockchain().getHeight() >= Constants.EC_CHANGE_BLOCK_1) {
+                throw new NxtException.NotValidException("Transaction from wrong fork");
+            }*/
+            markRejected("precheck", "fork");
+            return null;
+        }
+        if (transaction.getTimestamp() > curTime + 15 || transaction.getExpiration() < curTime
+                || transaction.getDeadline() > 1440) {
+            markRejected("precheck", "timestamp");
+            return null;
+        }
+        // peers keep sending the same unconfirmed transactions, don't check their signatures again
+        if (getUnconfirmedTransaction(transaction.getId()) != null || Nxt.getDbs().getTransactionDb().hasTransaction(transaction.getId())) {
+            markRejected("precheck", "known");
+            return null;
+        }
+        if (!transaction.verifySignature()) {
+            markRejected("precheck", "signature");
+            return null;
+        }
+        return transaction;
+    }
+
+    private static void markRejected(String stage, String reason) {
+        Nxt.metrics.meter(MetricRegistry.name(TransactionProcessorImpl.class, stage, "rejected", reason)).mark();
     }
 
     List<Transaction> processTransactions(Collection<TransactionImpl> transactions, final boolean sendToPeers) {
+        return processTransactions(transactions, sendToPeers, Collections.<TransactionImpl>emptySet(), false);
+    }
+
+    /**
+     * @param verifiedSignatures transactions whose signatures don't have to be checked again
+     * @param batch whether to add all transactions in one database transaction, e.g. those of popped off blocks or
+     *              sent by a peer. If that fails they are added one at a time.
+     */
+    private List<Transaction> processTransactions(Collection<TransactionImpl> transactions, final boolean sendToPeers,
+                                                  Set<TransactionImpl> verifiedSignatures, boolean batch) {
         if (transactions.isEmpty()) {
             return Collections.emptyList();
         }
-        List<Transaction> sendToPeersTransactions = new ArrayList<>();
-        List<Transaction> addedUnconfirmedTransactions = new ArrayList<>();
-        List<Transaction> addedDoubleSpendingTransactions = new ArrayList<>();
+        Processed processed = new Processed();
+
+        if (batch) {
+            try {
+                processInTransaction(transactions, verifiedSignatures, sendToPeers, processed);
+            } catch (RuntimeException e) {
+                logger.info("Error processing transactions as a batch, processing them one by one", e);
+                batch = false;
+            }
+        }
+        if (!batch) {
+            for (TransactionImpl transaction : transactions) {
+                try {
+                    processInTransaction(Collections.singletonList(transaction), verifiedSignatures, sendToPeers, processed);
+                } catch (RuntimeException e) {
+                    logger.info("Error processing transaction", e);
+                }
+            }
+        }
+
+        if (processed.sendToPeers.size() > 0) {
+            Peers.sendToSomePeers(processed.sendToPeers);
+        }
+
+        if (processed.evicted.size() > 0) {
+            nonBroadcastedTransactions.removeAll(processed.evicted);
+            transactionListeners.notify(processed.evicted, Event.REMOVED_UNCONFIRMED_TRANSACTIONS);
+        }
+        if (processed.added.size() > 0) {
+            transactionListeners.notify(processed.added, Event.ADDED_UNCONFIRMED_TRANSACTIONS);
+        }
+        if (processed.doubleSpending.size() > 0) {
+            transactionListeners.notify(processed.doubleSpending, Event.ADDED_DOUBLESPENDING_TRANSACTIONS);
+        }
+        return processed.added;
+    }
 
+    /**
+     * The transactions whose signatures are valid, all of them or none if any signature is invalid.
+     */
+    private Set<TransactionImpl> verifySignatures(Collection<TransactionImpl> transactions) {
+        SignatureBatch batch = new SignatureBatch(transactions.size());
         for (TransactionImpl transaction : transactions) {
+            transaction.addToSignatureBatch(batch);
+        }
+        if (batch.verify(BlockImpl.SIGNATURES_PER_TASK) >= 0) {
+            return Collections.emptySet();
+        }
+        return new HashSet<>(transactions);
+    }
 
-            try {
+    /**
+     * Adds the transactions in one database transaction, the results are added to processed once it is committed.
+     */
+    private void processInTransaction(Collection<TransactionImpl> transactions, Set<TransactionImpl> verifiedSignatures,
+                                      boolean sendToPeers, Processed processed) {
+        Processed committed = new Processed();
+        List<TransactionImpl> receivedBack = new ArrayList<>();
+        List<String> rejections = new ArrayList<>();
+        int curTime = Nxt.getEpochTime();
 
-                int curTime = Nxt.getEpochTime();
-                if (transaction.getTimestamp() > curTime + 15 || transaction.getExpiration() < curTime
-                        || transaction.getDeadline() > 1440) {
-                    continue;
+        synchronized (BlockchainImpl.getInstance()) {
+            final Timer.Context context = applyTimer.time();
+            try {
+                Nxt.getStores().beginTransaction();
+                if (Nxt.getBlockchain().getHeight() < Constants.NQT_BLOCK) {
+                    return; // not ready to process transactions
                 }
-                //if (transaction.getVersion() < 1) {
-                //    continue;
-                //}
 
-                synchronized (BlockchainImpl.getInstance()) {
-                    try {
-                        Nxt.getStores().beginTransaction();
-                        if (Nxt.getBlockchain().getHeight() < Constants.NQT_BLOCK) {
-                            break; // not ready to process transactions
-                        }
+                for (TransactionImpl transaction : transactions) {
 
-                        if (Nxt.getDbs().getTransactionDb().hasTransaction(transaction.getId()) || unconfirmedTransactionTable.get(transaction.getDbKey()) != null) {
-                            continue;
-                        }
+                    if (transaction.getTimestamp() > curTime + 15 || transaction.getExpiration() < curTime
+                            || transaction.getDeadline() > 1440) {
+                        rejections.add("timestamp");
+                        continue;
+                    }
+                    //if (transaction.getVersion() < 1) {
+                    //    continue;
+                    //}
 
-                        if (!(transaction.verifySignature() && transaction.verifyPublicKey())) {
-                            if (Account.getAccount(transaction.getSenderId()) != null) {
-                                logger.debug("Transaction " + transaction.getJSONObject().toJSONString() + " failed to verify");
-                            }
-                            continue;
+                    if (Nxt.getDbs().getTransactionDb().hasTransaction(transaction.getId()) || transactionProcessorStore.getUnconfirmedTransaction(transaction.getId()) != null) {
+                        rejections.add("known");
+                        continue;
+                    }
+
+                    List<TransactionImpl> evictions = transactionProcessorStore.getUnconfirmedTransactionsToEvict(transaction);
+                    if (evictions == null) {
+                        logger.debug("Unconfirmed pool is full, dropping transaction " + transaction.getStringId());
+                        rejections.add("poolFull");
+                        continue;
+                    }
+
+                    if (!((verifiedSignatures.contains(transaction) || transaction.verifySignature()) && transaction.verifyPublicKey())) {
+                        if (Account.getAccount(transaction.getSenderId()) != null) {
+                            logger.debug("Transaction " + transaction.getJSONObject().toJSONString() + " failed to verify");
                         }
+                        rejections.add("signature");
+                        continue;
+                    }
 
-                        if (transaction.applyUnconfirmed()) {
-                            if (sendToPeers) {
-                                if (nonBroadcastedTransactions.contains(transaction)) {
-                                    logger.debug("Received back transaction " + transaction.getStringId()
-                                            + " that we generated, will not forward to peers");
-                                    nonBroadcastedTransactions.remove(transaction);
-                                } else {
-                                    sendToPeersTransactions.add(transaction);
-                                }
+                    if (transaction.applyUnconfirmed()) {
+                        if (sendToPeers) {
+                            if (nonBroadcastedTransactions.contains(transaction)) {
+                                logger.debug("Received back transaction " + transaction.getStringId()
+                                        + " that we generated, will not forward to peers");
+                                receivedBack.add(transaction);
+                            } else {
+                                committed.sendToPeers.add(transaction);
                             }
-                            unconfirmedTransactionTable.insert(transaction);
-                            addedUnconfirmedTransactions.add(transaction);
-                        } else {
-                            addedDoubleSpendingTransactions.add(transaction);
                         }
-                        Account.flushAccountTable();
-                        Nxt.getStores().commitTransaction();
-                    } catch (Exception e) {
-                        Nxt.getStores().rollbackTransaction();
-                        throw e;
-                    } finally {
-                        Nxt.getStores().endTransaction();
+                        for (TransactionImpl evicted : evictions) {
+                            transactionProcessorStore.deleteTransaction(evicted);
+                            evicted.undoUnconfirmed();
+                            committed.evicted.add(evicted);
+                        }
+                        transactionProcessorStore.addUnconfirmedTransaction(transaction);
+                        committed.added.add(transaction);
+                    } else {
+                        committed.doubleSpending.add(transaction);
+                        rejections.add("doubleSpending");
                     }
                 }
-            } catch (RuntimeException e) {
-                logger.info("Error processing transaction", e);
+                Account.flushAccountTable();
+                Nxt.getStores().commitTransaction();
+            } catch (Exception e) {
+                Nxt.getStores().rollbackTransaction();
+                throw e;
+            } finally {
+                Nxt.getStores().endTransaction();
+                context.stop();
             }
-
         }
 
-        if (sendToPeersTransactions.size() > 0) {
-            Peers.sendToSomePeers(sendToPeersTransactions);
+        applyMeter.mark(transactions.size());
+        for (String reason : rejections) {
+            markRejected("apply", reason);
         }
 
-        if (addedUnconfirmedTransactions.size() > 0) {
-            transactionListeners.notify(addedUnconfirmedTransactions, Event.ADDED_UNCONFIRMED_TRANSACTIONS);
-        }
-        if (addedDoubleSpendingTransactions.size() > 0) {
-            transactionListeners.notify(addedDoubleSpendingTransactions, Event.ADDED_DOUBLESPENDING_TRANSACTIONS);
-        }
-        return addedUnconfirmedTransactions;
+        nonBroadcastedTransactions.removeAll(receivedBack);
+        processed.sendToPeers.addAll(committed.sendToPeers);
+        processed.added.addAll(committed.added);
+        processed.doubleSpending.addAll(committed.doubleSpending);
+        processed.evicted.addAll(committed.evicted);
+    }
+
+    private static final class Processed {
+        private final List<Transaction> sendToPeers = new ArrayList<>();
+        private final List<Transaction> added = new ArrayList<>();
+        private final List<Transaction> doubleSpending = new ArrayList<>();
+        private final List<Transaction> evicted = new ArrayList<>();
     }
 
 }
@@ -4,13 +4,12 @@ import nxt.Appendix;
 import nxt.Constants;
 import nxt.Nxt;
 import nxt.Transaction;
-import nxt.crypto.Crypto;
+import nxt.crypto.Digests;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.security.MessageDigest;
 
 import java.util.Arrays;
 
@@ -196,8 +195,6 @@ public class AT_API_Platform_Impl extends AT_API_Impl {
 				return 0;
 			}
 
-			MessageDigest digest = Crypto.sha256();
-
 			byte[] senderPublicKey = tx.getSenderPublicKey();
 
 			ByteBuffer bf = ByteBuffer.allocate( 32 + Long.SIZE + senderPublicKey.length );
@@ -206,8 +203,7 @@ public class AT_API_Platform_Impl extends AT_API_Impl {
 			bf.putLong( tx.getId() );
 			bf.put( senderPublicKey);
 
-			digest.update(bf.array());
-			byte[] byteRandom = digest.digest();
+			byte[] byteRandom = Digests.sha256(bf.array());
 
 			long random = Math.abs( AT_API_Helper.getLong( Arrays.copyOfRange(byteRandom, 0, 8) ) );
 
@@ -38,13 +38,16 @@ public final class Crypto {
         }
     }
 
+    /**
+     * Returns a new instance, see {@link Digests} for the thread-local ones.
+     */
     public static MessageDigest sha256() {
-        return getMessageDigest("SHA-256");
+        return Digests.newSha256();
     }
 
     public static byte[] getPublicKey(String secretPhrase) {
         byte[] publicKey = new byte[32];
-        Curve25519.keygen(publicKey, null, Crypto.sha256().digest(Convert.toBytes(secretPhrase)));
+        Curve25519.keygen(publicKey, null, Digests.sha256(Convert.toBytes(secretPhrase)));
         /*
             if (! Curve25519.isCanonicalPublicKey(publicKey)) {
                 throw new RuntimeException("Public key not canonical");
@@ -54,7 +57,7 @@ public final class Crypto {
     }
 
     public static byte[] getPrivateKey(String secretPhrase) {
-        byte[] s = Crypto.sha256().digest(Convert.toBytes(secretPhrase));
+        byte[] s = Digests.sha256(Convert.toBytes(secretPhrase));
         Curve25519.clamp(s);
         return s;
     }
@@ -67,7 +70,7 @@ public final class Crypto {
 
         byte[] P = new byte[32];
         byte[] s = new byte[32];
-        MessageDigest digest = Crypto.sha256();
+        MessageDigest digest = Digests.sha256();
         Curve25519.keygen(P, s, digest.digest(Convert.toBytes(secretPhrase)));
 
         byte[] m = digest.digest(message);
@@ -98,30 +101,7 @@ public final class Crypto {
     }
 
     public static boolean verify(byte[] signature, byte[] message, byte[] publicKey, boolean enforceCanonical) {
-
-        if (enforceCanonical && !Curve25519.isCanonicalSignature(signature)) {
-            logger.debug("Rejecting non-canonical signature");
-            return false;
-        }
-
-        if (enforceCanonical && !Curve25519.isCanonicalPublicKey(publicKey)) {
-            logger.debug("Rejecting non-canonical public key");
-            return false;
-        }
-
-        byte[] Y = new byte[32];
-        byte[] v = new byte[32];
-        System.arraycopy(signature, 0, v, 0, 32);
-        byte[] h = new byte[32];
-        System.arraycopy(signature, 32, h, 0, 32);
-        Curve25519.verify(Y, v, h, publicKey);
-
-        MessageDigest digest = Crypto.sha256();
-        byte[] m = digest.digest(message);
-        digest.update(m);
-        byte[] h2 = digest.digest(Y);
-
-        return Arrays.equals(h, h2);
+        return SignatureBatch.verify(signature, message, publicKey, enforceCanonical);
     }
 
     public static byte[] aesEncrypt(byte[] plaintext, byte[] myPrivateKey, byte[] theirPublicKey) {
@@ -135,7 +115,7 @@ public final class Crypto {
             for (int i = 0; i < 32; i++) {
                 dhSharedSecret[i] ^= nonce[i];
             }
-            byte[] key = sha256().digest(dhSharedSecret);
+            byte[] key = Digests.sha256(dhSharedSecret);
             byte[] iv = new byte[16];
             secureRandom.get().nextBytes(iv);
             PaddedBufferedBlockCipher aes = new PaddedBufferedBlockCipher(new CBCBlockCipher(
@@ -159,7 +139,7 @@ public final class Crypto {
             throws GeneralSecurityException, IOException {
         byte[] dhSharedSecret = new byte[32];
         Curve25519.curve(dhSharedSecret, myPrivateKey, theirPublicKey);
-        byte[] key = sha256().digest(dhSharedSecret);
+        byte[] key = Digests.sha256(dhSharedSecret);
         SecretKeySpec keySpec = new SecretKeySpec(key, "AES");
         byte[] iv = new byte[16];
         secureRandom.get().nextBytes(iv);
@@ -189,7 +169,7 @@ public final class Crypto {
             for (int i = 0; i < 32; i++) {
                 dhSharedSecret[i] ^= nonce[i];
             }
-            byte[] key = sha256().digest(dhSharedSecret);
+            byte[] key = Digests.sha256(dhSharedSecret);
             PaddedBufferedBlockCipher aes = new PaddedBufferedBlockCipher(new CBCBlockCipher(
                     new AESEngine()));
             CipherParameters ivAndKey = new ParametersWithIV(new KeyParameter(key), iv);
@@ -215,7 +195,7 @@ public final class Crypto {
         byte[] ciphertext = Arrays.copyOfRange(ivCiphertext, 16, ivCiphertext.length);
         byte[] dhSharedSecret = new byte[32];
         Curve25519.curve(dhSharedSecret, myPrivateKey, theirPublicKey);
-        byte[] key = sha256().digest(dhSharedSecret);
+        byte[] key = Digests.sha256(dhSharedSecret);
         SecretKeySpec keySpec = new SecretKeySpec(key, "AES");
         IvParameterSpec ivSpec = new IvParameterSpec(iv);
         Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
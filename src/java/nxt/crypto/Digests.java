@@ -0,0 +1,68 @@
+package nxt.crypto;
+
+import fr.cryptohash.Shabal256;
+
+import java.security.MessageDigest;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-local SHA-256 and Shabal256 instances.
+ *
+ * {@link #sha256()} and {@link #shabal256()} return the calling thread's instance after resetting it. The instance is
+ * handed out again on the next borrow, so it must not be kept across calls into code that may hash something itself
+ * (e.g. {@code getId()} of transactions, blocks or accounts). Use {@link Crypto#sha256()} for a private instance.
+ */
+public final class Digests {
+
+    private static final MessageDigest sha256Prototype = Crypto.getMessageDigest("SHA-256");
+    private static final AtomicLong created = new AtomicLong();
+
+    private static final ThreadLocal<MessageDigest> sha256 = ThreadLocal.withInitial(Digests::newSha256);
+    private static final ThreadLocal<Shabal256> shabal256 = ThreadLocal.withInitial(() -> {
+        created.incrementAndGet();
+        return new Shabal256();
+    });
+
+    private Digests() {} //never
+
+    public static MessageDigest sha256() {
+        MessageDigest digest = sha256.get();
+        digest.reset();
+        return digest;
+    }
+
+    public static byte[] sha256(byte[] data) {
+        return sha256().digest(data);
+    }
+
+    public static Shabal256 shabal256() {
+        Shabal256 digest = shabal256.get();
+        digest.reset();
+        return digest;
+    }
+
+    public static byte[] shabal256(byte[] data) {
+        return shabal256().digest(data);
+    }
+
+    /**
+     * Number of digest instances created so far, thread-local ones as well as the ones returned by
+     * {@link Crypto#sha256()}.
+     */
+    public static long getCreatedCount() {
+        return created.get();
+    }
+
+    /**
+     * Clones a prepared instance instead of going through the provider lookup of {@link MessageDigest#getInstance}.
+     */
+    static MessageDigest newSha256() {
+        created.incrementAndGet();
+        try {
+            return (MessageDigest) sha256Prototype.clone();
+        } catch (CloneNotSupportedException e) {
+            return Crypto.getMessageDigest("SHA-256");
+        }
+    }
+
+}
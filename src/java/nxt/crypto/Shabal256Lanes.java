@@ -0,0 +1,202 @@
+package nxt.crypto;
+
+import java.util.Arrays;
+
+/**
+ * Shabal-256 over several independent messages of identical length at once.
+ *
+ * The state is kept in structure-of-arrays form, one {@code int[lanes]} per state word, and every step of the
+ * permutation is a simple loop over the lanes of distinct arrays, which lets the JIT's superword optimization turn it
+ * into SIMD code. Below 8 lanes the loops are too short for that to pay off. The results are bit-identical to
+ * {@link fr.cryptohash.Shabal256}.
+ */
+public final class Shabal256Lanes {
+
+    private static final int[] IV = {
+            0x52F84552, 0xE54B7999, 0x2D8EE3EC, 0xB9645191, 0xE0078B86, 0xBB7C44C9, 0xD2B5C1CA, 0xB0D2EB8C,
+            0x14CE5A45, 0x22AF50DC, 0xEFFDBC6B, 0xEB21B74A,
+            0xB555C6EE, 0x3E710596, 0xA72A652F, 0x9301515F, 0xDA28C1FA, 0x696FD868, 0x9CB6BF72, 0x0AFE4002,
+            0xA6E03615, 0x5138C1D4, 0xBE216306, 0xB38B8890, 0x3EA8B96B, 0x3299ACE4, 0x30924DD4, 0x55CB34A5,
+            0xB405F031, 0xC4233EBA, 0xB3733979, 0xC0DD9D55, 0xC51C28AE, 0xA327B8E1, 0x56C56167, 0xED614433,
+            0x88B59D60, 0x60E2CEBA, 0x758B4B8B, 0x83E82A7F, 0xBC968828, 0xE6E00BF7, 0xBA839E55, 0x9B491C60
+    };
+
+    private final int lanes;
+    private final int[][] a = new int[12][];
+    private int[][] b = new int[16][];
+    private int[][] c = new int[16][];
+    private final int[][] m = new int[16][];
+    private final byte[][] buf;
+    private int ptr;
+    private long w;
+
+    public Shabal256Lanes(int lanes) {
+        if (lanes < 1) {
+            throw new IllegalArgumentException("invalid number of lanes: " + lanes);
+        }
+        this.lanes = lanes;
+        for (int i = 0; i < 12; i++) {
+            a[i] = new int[lanes];
+        }
+        for (int i = 0; i < 16; i++) {
+            b[i] = new int[lanes];
+            c[i] = new int[lanes];
+            m[i] = new int[lanes];
+        }
+        buf = new byte[lanes][64];
+        reset();
+    }
+
+    public int getLanes() {
+        return lanes;
+    }
+
+    public void reset() {
+        for (int i = 0; i < 12; i++) {
+            Arrays.fill(a[i], IV[i]);
+        }
+        for (int i = 0; i < 16; i++) {
+            Arrays.fill(b[i], IV[12 + i]);
+            Arrays.fill(c[i], IV[28 + i]);
+        }
+        w = 1;
+        ptr = 0;
+    }
+
+    /**
+     * Hashes len bytes starting at off of every lane's input, in[lane] for lane &lt; getLanes().
+     */
+    public void update(byte[][] in, int off, int len) {
+        if (ptr != 0) {
+            int rlen = 64 - ptr;
+            if (len < rlen) {
+                for (int l = 0; l < lanes; l++) {
+                    System.arraycopy(in[l], off, buf[l], ptr, len);
+                }
+                ptr += len;
+                return;
+            }
+            for (int l = 0; l < lanes; l++) {
+                System.arraycopy(in[l], off, buf[l], ptr, rlen);
+            }
+            off += rlen;
+            len -= rlen;
+            core(buf, 0);
+        }
+        while (len >= 64) {
+            core(in, off);
+            off += 64;
+            len -= 64;
+        }
+        for (int l = 0; l < lanes; l++) {
+            System.arraycopy(in[l], off, buf[l], 0, len);
+        }
+        ptr = len;
+    }
+
+    /**
+     * Writes the 32 byte digest of every lane to out[lane] at off and resets the engine.
+     */
+    public void digest(byte[][] out, int off) {
+        for (int l = 0; l < lanes; l++) {
+            byte[] lb = buf[l];
+            lb[ptr] = (byte) 0x80;
+            for (int i = ptr + 1; i < 64; i++) {
+                lb[i] = 0;
+            }
+        }
+        for (int i = 0; i < 4; i++) {
+            core(buf, 0);
+            w--;
+        }
+        for (int i = 0; i < 8; i++) {
+            int[] ci = c[8 + i];
+            int p = off + (i << 2);
+            for (int l = 0; l < lanes; l++) {
+                int v = ci[l];
+                byte[] o = out[l];
+                o[p] = (byte) v;
+                o[p + 1] = (byte) (v >>> 8);
+                o[p + 2] = (byte) (v >>> 16);
+                o[p + 3] = (byte) (v >>> 24);
+            }
+        }
+        reset();
+    }
+
+    private void core(byte[][] in, int off) {
+        final int n = lanes;
+
+        for (int l = 0; l < n; l++) {
+            byte[] data = in[l];
+            for (int k = 0; k < 16; k++) {
+                int p = off + (k << 2);
+                m[k][l] = (data[p] & 0xFF) | ((data[p + 1] & 0xFF) << 8)
+                        | ((data[p + 2] & 0xFF) << 16) | ((data[p + 3] & 0xFF) << 24);
+            }
+        }
+
+        for (int k = 0; k < 16; k++) {
+            addRotate(b[k], m[k], n);
+        }
+
+        int w0 = (int) w;
+        int w1 = (int) (w >>> 32);
+        xor(a[0], w0, n);
+        xor(a[1], w1, n);
+        w++;
+
+        for (int j = 0; j < 48; j++) {
+            int i = j % 12;
+            int k = j & 15;
+            permute(a[i], a[(i + 11) % 12], c[(8 - k) & 15], b[(k + 13) & 15], b[(k + 9) & 15], b[(k + 6) & 15], m[k], b[k], n);
+        }
+
+        for (int i = 0; i < 12; i++) {
+            add(a[i], c[(i + 11) & 15], c[(i + 15) & 15], c[(i + 3) & 15], n);
+        }
+
+        // B and C swap roles, C - M is computed in place into the old C arrays
+        for (int k = 0; k < 16; k++) {
+            subtract(c[k], m[k], n);
+        }
+        int[][] tmp = b;
+        b = c;
+        c = tmp;
+    }
+
+    private static void addRotate(int[] b, int[] m, int n) {
+        for (int l = 0; l < n; l++) {
+            int x = b[l] + m[l];
+            b[l] = (x << 17) | (x >>> 15);
+        }
+    }
+
+    private static void xor(int[] a, int v, int n) {
+        for (int l = 0; l < n; l++) {
+            a[l] ^= v;
+        }
+    }
+
+    private static void permute(int[] a, int[] prev, int[] c, int[] b13, int[] b9, int[] b6, int[] m, int[] b, int n) {
+        for (int l = 0; l < n; l++) {
+            int p = prev[l];
+            int x = ((a[l] ^ (((p << 15) | (p >>> 17)) * 5) ^ c[l]) * 3) ^ b13[l] ^ (b9[l] & ~b6[l]) ^ m[l];
+            a[l] = x;
+            int y = b[l];
+            b[l] = ~((y << 1) | (y >>> 31)) ^ x;
+        }
+    }
+
+    private static void add(int[] a, int[] c1, int[] c2, int[] c3, int n) {
+        for (int l = 0; l < n; l++) {
+            a[l] += c1[l] + c2[l] + c3[l];
+        }
+    }
+
+    private static void subtract(int[] c, int[] m, int n) {
+        for (int l = 0; l < n; l++) {
+            c[l] -= m[l];
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package nxt.crypto;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Verifies many signatures at once, e.g. all transactions of a block.
+ *
+ * Every signature is checked exactly like {@link Crypto#verify}, but the digest and all buffers are reused per thread.
+ * {@link #verify(int)} splits large batches into tasks which run on the calling fork/join pool, or on the common pool
+ * when called from another thread.
+ */
+public final class SignatureBatch {
+
+    private static final Logger logger = LoggerFactory.getLogger(SignatureBatch.class);
+
+    private static final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    private final byte[][] signatures;
+    private final byte[][] messages;
+    private final byte[][] publicKeys;
+    private final boolean[] enforceCanonical;
+    private int size;
+
+    public SignatureBatch(int capacity) {
+        signatures = new byte[capacity][];
+        messages = new byte[capacity][];
+        publicKeys = new byte[capacity][];
+        enforceCanonical = new boolean[capacity];
+    }
+
+    public void add(byte[] signature, byte[] message, byte[] publicKey, boolean enforceCanonical) {
+        signatures[size] = signature;
+        messages[size] = message;
+        publicKeys[size] = publicKey;
+        this.enforceCanonical[size] = enforceCanonical;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the index of the first invalid signature, or -1 if all of them are valid.
+     */
+    public int verify() {
+        return verify(0, size);
+    }
+
+    /**
+     * Same as {@link #verify()}, ranges of more than minPerTask signatures are verified in parallel.
+     */
+    public int verify(int minPerTask) {
+        if (size <= minPerTask) {
+            return verify();
+        }
+        return new VerifyTask(0, size, Math.max(1, minPerTask)).invoke();
+    }
+
+    private int verify(int from, int to) {
+        Scratch s = scratch.get();
+        for (int i = from; i < to; i++) {
+            if (!s.verify(signatures[i], messages[i], publicKeys[i], enforceCanonical[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static boolean verify(byte[] signature, byte[] message, byte[] publicKey, boolean enforceCanonical) {
+        return scratch.get().verify(signature, message, publicKey, enforceCanonical);
+    }
+
+    private final class VerifyTask extends RecursiveTask<Integer> {
+
+        private final int from;
+        private final int to;
+        private final int minPerTask;
+
+        private VerifyTask(int from, int to, int minPerTask) {
+            this.from = from;
+            this.to = to;
+            this.minPerTask = minPerTask;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (to - from <= minPerTask) {
+                return verify(from, to);
+            }
+            int middle = (from + to) >>> 1;
+            VerifyTask right = new VerifyTask(middle, to, minPerTask);
+            right.fork();
+            int failure = new VerifyTask(from, middle, minPerTask).compute();
+            int rightFailure = right.join();
+            return failure >= 0 ? failure : rightFailure;
+        }
+    }
+
+    private static final class Scratch {
+
+        private final MessageDigest digest = Crypto.sha256();
+        private final byte[] y = new byte[32];
+        private final byte[] v = new byte[32];
+        private final byte[] h = new byte[32];
+        private final byte[] m = new byte[32];
+
+        private boolean verify(byte[] signature, byte[] message, byte[] publicKey, boolean enforceCanonical) {
+            if (signature == null || signature.length < 64) {
+                return false;
+            }
+
+            if (enforceCanonical && !Curve25519.isCanonicalSignature(signature)) {
+                logger.debug("Rejecting non-canonical signature");
+                return false;
+            }
+
+            if (enforceCanonical && !Curve25519.isCanonicalPublicKey(publicKey)) {
+                logger.debug("Rejecting non-canonical public key");
+                return false;
+            }
+
+            System.arraycopy(signature, 0, v, 0, 32);
+            System.arraycopy(signature, 32, h, 0, 32);
+            Curve25519.verify(y, v, h, publicKey);
+
+            try {
+                digest.reset();
+                digest.update(message);
+                digest.digest(m, 0, 32);
+                digest.update(m);
+                digest.update(y);
+                digest.digest(m, 0, 32);
+            } catch (DigestException e) {
+                throw new RuntimeException(e.getMessage(), e);
+            }
+
+            for (int i = 0; i < 32; i++) {
+                if (h[i] != m[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -30,6 +30,12 @@ public interface EntityTable<T> extends DerivedTable
 
     NxtIterator<T> getManyBy(Connection con, PreparedStatement pstmt, boolean cache);
 
+    /**
+     * Keyset paginated variant, returns up to limit rows following the continuation token, all from the start if
+     * it is null. The token for the next page is given by {@link NxtIterator#getContinuationToken()}.
+     */
+    NxtIterator<T> getManyBy(DbClause dbClause, String continuationToken, int limit);
+
     NxtIterator<T> getAll(int from, int to);
 
     NxtIterator<T> getAll(int from, int to, String sort);
@@ -38,6 +44,11 @@ public interface EntityTable<T> extends DerivedTable
 
     NxtIterator<T> getAll(int height, int from, int to, String sort);
 
+    /**
+     * Keyset paginated variant, see {@link #getManyBy(DbClause, String, int)}.
+     */
+    NxtIterator<T> getAll(String continuationToken, int limit);
+
     int getCount();
 
     int getRowCount();
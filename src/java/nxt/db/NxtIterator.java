@@ -24,6 +24,12 @@ public interface NxtIterator<T> extends Iterator<T>, Iterable<T>, AutoCloseable
     @Override
     Iterator<T> iterator();
 
+    /**
+     * @return the token to fetch the rows following the ones read so far, or null if there are none or this
+     * iterator does not read a page
+     */
+    String getContinuationToken();
+
     public interface ResultSetReader<T> {
         T get(Connection con, ResultSet rs) throws Exception;
     }
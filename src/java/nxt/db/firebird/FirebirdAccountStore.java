@@ -6,7 +6,6 @@ import nxt.db.VersionedBatchEntityTable;
 import nxt.db.VersionedEntityTable;
 import nxt.db.sql.SqlAccountStore;
 import nxt.db.sql.VersionedBatchEntitySqlTable;
-import nxt.db.sql.VersionedEntitySqlTable;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -19,7 +18,7 @@ import java.sql.SQLException;
 class FirebirdAccountStore extends SqlAccountStore {
 
 
-    private final VersionedEntityTable<Account.AccountAsset> accountAssetTable = new VersionedEntitySqlTable<Account.AccountAsset>("account_asset", accountAssetDbKeyFactory) {
+    private final VersionedEntityTable<Account.AccountAsset> accountAssetTable = new VersionedBatchEntitySqlTable<Account.AccountAsset>("account_asset", accountAssetDbKeyFactory) {
 
         @Override
         protected Account.AccountAsset load(Connection con, ResultSet rs) throws SQLException {
@@ -66,7 +65,7 @@ class FirebirdAccountStore extends SqlAccountStore {
         }
 
     };
-    VersionedEntityTable<Account.RewardRecipientAssignment> rewardRecipientAssignmentTable = new VersionedEntitySqlTable<Account.RewardRecipientAssignment>("reward_recip_assign", rewardRecipientAssignmentDbKeyFactory) {
+    VersionedEntityTable<Account.RewardRecipientAssignment> rewardRecipientAssignmentTable = new VersionedBatchEntitySqlTable<Account.RewardRecipientAssignment>("reward_recip_assign", rewardRecipientAssignmentDbKeyFactory) {
 
         @Override
         protected Account.RewardRecipientAssignment load(Connection con, ResultSet rs) throws SQLException {
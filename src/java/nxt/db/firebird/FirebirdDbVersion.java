@@ -558,6 +558,10 @@ final class FirebirdDbVersion {
                	apply("ALTER TABLE at CONVERT TO CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci;");
 		*/
             case 170:
+                apply("CREATE DESCENDING INDEX " + maybeToShortIdentifier("transaction_sender_id_block_timestamp_idx") + " ON transaction(sender_id, block_timestamp, id);");
+            case 171:
+                apply("CREATE DESCENDING INDEX " + maybeToShortIdentifier("transaction_recipient_id_block_timestamp_idx") + " ON transaction(recipient_id, block_timestamp, id);");
+            case 172:
                	return;
             default:
                 throw new RuntimeException("Database inconsistent with code, probably trying to run older code on newer database");
@@ -7,7 +7,7 @@ import nxt.db.VersionedEntityTable;
 import nxt.db.VersionedValuesTable;
 import nxt.db.sql.DbClause;
 import nxt.db.sql.SqlDigitalGoodsStoreStore;
-import nxt.db.sql.VersionedEntitySqlTable;
+import nxt.db.sql.VersionedBatchEntitySqlTable;
 import nxt.db.sql.VersionedValuesSqlTable;
 
 import java.sql.Connection;
@@ -37,7 +37,7 @@ class FirebirdDigitalGoodsStoreStore extends SqlDigitalGoodsStoreStore {
                 }
 
             };
-    private final VersionedEntityTable<DigitalGoodsStore.Purchase> purchaseTable = new VersionedEntitySqlTable<DigitalGoodsStore.Purchase>("purchase", purchaseDbKeyFactory) {
+    private final VersionedEntityTable<DigitalGoodsStore.Purchase> purchaseTable = new VersionedBatchEntitySqlTable<DigitalGoodsStore.Purchase>("purchase", purchaseDbKeyFactory) {
 
         @Override
         protected DigitalGoodsStore.Purchase load(Connection con, ResultSet rs) throws SQLException {
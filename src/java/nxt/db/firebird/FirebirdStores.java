@@ -92,6 +92,16 @@ public class FirebirdStores implements Stores {
         Db.endTransaction();
     }
 
+    @Override
+    public void beginSnapshot() {
+        Db.beginSnapshot();
+    }
+
+    @Override
+    public boolean endSnapshot() {
+        return Db.endSnapshot();
+    }
+
     @Override
     public boolean isInTransaction() {
         return Db.isInTransaction();
@@ -498,6 +498,10 @@ final class H2DbVersion {
             case 162:
                 apply("ALTER TABLE account DROP COLUMN IF EXISTS next_lessee_id");
             case 163:
+                apply("CREATE INDEX IF NOT EXISTS transaction_sender_id_block_timestamp_idx ON transaction (sender_id, block_timestamp DESC, id DESC)");
+            case 164:
+                apply("CREATE INDEX IF NOT EXISTS transaction_recipient_id_block_timestamp_idx ON transaction (recipient_id, block_timestamp DESC, id DESC)");
+            case 165:
                 return;
             default:
                 throw new RuntimeException("Database inconsistent with code, probably trying to run older code on newer database");
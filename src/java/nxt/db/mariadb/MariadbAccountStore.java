@@ -7,7 +7,6 @@ import nxt.db.VersionedEntityTable;
 import nxt.db.sql.DbUtils;
 import nxt.db.sql.SqlAccountStore;
 import nxt.db.sql.VersionedBatchEntitySqlTable;
-import nxt.db.sql.VersionedEntitySqlTable;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -20,7 +19,7 @@ import java.sql.SQLException;
 class MariadbAccountStore extends SqlAccountStore {
 
 
-    private final VersionedEntityTable<Account.AccountAsset> accountAssetTable = new VersionedEntitySqlTable<Account.AccountAsset>("account_asset", accountAssetDbKeyFactory) {
+    private final VersionedEntityTable<Account.AccountAsset> accountAssetTable = new VersionedBatchEntitySqlTable<Account.AccountAsset>("account_asset", accountAssetDbKeyFactory) {
 
         @Override
         protected Account.AccountAsset load(Connection con, ResultSet rs) throws SQLException {
@@ -103,7 +102,7 @@ class MariadbAccountStore extends SqlAccountStore {
         return accountTable;
     }
 
-    private  VersionedEntitySqlTable<Account.RewardRecipientAssignment> rewardRecipientAssignmentVersionedEntitySqlTable =  new VersionedEntitySqlTable<Account.RewardRecipientAssignment>("reward_recip_assign", rewardRecipientAssignmentDbKeyFactory) {
+    private  VersionedBatchEntitySqlTable<Account.RewardRecipientAssignment> rewardRecipientAssignmentVersionedEntitySqlTable =  new VersionedBatchEntitySqlTable<Account.RewardRecipientAssignment>("reward_recip_assign", rewardRecipientAssignmentDbKeyFactory) {
 
         @Override
         protected Account.RewardRecipientAssignment load(Connection con, ResultSet rs) throws SQLException {
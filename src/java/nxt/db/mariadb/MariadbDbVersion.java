@@ -547,6 +547,10 @@ final class MariadbDbVersion {
             case 169:
                	apply("ALTER TABLE at CONVERT TO CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci;");
             case 170:
+                apply("CREATE INDEX transaction_sender_id_block_timestamp_idx ON transaction(sender_id, block_timestamp DESC, id DESC);");
+            case 171:
+                apply("CREATE INDEX transaction_recipient_id_block_timestamp_idx ON transaction(recipient_id, block_timestamp DESC, id DESC);");
+            case 172:
                	return;
             default:
                 throw new RuntimeException("Database inconsistent with code, probably trying to run older code on newer database");
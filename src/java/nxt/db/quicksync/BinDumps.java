@@ -6,14 +6,119 @@ import nxt.db.sql.Db;
 import nxt.db.sql.DbUtils;
 
 import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 public class BinDumps {
     /** Version of the binary dump files. THIS MUST BE INCREMENTED WHEN CHANGING ANY CLASS IN THE POJO PACKAGE OR
      * ANYTHING RELATED TO CREATING OR LOADING BINARY DUMPS!
      */
-    static final int VERSION = 1;
+    static final int VERSION = 2;
     static final String MAGIC ="BurstBlockChain";
 
+    /**
+     * A dump is a zip file. Its first entry is the manifest, a properties file with the keys below and, for every
+     * table class in {@link #TABLES}, the number of rows and the SHA-256 of its segment. Every table follows as its
+     * own segment, stored uncompressed in the zip since it is the gzipped sequence of kryo-serialized pojos.
+     */
+    static final String MANIFEST = "manifest.properties";
+    static final String MANIFEST_MAGIC = "magic";
+    static final String MANIFEST_VERSION = "version";
+    static final String NXT_VERSION = "nxtVersion";
+    static final String HEIGHT = "height";
+    static final String BLOCK_ID = "blockId";
+    /**
+     * Present in incremental dumps only, which hold the rows of the heights after the base height up to
+     * {@link #HEIGHT}. They apply on top of a database whose last block is the base block.
+     */
+    static final String BASE_HEIGHT = "baseHeight";
+    static final String BASE_BLOCK_ID = "baseBlockId";
+    static final String TABLES = "tables";
+    static final String ROWS_SUFFIX = ".rows";
+    static final String SHA256_SUFFIX = ".sha256";
+
+    /**
+     * Exists while a full dump is loaded. The tables are truncated and loaded one by one, so they don't fit together
+     * until it is dropped again at the end of a successful load.
+     */
+    static final String LOAD_MARKER_TABLE = "quicksync_load";
+
+    /** Key columns of the tables with a latest flag */
+    private static final Map<String, String> VERSIONED_KEYS = new HashMap<>();
+    static {
+        VERSIONED_KEYS.put("Account", "id");
+        VERSIONED_KEYS.put("Account_Asset", "account_id,asset_id");
+        VERSIONED_KEYS.put("Alias", "id");
+        VERSIONED_KEYS.put("Alias_Offer", "id");
+        VERSIONED_KEYS.put("Ask_Order", "id");
+        VERSIONED_KEYS.put("At", "id");
+        VERSIONED_KEYS.put("At_State", "at_id");
+        VERSIONED_KEYS.put("Bid_Order", "id");
+        VERSIONED_KEYS.put("Escrow", "id");
+        VERSIONED_KEYS.put("Escrow_Decision", "escrow_id,account_id");
+        VERSIONED_KEYS.put("Goods", "id");
+        VERSIONED_KEYS.put("Purchase", "id");
+        VERSIONED_KEYS.put("Purchase_Feedback", "id");
+        VERSIONED_KEYS.put("Purchase_Public_Feedback", "id");
+        VERSIONED_KEYS.put("Reward_Recip_Assign", "account_id");
+        VERSIONED_KEYS.put("Subscription", "id");
+    }
+
+    /** Tables that are not part of the chain, incremental dumps replace them completely */
+    private static final Set<String> REPLACED_TABLES = new HashSet<>(Arrays.asList("Peer", "Unconfirmed_Transaction"));
+
+    /**
+     * @return the key columns of a versioned table, or null if the table has no latest flag
+     */
+    static String[] getVersionedKeys(String className) {
+        String keys = VERSIONED_KEYS.get(className);
+        return keys == null ? null : keys.split(",");
+    }
+
+    /**
+     * @return whether an incremental dump only holds the rows of the new heights of the table
+     */
+    static boolean isIncremental(String className, PojoMapper mapper) {
+        return mapper.getHeightColumn() > 0 && !REPLACED_TABLES.contains(className);
+    }
+
+    /**
+     * Refuses a database whose loading of a dump did not complete.
+     */
+    public static void checkLoadCompleted() {
+        try (Connection con = Db.getConnection()) {
+            if (isLoadInProgress(con)) {
+                throw new IllegalStateException("Loading a binary dump into the database did not complete, "
+                        + "the tables are incomplete. Load the dump again or delete the database.");
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+    }
+
+    static boolean isLoadInProgress(Connection con) throws SQLException {
+        DatabaseMetaData metaData = con.getMetaData();
+        for (String name : new String[] {LOAD_MARKER_TABLE, LOAD_MARKER_TABLE.toUpperCase()}) {
+            try (ResultSet rs = metaData.getTables(null, null, name, null)) {
+                if (rs.next()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    static String getSegmentName(String className) {
+        return className + ".kryo.gz";
+    }
+
     static String getTableName(Class clazz) {
         return DbUtils.quoteTableName(clazz.getSimpleName().toLowerCase());
     }
@@ -4,31 +4,47 @@ import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Output;
 import nxt.Constants;
 import nxt.Nxt;
+import nxt.crypto.Crypto;
 import nxt.db.firebird.FirebirdDbs;
 import nxt.db.h2.H2Dbs;
 import nxt.db.mariadb.MariadbDbs;
 import nxt.db.sql.Db;
 import nxt.db.sql.DbUtils;
 import nxt.db.store.Dbs;
+import nxt.util.Convert;
 import nxt.util.LoggerConfigurator;
 import org.apache.commons.lang.StringUtils;
-import org.reflections.ReflectionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.lang.reflect.Field;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLDecoder;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 /**
  * Creates a binary dump from a sql database. The resulting dump is database-agnostic and should work with any
@@ -37,10 +53,15 @@ import java.util.zip.GZIPOutputStream;
  * attributes of those objects which are named just like the database columns.
  * With this information select statements are created which are then used to create instances of the classes in pojo
  * which are then written to the dump.
+ * Tables are exported concurrently, each into its own segment, see {@link BinDumps#MANIFEST} for the layout.
+ * Given a base height as second argument only the rows above that height are exported, as an incremental dump.
+ * Every chain table is bounded by the height written to the manifest and the latest flags of versioned tables are
+ * exported as they were at that height, so a dump taken from a running node is consistent across its tables.
  * by BraindeadOne (BURST-BJSX-4C6A-UH35-F4Q3A)
  */
 public class CreateBinDump {
     private static final Logger logger = LoggerFactory.getLogger(CreateBinDump.class.getSimpleName());
+    private static final int BUFFER_SIZE = 1 << 16;
     private static Dbs dbs;
 
     public static void main(String[] args) {
@@ -78,154 +99,267 @@ public class CreateBinDump {
                     throw new RuntimeException("Error initializing wallet: Unknown database type");
             }
             Db.init();
-            dump(args[0]);
+            dump(args[0], args.length > 1 ? Integer.parseInt(args[1]) : -1);
         } catch (Exception e) {
             logger.error("Error", e);
         }
     }
 
-    public static void dump(String filename) throws IOException, URISyntaxException, ClassNotFoundException, SQLException, IllegalAccessException, InstantiationException {
+    public static void dump(String filename) throws IOException, URISyntaxException, ClassNotFoundException, SQLException, InterruptedException, ExecutionException {
+        dump(filename, -1);
+    }
+
+    /**
+     * @param baseHeight the height of the base an incremental dump applies to, or -1 for a full dump
+     */
+    public static void dump(String filename, final int baseHeight) throws IOException, URISyntaxException, ClassNotFoundException, SQLException, InterruptedException, ExecutionException {
         long start = System.currentTimeMillis();
-        Kryo kryo = new Kryo();
-        try (Output output = new Output(new GZIPOutputStream(new FileOutputStream(filename)))) {
+        Path target = Paths.get(filename).toAbsolutePath();
+
+        final int height;
+        long blockId;
+        long baseBlockId = 0;
+        try (Connection con = Db.getConnection()) {
+            try (Statement stmt = con.createStatement();
+                 ResultSet rs = stmt.executeQuery("select max(height) from block")) {
+                rs.next();
+                height = rs.getInt(1);
+            }
+            blockId = getBlockId(con, height);
+            if (baseHeight >= 0) {
+                if (baseHeight >= height) {
+                    throw new IllegalArgumentException("Base height " + baseHeight + " is not below the height " + height);
+                }
+                baseBlockId = getBlockId(con, baseHeight);
+                logger.info("Creating incremental dump of heights " + (baseHeight + 1) + " to " + height);
+            }
+        }
 
-            output.writeString(BinDumps.MAGIC);
-            output.write(BinDumps.VERSION);
-            output.writeString(Nxt.VERSION);
+        List<String> classes = getClassNamesFromPackage("nxt.db.quicksync.pojo");
+        Collections.sort(classes);
+        // every table is exported on its own pooled connection
+        int threads = Math.max(1, Math.min(Math.min(Runtime.getRuntime().availableProcessors(),
+                Nxt.getIntProperty("nxt.dbMaximumPoolSize") - 1), classes.size()));
+        logger.info("Dumping " + classes.size() + " tables with " + threads + " threads");
 
-            int fetchSize;
-            switch (Db.getDatabaseType()) {
-                case H2:
-                    // h2 works best with a ridiculous fetch size
-                    fetchSize = 1000000;
-                    break;
-                default:
-                case MARIADB:
-                case FIREBIRD:
-                    fetchSize = 100000;
+        Path segmentDir = Files.createTempDirectory(target.getParent(), "bindump");
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            Map<String, Future<Segment>> futures = new LinkedHashMap<>();
+            for (final String classname : classes) {
+                final PojoMapper mapper = new PojoMapper(Class.forName("nxt.db.quicksync.pojo." + classname));
+                final Path file = segmentDir.resolve(BinDumps.getSegmentName(classname));
+                futures.put(classname, executor.submit(new Callable<Segment>() {
+                    @Override
+                    public Segment call() throws Exception {
+                        return dumpTable(mapper, classname, file, baseHeight, height);
+                    }
+                }));
             }
 
-
+            Properties manifest = new Properties();
+            manifest.setProperty(BinDumps.MANIFEST_MAGIC, BinDumps.MAGIC);
+            manifest.setProperty(BinDumps.MANIFEST_VERSION, String.valueOf(BinDumps.VERSION));
+            manifest.setProperty(BinDumps.NXT_VERSION, Nxt.VERSION);
+            manifest.setProperty(BinDumps.HEIGHT, String.valueOf(height));
+            manifest.setProperty(BinDumps.BLOCK_ID, Convert.toUnsignedLong(blockId));
+            if (baseHeight >= 0) {
+                manifest.setProperty(BinDumps.BASE_HEIGHT, String.valueOf(baseHeight));
+                manifest.setProperty(BinDumps.BASE_BLOCK_ID, Convert.toUnsignedLong(baseBlockId));
+            }
+            manifest.setProperty(BinDumps.TABLES, StringUtils.join(classes, ","));
+            Map<String, Segment> segments = new LinkedHashMap<>();
+            for (Map.Entry<String, Future<Segment>> entry : futures.entrySet()) {
+                Segment segment = entry.getValue().get();
+                segments.put(entry.getKey(), segment);
+                manifest.setProperty(entry.getKey() + BinDumps.ROWS_SUFFIX, String.valueOf(segment.rows));
+                manifest.setProperty(entry.getKey() + BinDumps.SHA256_SUFFIX, segment.sha256);
+            }
             try (Connection con = Db.getConnection()) {
-                Db.beginTransaction();
-
-                Statement stmt = con.createStatement();
-                ResultSet rs = stmt.executeQuery("select max(height) from block;");
-                rs.next();
-                int height = rs.getInt(1);
-                output.write(height);
-                rs.close();
-                List<String> classes = getClassNamesFromPackage("nxt.db.quicksync.pojo");
+                if (getBlockId(con, height) != blockId) {
+                    throw new IllegalStateException("The chain was reorganized below height " + height
+                            + " while dumping, try again");
+                }
+            }
 
-                for (String classname : classes) {
-                    Class clazz = Class.forName("nxt.db.quicksync.pojo." + classname);
-//                    if (clazz.equals(At.class))
-//                        continue;
-                    StringBuilder sb = new StringBuilder("select ");
-                    List<Field> fields = new ArrayList<>();
-                    List<String> columns = new ArrayList<>();
-                    boolean hasDbId = false;
+            try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(target.toFile()), BUFFER_SIZE))) {
+                zip.putNextEntry(new ZipEntry(BinDumps.MANIFEST));
+                manifest.store(zip, "Burst binary dump");
+                zip.closeEntry();
+                for (Map.Entry<String, Segment> entry : segments.entrySet()) {
+                    Segment segment = entry.getValue();
+                    ZipEntry zipEntry = new ZipEntry(BinDumps.getSegmentName(entry.getKey()));
+                    // segments are compressed already
+                    zipEntry.setMethod(ZipEntry.STORED);
+                    zipEntry.setSize(segment.size);
+                    zipEntry.setCompressedSize(segment.size);
+                    zipEntry.setCrc(segment.crc);
+                    zip.putNextEntry(zipEntry);
+                    Files.copy(segment.file, zip);
+                    zip.closeEntry();
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(segmentDir)) {
+                for (Path file : files) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(segmentDir);
+        }
+        logger.info("Dump created in " + ((System.currentTimeMillis() - start) / 1000) + "seconds");
+    }
 
-                    for (Field field : ReflectionUtils.getAllFields(clazz)) {
-                        fields.add(field);
-                    }
-                    Collections.sort(fields, Comparator.comparing(Field::getName));
-                    for (Field field : fields) {
-                        String columnName = BinDumps.getColumnName(field);
-                        columns.add(columnName);
-                        if ("db_Id".equals(columnName))
-                            hasDbId = true;
-                    }
-                    sb.append(StringUtils.join(columns, ","));
-                    sb.append(" from ");
-                    sb.append(BinDumps.getTableName(clazz));
-                    if (hasDbId)
-                        sb.append(" order by db_id");
-                    sb.append(" ").append(DbUtils.limitsClause(10, 10))
-                            .append(";");
+    private static long getBlockId(Connection con, int height) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement("select id from block where height = ?")) {
+            ps.setInt(1, height);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    throw new IllegalArgumentException("No block at height " + height);
+                }
+                return rs.getLong(1);
+            }
+        }
+    }
 
+    /**
+     * Writes the rows of a table to a gzipped segment file, paging by db_id where the table has one.
+     * Chain tables are bounded by toHeight, the latest flags of versioned tables are taken as of toHeight.
+     *
+     * @param fromHeight only rows above this height are written, all rows up to toHeight if it is -1
+     */
+    private static Segment dumpTable(PojoMapper mapper, String classname, Path file, int fromHeight, int toHeight) throws IOException, SQLException {
+        int pageSize;
+        switch (Db.getDatabaseType()) {
+            case H2:
+                // h2 works best with a ridiculous fetch size
+                pageSize = 1000000;
+                break;
+            default:
+            case MARIADB:
+            case FIREBIRD:
+                pageSize = 100000;
+        }
 
-                    String sql = sb.toString();
-                    logger.debug(sql);
-                    kryo.writeClass(output, clazz);
-                    rs = con.createStatement().executeQuery("select count(1) from " + BinDumps.getTableName(clazz));
-                    rs.next();
-                    long rows = rs.getLong(1);
-                    output.writeLong(rows);
-                    long records = 0;
-                    PreparedStatement ps = con.prepareStatement(sql);
-                    ps.setLong(2, fetchSize);
-                    while (records < rows) {
-                        switch (Db.getDatabaseType()) {
-                            case FIREBIRD:
-                                ps.setLong(1, records + 1);
-                                ps.setLong(2, records + fetchSize);
-                                break;
-                            default:
-                                ps.setLong(1, fetchSize);
-                                ps.setLong(2, records );
+        Kryo kryo = new Kryo();
+        CRC32 crc = new CRC32();
+        MessageDigest sha256 = Crypto.sha256();
+        boolean bounded = BinDumps.isIncremental(classname, mapper);
+        if (!bounded) {
+            fromHeight = -1;
+        }
+        String[] keys = BinDumps.getVersionedKeys(classname);
+        String select = "select " + StringUtils.join(getSelectColumns(mapper, keys), ",")
+                + " from " + mapper.getTableName() + " a";
+        String heightClause = !bounded ? "" : fromHeight >= 0 ? " height > ? and height <= ?" : " height <= ?";
+        long rows = 0;
+        try (Connection con = Db.getConnection();
+             Output output = new Output(new GZIPOutputStream(new DigestOutputStream(new CheckedOutputStream(
+                     new BufferedOutputStream(new FileOutputStream(file.toFile()), BUFFER_SIZE), crc), sha256), BUFFER_SIZE))) {
+            Object data = mapper.newInstance();
+            int dbIdColumn = mapper.getDbIdColumn();
+            if (dbIdColumn > 0) {
+                String sql = select + " where db_id > ?" + (bounded ? " and" + heightClause : "")
+                        + " order by db_id" + DbUtils.limitsClause(pageSize);
+                logger.debug(sql);
+                try (PreparedStatement ps = con.prepareStatement(sql)) {
+                    long lastDbId = Long.MIN_VALUE;
+                    int read;
+                    do {
+                        int i = setLatestHeights(ps, keys, toHeight);
+                        ps.setLong(++i, lastDbId);
+                        i = setHeights(ps, i, bounded, fromHeight, toHeight);
+                        DbUtils.setLimits(++i, ps, pageSize);
+                        read = 0;
+                        try (ResultSet rs = ps.executeQuery()) {
+                            while (rs.next()) {
+                                mapper.read(rs, data);
+                                lastDbId = rs.getLong(dbIdColumn);
+                                kryo.writeObject(output, data);
+                                read++;
+                            }
                         }
-
-
-                        rs = ps.executeQuery();
-                        Object data = clazz.newInstance();
+                        rows += read;
+                        logger.info(classname + ": " + rows);
+                    } while (read == pageSize);
+                }
+            } else {
+                String sql = select + (bounded ? " where" + heightClause : "");
+                logger.debug(sql);
+                try (PreparedStatement ps = con.prepareStatement(sql)) {
+                    setHeights(ps, setLatestHeights(ps, keys, toHeight), bounded, fromHeight, toHeight);
+                    ps.setFetchSize(pageSize);
+                    try (ResultSet rs = ps.executeQuery()) {
                         while (rs.next()) {
-                            records++;
-                            if (records % 1000 == 0)
-                                logger.info(classname + ": " + records + " / " + rows);
-                            int i = 1;
-
-
-                            for (Field field : fields) {
-                                Class fieldType = field.getType();
-                                field.setAccessible(true);
-                                Object value;
-
-
-                                if (fieldType.equals(String.class)) {
-                                    value = rs.getString(i);
-                                } else if (fieldType.equals(Long.class)) {
-                                    if (rs.getObject(i) == null)
-                                        value = null;
-                                    else
-                                        value = rs.getLong(i);
-                                } else if (fieldType.equals(long.class)) {
-                                    value = rs.getLong(i);
-                                } else if (fieldType.isArray()) {
-                                    // Byte array?
-                                    if (fieldType.getComponentType().equals(byte.class)) {
-                                        // Not sure if this works across drivers
-                                        value = rs.getBytes(i);
-                                    } else {
-                                        logger.error("Unhandled array type for" + field.getName() + ": " + fieldType);
-                                        value = rs.getObject(i);
-                                    }
-
-                                } else {
-                                    logger.error("Unhandled field type for" + field.getName() + ": " + fieldType);
-                                    value = rs.getObject(i);
-                                }
-                                field.set(data, value);
-                                i++;
-                            }
-
+                            mapper.read(rs, data);
                             kryo.writeObject(output, data);
+                            rows++;
                         }
+                    }
+                }
+                logger.info(classname + ": " + rows);
+            }
+        }
+        return new Segment(file, rows, Files.size(file), crc.getValue(), Convert.toHexString(sha256.digest()));
+    }
 
-                        rs.close();
-
+    /**
+     * The columns of a table, with the latest flag of a versioned table computed as of the dumped height: a row is
+     * the latest one if no newer row of its key exists up to that height and either it is flagged as latest or its
+     * key has rows above that height, just like a rollback to that height would set it.
+     */
+    private static List<String> getSelectColumns(PojoMapper mapper, String[] keys) {
+        List<String> columns = new ArrayList<>(mapper.getColumns());
+        if (keys == null) {
+            return columns;
+        }
+        StringBuilder sameKey = new StringBuilder();
+        for (String key : keys) {
+            sameKey.append("b.").append(key).append(" = a.").append(key).append(" and ");
+        }
+        String newer = "exists (select 1 from " + mapper.getTableName() + " b where " + sameKey;
+        int latest = columns.indexOf("latest");
+        columns.set(latest, "case when a.latest = TRUE then TRUE"
+                + " when " + newer + "b.height > a.height and b.height <= ?) then FALSE"
+                + " when " + newer + "b.height > ?) then TRUE"
+                + " else FALSE end as latest");
+        return columns;
+    }
 
-                    }
-                    ps.close();
-                    output.flush();
-                    logger.info(classname + ": " + records + " / " + rows);
+    private static int setLatestHeights(PreparedStatement ps, String[] keys, int toHeight) throws SQLException {
+        if (keys == null) {
+            return 0;
+        }
+        ps.setInt(1, toHeight);
+        ps.setInt(2, toHeight);
+        return 2;
+    }
 
-                }
-                Db.endTransaction();
+    private static int setHeights(PreparedStatement ps, int i, boolean bounded, int fromHeight, int toHeight) throws SQLException {
+        if (bounded) {
+            if (fromHeight >= 0) {
+                ps.setInt(++i, fromHeight);
             }
+            ps.setInt(++i, toHeight);
+        }
+        return i;
+    }
 
+    private static final class Segment {
+        private final Path file;
+        private final long rows;
+        private final long size;
+        private final long crc;
+        private final String sha256;
+
+        private Segment(Path file, long rows, long size, long crc, String sha256) {
+            this.file = file;
+            this.rows = rows;
+            this.size = size;
+            this.crc = crc;
+            this.sha256 = sha256;
         }
-        logger.info("Dump created in " + ((System.currentTimeMillis() - start) / 1000) + "seconds");
     }
 
 
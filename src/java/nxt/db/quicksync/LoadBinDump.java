@@ -2,11 +2,14 @@ package nxt.db.quicksync;
 
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
+import nxt.Nxt;
+import nxt.crypto.Crypto;
 import nxt.db.firebird.FirebirdDbs;
 import nxt.db.h2.H2Dbs;
 import nxt.db.mariadb.MariadbDbs;
 import nxt.db.sql.Db;
 import nxt.db.store.Dbs;
+import nxt.util.Convert;
 import nxt.util.LoggerConfigurator;
 import org.apache.commons.lang.StringUtils;
 import org.reflections.ReflectionUtils;
@@ -21,30 +24,50 @@ import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 /**
- * Loads a binary dump created with @see({@link LoadBinDump}.
+ * Loads a binary dump created with {@link CreateBinDump}.
  * The source can either be a file on the local filesystem or a http-url to a remote file.
  * The latter is then downloaded into the temp directory and deleted afterwards.
  * <p>
- * The method used here is basically the reverse of what is described in {@link LoadBinDump}.
+ * The method used here is basically the reverse of what is described in {@link CreateBinDump}.
  * Reflection is used to analyze the pojos in the pojos-package, insert-statements are created from
  * the gathered information and the pojos are read from the dump.
  * <p>
  * Then jdbc-batch-statements are used to insert the data into the database.
- * Contents of the db are truncated before inserting (table by table).
- * Everything takes place in a transaction.
+ * Tables are loaded in parallel, each on its own connection. All segments are verified before any table is touched.
+ * Every table is then truncated and its rows are inserted in one transaction, a failed table is left empty. Its
+ * secondary indexes are dropped during the inserts and created again afterwards, also when the inserts fail. The
+ * database is marked as incomplete until all tables are loaded, and the node refuses to start on it.
  * <p>
  * by BraindeadOne (BURST-BJSX-4C6A-UH35-F4Q3A)
  */
 
 public class LoadBinDump {
     private static final Logger logger = LoggerFactory.getLogger(LoadBinDump.class.getSimpleName());
-    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int BATCH_SIZE = 10000;
+    private static final int PROGRESS_INTERVAL = 100000;
     private static Dbs dbs;
 
     public static void main(String[] args) {
@@ -81,7 +104,7 @@ public class LoadBinDump {
                 httpURLConnection.setInstanceFollowRedirects(true);
                 System.out.println("Downloading " + url.toString() + "...");
                 if (httpURLConnection.getResponseCode() == 200) {
-                    temp = Files.createTempFile("BuRST", ".dump.gz");
+                    temp = Files.createTempFile("BuRST", ".dump.zip");
                     source = temp;
                     try (InputStream inputStream = httpURLConnection.getInputStream(); OutputStream outputStream = new FileOutputStream(temp.toFile())) {
                         byte buf[] = new byte[1024 * 1024 * 50];
@@ -146,113 +169,473 @@ public class LoadBinDump {
     }
 
     public static void load(Path path) throws
-            IOException, URISyntaxException, ClassNotFoundException, SQLException, IllegalAccessException, InstantiationException {
+            IOException, ClassNotFoundException, SQLException, InterruptedException {
 
-        Kryo kryo = new Kryo();
         long start = System.currentTimeMillis();
-        try (Input input = new Input(new GZIPInputStream(new FileInputStream(path.toFile())))) {
-            if (!BinDumps.MAGIC.equals(input.readString())) {
+        try (final ZipFile zip = new ZipFile(path.toFile())) {
+            final Properties manifest = new Properties();
+            ZipEntry manifestEntry = zip.getEntry(BinDumps.MANIFEST);
+            if (manifestEntry != null) {
+                try (InputStream in = zip.getInputStream(manifestEntry)) {
+                    manifest.load(in);
+                }
+            }
+            if (!BinDumps.MAGIC.equals(manifest.getProperty(BinDumps.MANIFEST_MAGIC))) {
                 logger.error("Input file does not seem to be a blockchain dump");
                 logger.error("Import aborted - no data has been changed");
                 System.exit(666);
             }
-            int version = input.read();
+            int version = Integer.parseInt(manifest.getProperty(BinDumps.MANIFEST_VERSION));
             if (version != BinDumps.VERSION) {
                 logger.error("Unsupported version in source file: Expected " + BinDumps.VERSION + " but got " + version);
                 logger.error("Import aborted - no data has been changed");
                 System.exit(666);
             }
             logger.debug("Format version is " + version);
-            logger.info("Dump was created with version " + input.readString());
-            logger.trace("Blockchain height is " + input.read());
+            logger.info("Dump was created with version " + manifest.getProperty(BinDumps.NXT_VERSION));
+            logger.trace("Blockchain height is " + manifest.getProperty(BinDumps.HEIGHT));
 
-            try (Connection con = Db.getConnection()) {
-                Db.beginTransaction();
-                dbs.disableForeignKeyChecks(con);
+            String[] classes = manifest.getProperty(BinDumps.TABLES).split(",");
+            if (manifest.getProperty(BinDumps.BASE_HEIGHT) != null) {
+                loadIncremental(zip, manifest, classes);
+                logger.info("Incremental dump loaded in " + ((System.currentTimeMillis() - start) / 1000) + "seconds");
+                return;
+            }
+            // every table is loaded on its own connection
+            int threads = Math.max(1, Math.min(Math.min(Runtime.getRuntime().availableProcessors(),
+                    Nxt.getIntProperty("nxt.dbMaximumPoolSize") - 1), classes.length));
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                logger.info("Verifying " + classes.length + " segments");
+                List<Callable<Void>> verifications = new ArrayList<>();
+                for (final String classname : classes) {
+                    final PojoMapper mapper = new PojoMapper(Class.forName("nxt.db.quicksync.pojo." + classname));
+                    verifications.add(new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            verifySegment(zip, manifest, classname, mapper);
+                            return null;
+                        }
+                    });
+                }
+                invokeAll(executor, verifications, "Verifying the dump failed - no data has been changed");
 
-                Object o = null;
-                Class clazz = null;
-                Statement stmt = con.createStatement();
+                logger.info("Loading " + classes.length + " tables with " + threads + " threads");
+                setLoadInProgress(true);
+                final Set<String> incomplete = new ConcurrentSkipListSet<>(Arrays.asList(classes));
+                try (Connection con = Db.getConnection()) {
+                    dbs.disableForeignKeyChecks(con);
+                    try {
+                        List<Callable<Void>> loads = new ArrayList<>();
+                        for (final String classname : classes) {
+                            final PojoMapper mapper = new PojoMapper(Class.forName("nxt.db.quicksync.pojo." + classname));
+                            loads.add(new Callable<Void>() {
+                                @Override
+                                public Void call() throws Exception {
+                                    loadTable(zip, manifest, classname, mapper);
+                                    incomplete.remove(classname);
+                                    return null;
+                                }
+                            });
+                        }
+                        invokeAll(executor, loads, "Loading the dump failed");
+                    } finally {
+                        dbs.enableForeignKeyChecks(con);
+                    }
+                } catch (IOException | SQLException | InterruptedException | RuntimeException e) {
+                    logger.error("Tables which are empty or were not loaded: " + StringUtils.join(incomplete, ", "));
+                    logger.error("The database is incomplete, the node will not start until a dump is loaded completely");
+                    throw e;
+                }
+                setLoadInProgress(false);
+                logger.info("Dump loaded in " + ((System.currentTimeMillis() - start) / 1000) + "seconds");
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
 
-                while (!input.eof() && (clazz = kryo.readClass(input).getType()) != null) {
-                    long rows = input.readLong();
-                    String sql = "truncate table " + BinDumps.getTableName(clazz) + ";";
-                    if (Db.getDatabaseType() == Db.TYPE.FIREBIRD)
-                        sql = "delete from " + BinDumps.getTableName(clazz) + ";";
-                    logger.debug(sql);
-                    stmt.executeUpdate(sql);
+    /**
+     * Creates or drops the table marking the database as incomplete, see {@link BinDumps#LOAD_MARKER_TABLE}.
+     */
+    private static void setLoadInProgress(boolean inProgress) throws SQLException {
+        try (Connection con = Db.getRawConnection(); Statement stmt = con.createStatement()) {
+            con.setAutoCommit(true);
+            if (inProgress == BinDumps.isLoadInProgress(con)) {
+                return;
+            }
+            String sql = inProgress ? "CREATE TABLE " + BinDumps.LOAD_MARKER_TABLE + " (started BIGINT NOT NULL)"
+                    : "DROP TABLE " + BinDumps.LOAD_MARKER_TABLE;
+            logger.debug(sql);
+            stmt.executeUpdate(sql);
+        }
+    }
 
+    /**
+     * Runs the tasks and waits for all of them, the first failure is rethrown.
+     */
+    private static void invokeAll(ExecutorService executor, List<Callable<Void>> tasks, String message) throws IOException, InterruptedException {
+        List<Future<Void>> futures = new ArrayList<>();
+        for (Callable<Void> task : tasks) {
+            futures.add(executor.submit(task));
+        }
+        try {
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            for (Future<Void> future : futures) {
+                future.cancel(true);
+            }
+            throw new IOException(message, e.getCause());
+        }
+    }
 
-                    StringBuilder sb = new StringBuilder("insert into ");
-                    sb.append(BinDumps.getTableName(clazz));
-                    sb.append(" (");
-                    List<Field> fields = new ArrayList<>();
+    /**
+     * Reads a segment without loading it, to check its number of rows and its checksum before any table is changed.
+     */
+    private static void verifySegment(ZipFile zip, Properties manifest, String classname, PojoMapper mapper) throws IOException {
+        long rows = Long.parseLong(manifest.getProperty(classname + BinDumps.ROWS_SUFFIX));
+        ZipEntry entry = zip.getEntry(BinDumps.getSegmentName(classname));
+        if (entry == null) {
+            throw new IOException("Segment " + classname + " is missing");
+        }
+        Kryo kryo = new Kryo();
+        MessageDigest sha256 = Crypto.sha256();
+        DigestInputStream segment = new DigestInputStream(zip.getInputStream(entry), sha256);
+        try (Input input = new Input(new GZIPInputStream(segment, BUFFER_SIZE), BUFFER_SIZE)) {
+            for (long l = 1; l <= rows; l++) {
+                if (input.eof()) {
+                    throw new IOException("Segment " + classname + " has only " + (l - 1) + " of " + rows + " rows");
+                }
+                kryo.readObject(input, mapper.getPojoClass());
+            }
+            if (!input.eof()) {
+                throw new IOException("Segment " + classname + " has more than " + rows + " rows");
+            }
+            while (segment.read() >= 0);
+        } catch (RuntimeException e) {
+            // kryo fails with unchecked exceptions on corrupt input
+            throw new IOException("Segment " + classname + " is corrupt", e);
+        }
+        if (!Convert.toHexString(sha256.digest()).equals(manifest.getProperty(classname + BinDumps.SHA256_SUFFIX))) {
+            throw new IOException("Checksum mismatch in segment " + classname);
+        }
+        logger.debug(classname + ": segment verified");
+    }
+
+    /**
+     * Replaces the contents of a table with its segment. Secondary indexes are dropped while the rows are inserted
+     * and created again afterwards.
+     */
+    private static void loadTable(ZipFile zip, Properties manifest, String classname, PojoMapper mapper) throws IOException, SQLException {
+        long start = System.currentTimeMillis();
+        long rows = Long.parseLong(manifest.getProperty(classname + BinDumps.ROWS_SUFFIX));
+        String table = mapper.getTableName();
+        try (Connection con = Db.getRawConnection()) {
+            con.setAutoCommit(false);
+            if (Db.getDatabaseType() == Db.TYPE.MARIADB) {
+                // a session setting in mariadb
+                dbs.disableForeignKeyChecks(con);
+            }
+            try (Statement stmt = con.createStatement()) {
+                String sql = Db.getDatabaseType() == Db.TYPE.FIREBIRD ? "delete from " + table : "truncate table " + table;
+                logger.debug(sql);
+                stmt.executeUpdate(sql);
+            }
+            con.commit();
 
-                    for (Field field : ReflectionUtils.getAllFields(clazz)) {
-                        fields.add(field);
-                        sb.append(BinDumps.getColumnName(field)).append(",");
+            List<String> indexes = dropSecondaryIndexes(con, table);
+            boolean loaded = false;
+            try {
+                insertSegment(con, zip, manifest, classname, mapper, start);
+                loaded = true;
+            } finally {
+                if (!loaded) {
+                    con.rollback();
+                }
+                createIndexes(con, classname, indexes, loaded);
+            }
+            logProgress(classname, rows, rows, start);
+        }
+    }
 
+    /**
+     * Creates the dropped indexes again. Every index is tried even if another one fails. A failure is only thrown if
+     * the rows were loaded, so it never hides the exception that stopped the load.
+     */
+    private static void createIndexes(Connection con, String classname, List<String> indexes, boolean loaded) throws SQLException {
+        long indexStart = System.currentTimeMillis();
+        SQLException failure = null;
+        try (Statement stmt = con.createStatement()) {
+            for (String index : indexes) {
+                logger.debug(index);
+                try {
+                    stmt.executeUpdate(index);
+                    con.commit();
+                } catch (SQLException e) {
+                    con.rollback();
+                    logger.error(classname + ": could not create index again, create it manually: " + index, e);
+                    if (failure == null) {
+                        failure = e;
                     }
-                    // Remove last ,
-                    sb.deleteCharAt(sb.lastIndexOf(","));
-                    sb.append(") VALUES ( ");
-                    sb.append(StringUtils.repeat("?", ",", fields.size()));
-                    sb.append(")");
-                    sql = sb.toString();
-                    logger.debug(sql);
-                    PreparedStatement ps = con.prepareStatement(sql);
+                }
+            }
+        }
+        if (failure != null && loaded) {
+            throw failure;
+        }
+        if (!indexes.isEmpty()) {
+            logger.info(classname + ": " + indexes.size() + " indexes created in " + ((System.currentTimeMillis() - indexStart) / 1000) + " seconds");
+        }
+    }
 
-                    for (long l = 0; l < rows; l++) {
-                        o = kryo.readObject(input, clazz);
-                        int i = 0;
-                        for (Field field : fields) {
-                            i++;
-                            Class fieldType = field.getType();
-                            field.setAccessible(true);
+    /**
+     * Inserts the rows of a segment, verifying their number and the checksum of the segment. Commits once all rows are
+     * in if start is not -1, else the caller commits. Progress is logged every {@link #PROGRESS_INTERVAL} rows.
+     */
+    private static void insertSegment(Connection con, ZipFile zip, Properties manifest, String classname, PojoMapper mapper, long start) throws IOException, SQLException {
+        long rows = Long.parseLong(manifest.getProperty(classname + BinDumps.ROWS_SUFFIX));
+        String sql = "insert into " + mapper.getTableName() + " (" + StringUtils.join(mapper.getColumns(), ",") + ") VALUES ("
+                + StringUtils.repeat("?", ",", mapper.getColumns().size()) + ")";
+        logger.debug(sql);
+        Kryo kryo = new Kryo();
+        MessageDigest sha256 = Crypto.sha256();
+        DigestInputStream segment = new DigestInputStream(zip.getInputStream(zip.getEntry(BinDumps.getSegmentName(classname))), sha256);
+        try (Input input = new Input(new GZIPInputStream(segment, BUFFER_SIZE), BUFFER_SIZE);
+             PreparedStatement ps = con.prepareStatement(sql)) {
+            for (long l = 1; l <= rows; l++) {
+                mapper.write(kryo.readObject(input, mapper.getPojoClass()), ps);
+                ps.addBatch();
+                if (l % BATCH_SIZE == 0) {
+                    ps.executeBatch();
+                }
+                if (start != -1 && l % PROGRESS_INTERVAL == 0) {
+                    logProgress(classname, l, rows, start);
+                }
+            }
+            ps.executeBatch();
+            // read the rest of the segment for the checksum
+            if (!input.eof()) {
+                throw new IOException("Segment " + classname + " has more than " + rows + " rows");
+            }
+            while (segment.read() >= 0);
+        }
+        if (!Convert.toHexString(sha256.digest()).equals(manifest.getProperty(classname + BinDumps.SHA256_SUFFIX))) {
+            throw new IOException("Checksum mismatch in segment " + classname);
+        }
+        if (start != -1) {
+            con.commit();
+        }
+    }
 
-                            if (fieldType.equals(String.class)) {
-                                ps.setString(i, (String) field.get(o));
+    /**
+     * Applies an incremental dump in a single transaction. The database must end with the base block of the dump,
+     * and afterwards the blocks have to chain up from it to the last block of the dump, else nothing is changed.
+     */
+    private static void loadIncremental(ZipFile zip, Properties manifest, String[] classes) throws IOException, ClassNotFoundException, SQLException {
+        int baseHeight = Integer.parseInt(manifest.getProperty(BinDumps.BASE_HEIGHT));
+        long baseBlockId = Convert.parseUnsignedLong(manifest.getProperty(BinDumps.BASE_BLOCK_ID));
+        int height = Integer.parseInt(manifest.getProperty(BinDumps.HEIGHT));
+        long blockId = Convert.parseUnsignedLong(manifest.getProperty(BinDumps.BLOCK_ID));
+        logger.info("Applying heights " + (baseHeight + 1) + " to " + height);
 
-                            } else if (fieldType.equals(Long.class)) {
-                                Object val = field.get(o);
-                                if (val == null)
-                                    ps.setNull(i, Types.NUMERIC);
-                                else
-                                    ps.setLong(i, (Long) val);
-                            } else if (fieldType.equals(long.class)) {
-                                ps.setLong(i, field.getLong(o));
-                            } else if (fieldType.isArray()) {
-                                // Byte array?
+        try (Connection con = Db.getRawConnection()) {
+            con.setAutoCommit(false);
+            try (Statement stmt = con.createStatement();
+                 ResultSet rs = stmt.executeQuery("select height, id from block where height = (select max(height) from block)")) {
+                if (!rs.next() || rs.getInt(1) != baseHeight || rs.getLong(2) != baseBlockId) {
+                    throw new IOException("The database does not end with the base block " + Convert.toUnsignedLong(baseBlockId)
+                            + " at height " + baseHeight + " of the dump");
+                }
+            }
+            dbs.disableForeignKeyChecks(con);
+            try {
+                for (String classname : classes) {
+                    PojoMapper mapper = new PojoMapper(Class.forName("nxt.db.quicksync.pojo." + classname));
+                    if (!BinDumps.isIncremental(classname, mapper)) {
+                        try (Statement stmt = con.createStatement()) {
+                            stmt.executeUpdate("delete from " + mapper.getTableName());
+                        }
+                    }
+                    insertSegment(con, zip, manifest, classname, mapper, -1);
+                    String[] keys = BinDumps.getVersionedKeys(classname);
+                    if (keys != null) {
+                        supersede(con, mapper.getTableName(), keys, baseHeight);
+                    }
+                    logger.info(classname + ": " + manifest.getProperty(classname + BinDumps.ROWS_SUFFIX) + " rows");
+                }
+                linkBaseBlock(con, baseHeight, baseBlockId);
+                verifyBlockChain(con, baseHeight, baseBlockId, height, blockId);
+                con.commit();
+            } catch (IOException | SQLException | RuntimeException e) {
+                con.rollback();
+                throw e;
+            } finally {
+                dbs.enableForeignKeyChecks(con);
+            }
+        }
+    }
 
-                                if (fieldType.getComponentType().equals(byte.class)) {
-                                    ps.setBytes(i, (byte[]) field.get(o));
+    /**
+     * Clears the latest flag of the rows up to the base height that have newer versions.
+     */
+    private static void supersede(Connection con, String table, String[] keys, int baseHeight) throws SQLException {
+        StringBuilder joinClause = new StringBuilder(" ");
+        for (String key : keys) {
+            if (joinClause.length() > 1) {
+                joinClause.append("AND ");
+            }
+            joinClause.append("a.").append(key).append(" = b.").append(key).append(" ");
+        }
+        String sql;
+        switch (Db.getDatabaseType()) {
+            case FIREBIRD:
+            case H2:
+                sql = "UPDATE " + table + " a SET latest = FALSE WHERE a.latest = TRUE AND EXISTS (SELECT 1 FROM "
+                        + table + " b WHERE" + joinClause + "AND b.height > ?) AND a.height <= ?";
+                break;
+            case MARIADB:
+                // MariaDB can't select from the table being updated, except through a materialized derived table
+                sql = "UPDATE " + table + " a JOIN (SELECT DISTINCT " + StringUtils.join(keys, ",") + " FROM " + table
+                        + " WHERE height > ?) b ON" + joinClause + "SET a.latest = FALSE WHERE a.latest = TRUE AND a.height <= ?";
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown database type");
+        }
+        logger.debug(sql);
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            ps.setInt(1, baseHeight);
+            ps.setInt(2, baseHeight);
+            ps.executeUpdate();
+        }
+    }
 
-                                } else {
-                                    logger.error("Unhandled field type for" + field.getName() + ": " + fieldType);
-                                }
+    /**
+     * Sets the next block of the base block, it was updated in place when the block after it was pushed and so isn't
+     * part of the dump.
+     */
+    private static void linkBaseBlock(Connection con, int baseHeight, long baseBlockId) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement("UPDATE block SET next_block_id = "
+                + "(SELECT id FROM block WHERE height = ?) WHERE id = ?")) {
+            ps.setInt(1, baseHeight + 1);
+            ps.setLong(2, baseBlockId);
+            ps.executeUpdate();
+        }
+    }
 
-                            } else {
-                                logger.error("Unhandled field type for" + field.getName() + ": " + fieldType);
-                            }
+    /**
+     * Checks that every block from the base block on references the id and hash of its predecessor, is referenced as
+     * next block by it, and that the chain ends with the last block of the dump.
+     */
+    private static void verifyBlockChain(Connection con, int baseHeight, long baseBlockId, int height, long blockId) throws IOException, SQLException {
+        try (PreparedStatement ps = con.prepareStatement("select height, id, previous_block_id, previous_block_hash, next_block_id from block"
+                + " where height >= ? order by height")) {
+            ps.setInt(1, baseHeight);
+            try (ResultSet rs = ps.executeQuery()) {
+                int lastHeight = baseHeight - 1;
+                long lastId = baseBlockId;
+                long lastNextId = 0;
+                while (rs.next()) {
+                    int blockHeight = rs.getInt(1);
+                    long id = rs.getLong(2);
+                    if (blockHeight == baseHeight) {
+                        if (id != baseBlockId) {
+                            throw new IOException("Base block changed at height " + baseHeight);
                         }
-                        ps.addBatch();
-                        ps.clearParameters();
-                        if (l % 10000 == 0) {
-                            logger.info(clazz.getSimpleName() + ": " + l + " / " + rows);
-                            ps.executeBatch();
-                            if (l % 50000 == 0 && Db.getDatabaseType() == Db.TYPE.FIREBIRD)
-                                Db.commitTransaction();
+                    } else if (blockHeight != lastHeight + 1 || rs.getLong(3) != lastId
+                            || Convert.fullHashToId(rs.getBytes(4)) != lastId) {
+                        throw new IOException("Block " + Convert.toUnsignedLong(id) + " at height " + blockHeight
+                                + " does not follow block " + Convert.toUnsignedLong(lastId));
+                    } else if (lastNextId != id) {
+                        throw new IOException("Next block of block " + Convert.toUnsignedLong(lastId) + " is "
+                                + Convert.toUnsignedLong(lastNextId) + " instead of " + Convert.toUnsignedLong(id));
+                    }
+                    lastHeight = blockHeight;
+                    lastId = id;
+                    lastNextId = rs.getLong(5);
+                }
+                if (lastNextId != 0) {
+                    throw new IOException("Last block " + Convert.toUnsignedLong(lastId) + " has a next block");
+                }
+                if (lastHeight != height || lastId != blockId) {
+                    throw new IOException("Chain ends with block " + Convert.toUnsignedLong(lastId) + " at height " + lastHeight
+                            + " instead of " + Convert.toUnsignedLong(blockId) + " at height " + height);
+                }
+            }
+        }
+    }
+
+    private static void logProgress(String classname, long rows, long total, long start) {
+        long millis = Math.max(1, System.currentTimeMillis() - start);
+        logger.info(classname + ": " + rows + " / " + total + " (" + (rows * 1000 / millis) + " rows/s)");
+    }
+
+    /**
+     * Drops the non-unique indexes of a table that aren't needed by a constraint.
+     *
+     * @return the statements creating them again
+     */
+    private static List<String> dropSecondaryIndexes(Connection con, String table) throws SQLException {
+        DatabaseMetaData metaData = con.getMetaData();
+        String quote = metaData.getIdentifierQuoteString().trim();
+        String tableName = table.replace("\"", "");
+        Map<String, List<String>> indexColumns = new LinkedHashMap<>();
+        Set<String> descendingIndexes = new HashSet<>();
+        for (String name : new String[] {tableName, tableName.toUpperCase(), tableName.toLowerCase()}) {
+            try (ResultSet rs = metaData.getIndexInfo(null, null, name, false, false)) {
+                while (rs.next()) {
+                    if (!rs.getBoolean("NON_UNIQUE") || rs.getShort("TYPE") == DatabaseMetaData.tableIndexStatistic) {
+                        continue;
+                    }
+                    tableName = rs.getString("TABLE_NAME");
+                    String indexName = rs.getString("INDEX_NAME");
+                    String column = quote + rs.getString("COLUMN_NAME") + quote;
+                    if ("D".equals(rs.getString("ASC_OR_DESC"))) {
+                        // firebird orders whole indexes, not single columns
+                        if (Db.getDatabaseType() == Db.TYPE.FIREBIRD) {
+                            descendingIndexes.add(indexName);
+                        } else {
+                            column += " DESC";
                         }
                     }
-                    ps.executeBatch();
-                    logger.info(clazz.getSimpleName() + ": " + rows + " / " + rows);
+                    if (!indexColumns.containsKey(indexName)) {
+                        indexColumns.put(indexName, new ArrayList<String>());
+                    }
+                    List<String> columns = indexColumns.get(indexName);
+                    int position = rs.getShort("ORDINAL_POSITION");
+                    while (columns.size() < position) {
+                        columns.add(null);
+                    }
+                    columns.set(position - 1, column);
                 }
+            }
+            if (!indexColumns.isEmpty()) {
+                break;
+            }
+        }
 
-                dbs.enableForeignKeyChecks(con);
-                Db.commitTransaction();
-                Db.endTransaction();
-                logger.info("Dump loaded in " + ((System.currentTimeMillis() - start) / 1000) + "seconds");
+        List<String> createStatements = new ArrayList<>();
+        try (Statement stmt = con.createStatement()) {
+            for (Map.Entry<String, List<String>> index : indexColumns.entrySet()) {
+                String indexName = quote + index.getKey() + quote;
+                String drop = Db.getDatabaseType() == Db.TYPE.MARIADB
+                        ? "DROP INDEX " + indexName + " ON " + quote + tableName + quote
+                        : "DROP INDEX " + indexName;
+                try {
+                    stmt.executeUpdate(drop);
+                    con.commit();
+                } catch (SQLException e) {
+                    // used by a constraint, it stays
+                    con.rollback();
+                    logger.debug("Keeping index " + index.getKey() + ": " + e.getMessage());
+                    continue;
+                }
+                String create = descendingIndexes.contains(index.getKey()) ? "CREATE DESCENDING INDEX " : "CREATE INDEX ";
+                createStatements.add(create + indexName + " ON " + quote + tableName + quote
+                        + " (" + StringUtils.join(index.getValue(), ",") + ")");
             }
         }
+        return createStatements;
     }
 }
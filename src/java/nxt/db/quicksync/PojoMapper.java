@@ -0,0 +1,179 @@
+package nxt.db.quicksync;
+
+import org.reflections.ReflectionUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Maps the rows of a table to instances of its class in the pojo package and back.
+ *
+ * The fields are sorted by name and resolved to method handles once per class, so reading a row neither looks up
+ * nor checks any field through reflection.
+ */
+final class PojoMapper {
+
+    private enum Kind { LONG, BOXED_LONG, STRING, BYTES }
+
+    private static final MethodType LONG_SETTER = MethodType.methodType(void.class, Object.class, long.class);
+    private static final MethodType OBJECT_SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+    private static final MethodType LONG_GETTER = MethodType.methodType(long.class, Object.class);
+    private static final MethodType OBJECT_GETTER = MethodType.methodType(Object.class, Object.class);
+
+    private final Class<?> clazz;
+    private final List<String> columns = new ArrayList<>();
+    private final Kind[] kinds;
+    private final MethodHandle[] setters;
+    private final MethodHandle[] getters;
+    private final int dbIdColumn;
+    private final int heightColumn;
+
+    PojoMapper(Class<?> clazz) {
+        this.clazz = clazz;
+        List<Field> fields = new ArrayList<>(ReflectionUtils.getAllFields(clazz));
+        Collections.sort(fields, Comparator.comparing(Field::getName));
+        kinds = new Kind[fields.size()];
+        setters = new MethodHandle[fields.size()];
+        getters = new MethodHandle[fields.size()];
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        int dbIdColumn = 0;
+        int heightColumn = 0;
+        for (int i = 0; i < fields.size(); i++) {
+            Field field = fields.get(i);
+            Class<?> type = field.getType();
+            if (type.equals(long.class)) {
+                kinds[i] = Kind.LONG;
+            } else if (type.equals(Long.class)) {
+                kinds[i] = Kind.BOXED_LONG;
+            } else if (type.equals(String.class)) {
+                kinds[i] = Kind.STRING;
+            } else if (type.equals(byte[].class)) {
+                kinds[i] = Kind.BYTES;
+            } else {
+                throw new IllegalArgumentException("Unhandled field type for " + clazz.getSimpleName() + "."
+                        + field.getName() + ": " + type);
+            }
+            field.setAccessible(true);
+            try {
+                setters[i] = lookup.unreflectSetter(field).asType(kinds[i] == Kind.LONG ? LONG_SETTER : OBJECT_SETTER);
+                getters[i] = lookup.unreflectGetter(field).asType(kinds[i] == Kind.LONG ? LONG_GETTER : OBJECT_GETTER);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+            columns.add(BinDumps.getColumnName(field));
+            if ("db_Id".equals(field.getName())) {
+                dbIdColumn = i + 1;
+            } else if ("height".equals(field.getName())) {
+                heightColumn = i + 1;
+            }
+        }
+        this.dbIdColumn = dbIdColumn;
+        this.heightColumn = heightColumn;
+    }
+
+    String getTableName() {
+        return BinDumps.getTableName(clazz);
+    }
+
+    /** Column names in the order of the fields */
+    List<String> getColumns() {
+        return columns;
+    }
+
+    /** The 1-based index of the db_id column, or 0 if the table has none */
+    int getDbIdColumn() {
+        return dbIdColumn;
+    }
+
+    /** The 1-based index of the height column, or 0 if the table has none */
+    int getHeightColumn() {
+        return heightColumn;
+    }
+
+    Object newInstance() {
+        try {
+            return clazz.newInstance();
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Sets the fields of data from the current row of a result set selecting {@link #getColumns()}.
+     */
+    void read(ResultSet rs, Object data) throws SQLException {
+        try {
+            for (int i = 0; i < kinds.length; i++) {
+                int column = i + 1;
+                switch (kinds[i]) {
+                    case LONG:
+                        setters[i].invokeExact(data, rs.getLong(column));
+                        break;
+                    case BOXED_LONG:
+                        long value = rs.getLong(column);
+                        setters[i].invokeExact(data, (Object) (rs.wasNull() ? null : value));
+                        break;
+                    case STRING:
+                        setters[i].invokeExact(data, (Object) rs.getString(column));
+                        break;
+                    case BYTES:
+                        setters[i].invokeExact(data, (Object) rs.getBytes(column));
+                        break;
+                }
+            }
+        } catch (SQLException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /**
+     * Sets the parameters of a statement inserting {@link #getColumns()} from the fields of data.
+     */
+    void write(Object data, PreparedStatement pstmt) throws SQLException {
+        try {
+            for (int i = 0; i < kinds.length; i++) {
+                int index = i + 1;
+                switch (kinds[i]) {
+                    case LONG:
+                        pstmt.setLong(index, (long) getters[i].invokeExact(data));
+                        break;
+                    case BOXED_LONG:
+                        Long value = (Long) (Object) getters[i].invokeExact(data);
+                        if (value == null) {
+                            pstmt.setNull(index, Types.NUMERIC);
+                        } else {
+                            pstmt.setLong(index, value);
+                        }
+                        break;
+                    case STRING:
+                        pstmt.setString(index, (String) (Object) getters[i].invokeExact(data));
+                        break;
+                    case BYTES:
+                        pstmt.setBytes(index, (byte[]) (Object) getters[i].invokeExact(data));
+                        break;
+                }
+            }
+        } catch (SQLException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    Class<?> getPojoClass() {
+        return clazz;
+    }
+
+}
@@ -0,0 +1,48 @@
+package nxt.db.sql;
+
+import nxt.db.NxtIterator;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Iterator over entities which are already in memory, there is nothing to close and no continuation token.
+ */
+final class CollectionIterator<T> implements NxtIterator<T> {
+
+    private final Iterator<T> it;
+
+    CollectionIterator(List<T> list) {
+        this.it = Collections.unmodifiableList(list).iterator();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return it.hasNext();
+    }
+
+    @Override
+    public T next() {
+        return it.next();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Removal not suported");
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return this;
+    }
+
+    @Override
+    public String getContinuationToken() {
+        return null;
+    }
+}
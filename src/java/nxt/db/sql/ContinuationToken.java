@@ -0,0 +1,38 @@
+package nxt.db.sql;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * Opaque token for keyset pagination, the sort key of the last row of a page.
+ *
+ * The next page starts right after that key, so its cost doesn't depend on how many rows came before it.
+ */
+final class ContinuationToken {
+
+    static String encode(long... values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * 8);
+        for (long value : values) {
+            buffer.putLong(value);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    /**
+     * @throws IllegalArgumentException if the token doesn't hold exactly count values
+     */
+    static long[] decode(String token, int count) {
+        byte[] bytes = Base64.getUrlDecoder().decode(token);
+        if (bytes.length != count * 8) {
+            throw new IllegalArgumentException("Invalid continuation token " + token);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long[] values = new long[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = buffer.getLong();
+        }
+        return values;
+    }
+
+    private ContinuationToken() {}
+}
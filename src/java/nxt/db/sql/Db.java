@@ -16,6 +16,7 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 public final class Db {
 
@@ -25,6 +26,9 @@ public final class Db {
     private static final ThreadLocal<DbConnection> localConnection = new ThreadLocal<>();
     private static final ThreadLocal<Map<String, Map<DbKey, Object>>> transactionCaches = new ThreadLocal<>();
     private static final ThreadLocal<Map<String, Map<DbKey, Object>>> transactionBatches = new ThreadLocal<>();
+    private static final ThreadLocal<SnapshotConnection> localSnapshot = new ThreadLocal<>();
+    /** Incremented before and after every commit, odd while one is in progress */
+    private static final AtomicLong commitSequence = new AtomicLong();
     private static final TYPE DATABASE_TYPE;
     private static final boolean enableSqlMetrics = Nxt.getBooleanProperty("burst.enableSqlMetrics", false);
 
@@ -155,6 +159,10 @@ public final class Db {
         if (con != null) {
             return con;
         }
+        con = localSnapshot.get();
+        if (con != null) {
+            return con;
+        }
         con = getPooledConnection();
         con.setAutoCommit(true);
         if (enableSqlMetrics)
@@ -169,25 +177,25 @@ public final class Db {
         return con;
     }
 
-    static Map<DbKey, Object> getCache(String tableName) {
+    static Map<DbKey, Object> getCache(String tableName, DbKey.Factory<?> dbKeyFactory) {
         if (!isInTransaction()) {
             throw new IllegalStateException("Not in transaction");
         }
         Map<DbKey, Object> cacheMap = transactionCaches.get().get(tableName);
         if (cacheMap == null) {
-            cacheMap = new HashMap<>();
+            cacheMap = dbKeyFactory.newKeyMap();
             transactionCaches.get().put(tableName, cacheMap);
         }
         return cacheMap;
     }
 
-    static Map<DbKey, Object> getBatch(String tableName) {
+    static Map<DbKey, Object> getBatch(String tableName, DbKey.Factory<?> dbKeyFactory) {
         if (!isInTransaction()) {
             throw new IllegalStateException("Not in transaction");
         }
         Map<DbKey, Object> batchMap = transactionBatches.get().get(tableName);
         if (batchMap == null) {
-            batchMap = new HashMap<>();
+            batchMap = dbKeyFactory.newKeyMap();
             transactionBatches.get().put(tableName, batchMap);
         }
         return batchMap;
@@ -236,11 +244,20 @@ public final class Db {
         if (con == null) {
             throw new IllegalStateException("Not in transaction");
         }
+        if (!transactionBatches.get().isEmpty()) {
+            VersionedBatchEntitySqlTable.finishAll();
+        }
+        commitSequence.incrementAndGet();
         try {
             con.doCommit();
         } catch (SQLException e) {
             throw new RuntimeException(e.toString(), e);
+        } finally {
+            commitSequence.incrementAndGet();
         }
+        EntityCache.commitAll();
+        OrderBook.commitAll();
+        UnconfirmedTransactionPool.commitAll();
     }
 
     public static void rollbackTransaction() {
@@ -255,6 +272,9 @@ public final class Db {
         }
         transactionCaches.get().clear();
         transactionBatches.get().clear();
+        EntityCache.rollbackAll();
+        OrderBook.rollbackAll();
+        UnconfirmedTransactionPool.rollbackAll();
     }
 
     public static void endTransaction() {
@@ -263,6 +283,9 @@ public final class Db {
             throw new IllegalStateException("Not in transaction");
         }
         localConnection.set(null);
+        EntityCache.rollbackAll();
+        OrderBook.rollbackAll();
+        UnconfirmedTransactionPool.rollbackAll();
         transactionCaches.get().clear();
         transactionCaches.set(null);
         transactionBatches.get().clear();
@@ -270,6 +293,61 @@ public final class Db {
         DbUtils.close(con);
     }
 
+    public static boolean isInSnapshot() {
+        return localSnapshot.get() != null;
+    }
+
+    /**
+     * Makes {@link #getConnection()} return a read-only connection of the current thread that sees the database as
+     * committed when it is first read from, until {@link #endSnapshot()}. Transactions started meanwhile take
+     * precedence.
+     * <p>
+     * MariaDB and Firebird provide this with repeatable read (snapshot) isolation. H2 1.4 only reads committed
+     * data and cannot provide a snapshot, {@link #endSnapshot()} tells whether a transaction committed in between.
+     */
+    public static void beginSnapshot() {
+        if (localSnapshot.get() != null || localConnection.get() != null) {
+            throw new IllegalStateException("Transaction already in progress");
+        }
+        long sequence = commitSequence.get();
+        try {
+            Connection con = getPooledConnection();
+            con.setAutoCommit(false);
+            con.setReadOnly(true);
+            if (DATABASE_TYPE != TYPE.H2) {
+                con.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            }
+            if (enableSqlMetrics) {
+                con = MetricsSql.forRegistry(Nxt.metrics).wrap(con);
+            }
+            localSnapshot.set(new SnapshotConnection(con, sequence));
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+    }
+
+    /**
+     * @return false if the reads of the snapshot may have seen different commits
+     */
+    public static boolean endSnapshot() {
+        SnapshotConnection con = localSnapshot.get();
+        if (con == null) {
+            throw new IllegalStateException("Not in transaction");
+        }
+        localSnapshot.set(null);
+        try {
+            con.doRollback();
+        } catch (SQLException e) {
+            logger.debug(e.toString(), e);
+        }
+        try {
+            con.doClose();
+        } catch (SQLException e) {
+            logger.debug(e.toString(), e);
+        }
+        return DATABASE_TYPE != TYPE.H2 || (con.sequence % 2 == 0 && con.sequence == commitSequence.get());
+    }
+
     public static TYPE getDatabaseType() {
         return DATABASE_TYPE;
     }
@@ -297,6 +375,45 @@ public final class Db {
         }
     }
 
+    private static final class SnapshotConnection extends FilteredConnection {
+
+        private final long sequence;
+
+        private SnapshotConnection(Connection con, long sequence) {
+            super(con);
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void setAutoCommit(boolean autoCommit) throws SQLException {
+            throw new UnsupportedOperationException("Use Db.beginTransaction() to start a new transaction");
+        }
+
+        @Override
+        public void commit() throws SQLException {
+            throw new UnsupportedOperationException("Snapshots are read-only");
+        }
+
+        @Override
+        public void rollback() throws SQLException {
+            throw new UnsupportedOperationException("Use Db.endSnapshot() to end the snapshot");
+        }
+
+        private void doRollback() throws SQLException {
+            super.rollback();
+        }
+
+        @Override
+        public void close() throws SQLException {
+            // closed by Db.endSnapshot()
+        }
+
+        private void doClose() throws SQLException {
+            super.close();
+        }
+
+    }
+
     private static class DbConnection extends FilteredConnection {
 
         private DbConnection(Connection con) {
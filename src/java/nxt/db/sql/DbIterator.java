@@ -15,15 +15,32 @@ class DbIterator<T> implements NxtIterator<T>
     private final Connection con;
     private final PreparedStatement pstmt;
     private final ResultSetReader<T> rsReader;
+    private final ResultSetReader<String> tokenReader;
+    private final int limit;
     private final ResultSet rs;
 
     private boolean hasNext;
     private boolean iterated;
+    private int count;
+    private String token;
 
     public DbIterator(Connection con, PreparedStatement pstmt, ResultSetReader<T> rsReader) {
+        this(con, pstmt, rsReader, null, 0);
+    }
+
+    /**
+     * Iterates over a page of at most limit rows. The statement has to select one row more, which is not returned
+     * but tells whether there is a next page.
+     *
+     * @param tokenReader reads the continuation token of a row
+     */
+    public DbIterator(Connection con, PreparedStatement pstmt, ResultSetReader<T> rsReader,
+                      ResultSetReader<String> tokenReader, int limit) {
         this.con = con;
         this.pstmt = pstmt;
         this.rsReader = rsReader;
+        this.tokenReader = tokenReader;
+        this.limit = limit;
         try {
             this.rs = pstmt.executeQuery();
             this.hasNext = rs.next();
@@ -35,6 +52,10 @@ class DbIterator<T> implements NxtIterator<T>
 
     @Override
     public boolean hasNext() {
+        if (hasNext && limit > 0 && count == limit) {
+            DbUtils.close(rs, pstmt, con);
+            return false;
+        }
         if (! hasNext) {
             DbUtils.close(rs, pstmt, con);
         }
@@ -43,12 +64,16 @@ class DbIterator<T> implements NxtIterator<T>
 
     @Override
     public T next() {
-        if (! hasNext) {
+        if (! hasNext || (limit > 0 && count == limit)) {
             DbUtils.close(rs, pstmt, con);
             throw new NoSuchElementException();
         }
         try {
             T result = rsReader.get(con, rs);
+            if (tokenReader != null) {
+                token = tokenReader.get(con, rs);
+            }
+            count++;
             hasNext = rs.next();
             return result;
         } catch (Exception e) {
@@ -67,6 +92,11 @@ class DbIterator<T> implements NxtIterator<T>
         DbUtils.close(rs, pstmt, con);
     }
 
+    @Override
+    public String getContinuationToken() {
+        return limit > 0 && count == limit && hasNext ? token : null;
+    }
+
     @Override
     public Iterator<T> iterator() {
         if (iterated) {
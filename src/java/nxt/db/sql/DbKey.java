@@ -5,6 +5,8 @@ import nxt.db.NxtKey;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
 
 public interface DbKey extends NxtKey {
 
@@ -43,6 +45,11 @@ public interface DbKey extends NxtKey {
         public int getPkVariables() {
             return pkVariables;
         }
+
+        /** New map for the transaction cache or batch of a table with these keys */
+        Map<DbKey, Object> newKeyMap() {
+            return new HashMap<>();
+        }
     }
 
     int setPK(PreparedStatement pstmt) throws SQLException;
@@ -74,6 +81,15 @@ public interface DbKey extends NxtKey {
             return new LongKey(id);
         }
 
+        long getId(ResultSet rs) throws SQLException {
+            return rs.getLong(idColumn);
+        }
+
+        @Override
+        Map<DbKey, Object> newKeyMap() {
+            return new LongKeyMap();
+        }
+
     }
 
     public static abstract class LinkKeyFactory<T> extends Factory<T> implements NxtKey.LinkKeyFactory<T> {
@@ -108,10 +124,14 @@ public interface DbKey extends NxtKey {
 
         private final long id;
 
-        private LongKey(long id) {
+        LongKey(long id) {
             this.id = id;
         }
 
+        long getId() {
+            return id;
+        }
+
         @Override
         public int setPK(PreparedStatement pstmt) throws SQLException {
             return setPK(pstmt, 1);
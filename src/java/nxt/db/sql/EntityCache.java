@@ -0,0 +1,133 @@
+package nxt.db.sql;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import nxt.Nxt;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Latest entities of a table, shared by all transactions and kept across commits.
+ *
+ * Only threads which hold the blockchain lock use it. They are the only ones changing derived tables, and they run
+ * one at a time, so the cache never hands out an entity that another thread is modifying or that isn't committed
+ * yet. Every other thread reads from the database as before. Entities which are cached or handed out during a
+ * transaction are remembered and dropped again if the transaction doesn't commit. Every entity is cached with the
+ * height of its row, so rolling the table back to a height only drops the entities above it.
+ */
+final class EntityCache<T> {
+
+    private static final int capacity = Nxt.getIntProperty("nxt.entityCacheSize");
+
+    private static final List<EntityCache<?>> caches = new CopyOnWriteArrayList<>();
+
+    private final Map<DbKey, Entry<T>> entries = new LinkedHashMap<DbKey, Entry<T>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<DbKey, Entry<T>> eldest) {
+            return size() > capacity;
+        }
+    };
+    private final Set<DbKey> touched = new HashSet<>();
+    private final Counter hits;
+    private final Counter misses;
+
+    EntityCache(String table) {
+        hits = Nxt.metrics.counter(MetricRegistry.name(EntitySqlTable.class, table, "cacheHits"));
+        misses = Nxt.metrics.counter(MetricRegistry.name(EntitySqlTable.class, table, "cacheMisses"));
+        caches.add(this);
+    }
+
+    /**
+     * Whether the current thread may use the cache, i.e. it is in a transaction and holds the blockchain lock.
+     */
+    static boolean isAvailable() {
+        return capacity > 0 && Db.isInTransaction() && Thread.holdsLock(Nxt.getBlockchain());
+    }
+
+    synchronized T get(DbKey dbKey) {
+        Entry<T> entry = entries.get(dbKey);
+        if (entry == null) {
+            misses.inc();
+            return null;
+        }
+        hits.inc();
+        // the caller may modify the entity, so it has to go if the transaction doesn't commit
+        touched.add(dbKey);
+        return entry.value;
+    }
+
+    synchronized void put(DbKey dbKey, T value, int height) {
+        entries.put(dbKey, new Entry<>(value, height));
+        touched.add(dbKey);
+    }
+
+    synchronized void remove(DbKey dbKey) {
+        entries.remove(dbKey);
+    }
+
+    /**
+     * Drops the entities whose row is above height.
+     */
+    synchronized void removeAbove(int height) {
+        Iterator<Entry<T>> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().height > height) {
+                it.remove();
+            }
+        }
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        touched.clear();
+    }
+
+    private synchronized void commit() {
+        touched.clear();
+    }
+
+    private synchronized void rollback() {
+        for (DbKey dbKey : touched) {
+            entries.remove(dbKey);
+        }
+        touched.clear();
+    }
+
+    static void commitAll() {
+        if (Thread.holdsLock(Nxt.getBlockchain())) {
+            for (EntityCache<?> cache : caches) {
+                cache.commit();
+            }
+        }
+    }
+
+    /**
+     * Drops everything cached since the last commit, called when a transaction is rolled back or ends without
+     * committing.
+     */
+    static void rollbackAll() {
+        if (Thread.holdsLock(Nxt.getBlockchain())) {
+            for (EntityCache<?> cache : caches) {
+                cache.rollback();
+            }
+        }
+    }
+
+    private static final class Entry<T> {
+
+        private final T value;
+        private final int height;
+
+        private Entry(T value, int height) {
+            this.value = value;
+            this.height = height;
+        }
+    }
+
+}
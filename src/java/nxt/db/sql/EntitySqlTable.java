@@ -11,11 +11,13 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Map;
 
 import org.slf4j.LoggerFactory;
 
 public abstract class EntitySqlTable<T> extends DerivedSqlTable implements EntityTable<T> {    
     protected final DbKey.Factory<T> dbKeyFactory;
+    final EntityCache<T> cache;
     private final boolean multiversion;
     private final String defaultSort;
 
@@ -33,6 +35,7 @@ public abstract class EntitySqlTable<T> extends DerivedSqlTable implements Entit
         this.dbKeyFactory = (DbKey.Factory<T>) dbKeyFactory;
         this.multiversion = multiversion;
         this.defaultSort = " ORDER BY " + (multiversion ? this.dbKeyFactory.getPKColumns() : " height DESC ");
+        this.cache = new EntityCache<>(table);
 
 //        getByKeyTimer =  Nxt.metrics.timer(MetricRegistry.name(DerivedSqlTable.class, table,"getByKey"));
 //        getByKeyAndHeightTimer =  Nxt.metrics.timer(MetricRegistry.name(DerivedSqlTable.class, table,"getByKeyAndHeight"));
@@ -61,10 +64,17 @@ public abstract class EntitySqlTable<T> extends DerivedSqlTable implements Entit
     public T get(NxtKey nxtKey) {
         DbKey dbKey = (DbKey) nxtKey;
         if (Db.isInTransaction()) {
-            T t = (T) Db.getCache(table).get(dbKey);
+            T t = (T) Db.getCache(table, dbKeyFactory).get(dbKey);
             if (t != null) {
                 return t;
             }
+            if (EntityCache.isAvailable()) {
+                t = cache.get(dbKey);
+                if (t != null) {
+                    Db.getCache(table, dbKeyFactory).put(dbKey, t);
+                    return t;
+                }
+            }
         }
         try (Connection con = Db.getConnection();
              PreparedStatement pstmt = con.prepareStatement("SELECT * FROM " + table + dbKeyFactory.getPKClause()
@@ -139,18 +149,7 @@ public abstract class EntitySqlTable<T> extends DerivedSqlTable implements Entit
             if (!rs.next()) {
                 return null;
             }
-            T t = null;
-            DbKey dbKey = null;
-            if (doCache) {
-                dbKey = (DbKey) dbKeyFactory.newKey(rs);
-                t = (T) Db.getCache(table).get(dbKey);
-            }
-            if (t == null) {
-                t = load(con, rs);
-                if (doCache) {
-                    Db.getCache(table).put(dbKey, t);
-                }
-            }
+            T t = doCache ? getCached(con, rs) : load(con, rs);
             if (rs.next()) {
                 throw new RuntimeException("Multiple records found");
             }
@@ -158,6 +157,43 @@ public abstract class EntitySqlTable<T> extends DerivedSqlTable implements Entit
         }
     }
 
+    /**
+     * Returns the instance already known to the transaction or the shared cache for the row, loading and caching it
+     * otherwise.
+     */
+    private T getCached(Connection con, ResultSet rs) throws SQLException {
+        Map<DbKey, Object> txCache = Db.getCache(table, dbKeyFactory);
+        DbKey dbKey;
+        T t;
+        if (txCache instanceof LongKeyMap) {
+            // look the row up by its id, the key is only needed if it isn't cached yet
+            long id = ((DbKey.LongKeyFactory<T>) dbKeyFactory).getId(rs);
+            t = (T) ((LongKeyMap) txCache).get(id);
+            if (t != null) {
+                return t;
+            }
+            dbKey = (DbKey) ((DbKey.LongKeyFactory<T>) dbKeyFactory).newKey(id);
+        } else {
+            dbKey = (DbKey) dbKeyFactory.newKey(rs);
+            t = (T) txCache.get(dbKey);
+            if (t != null) {
+                return t;
+            }
+        }
+        boolean shared = EntityCache.isAvailable();
+        if (shared) {
+            t = cache.get(dbKey);
+        }
+        if (t == null) {
+            t = load(con, rs);
+            if (shared) {
+                cache.put(dbKey, t, rs.getInt("height"));
+            }
+        }
+        txCache.put(dbKey, t);
+        return t;
+    }
+
     @Override
     public NxtIterator<T> getManyBy(DbClause dbClause, int from, int to) {
         return getManyBy(dbClause, from, to, defaultSort());
@@ -216,25 +252,67 @@ public abstract class EntitySqlTable<T> extends DerivedSqlTable implements Entit
 
     @Override
     public NxtIterator<T> getManyBy(Connection con, PreparedStatement pstmt, boolean cache) {
+        return new DbIterator<>(con, pstmt, getReader(cache));
+    }
+
+    private DbIterator.ResultSetReader<T> getReader(boolean cache) {
         final boolean doCache = cache && Db.isInTransaction();
-        return new DbIterator<>(con, pstmt, new DbIterator.ResultSetReader<T>() {
+        return new DbIterator.ResultSetReader<T>() {
             @Override
             public T get(Connection con, ResultSet rs) throws Exception {
-                T t = null;
-                DbKey dbKey = null;
-                if (doCache) {
-                    dbKey = (DbKey) dbKeyFactory.newKey(rs);
-                    t = (T) Db.getCache(table).get(dbKey);
-                }
-                if (t == null) {
-                    t = load(con, rs);
-                    if (doCache) {
-                        Db.getCache(table).put(dbKey, t);
-                    }
-                }
-                return t;
+                return doCache ? getCached(con, rs) : load(con, rs);
             }
-        });
+        };
+    }
+
+    @Override
+    public NxtIterator<T> getManyBy(DbClause dbClause, String continuationToken, int limit) {
+        return getPage(dbClause, continuationToken, limit);
+    }
+
+    @Override
+    public NxtIterator<T> getAll(String continuationToken, int limit) {
+        return getPage(null, continuationToken, limit);
+    }
+
+    /**
+     * Pages by db_id. The newest rows come first like with the default sort by height, except for versioned tables:
+     * an entity gets a new db_id with every change, so those are paged from the oldest on and an entity changed
+     * in between is returned again on a later page rather than skipped.
+     */
+    private NxtIterator<T> getPage(DbClause dbClause, String continuationToken, int limit) {
+        long[] after = continuationToken == null ? null : ContinuationToken.decode(continuationToken, 1);
+        StringBuilder sql = new StringBuilder("SELECT * FROM ").append(table).append(" WHERE ")
+                .append(dbClause == null ? " 1 = 1 " : dbClause.getClause());
+        if (multiversion) {
+            sql.append(" AND latest = TRUE ");
+        }
+        if (after != null) {
+            sql.append(multiversion ? " AND db_id > ? " : " AND db_id < ? ");
+        }
+        sql.append(multiversion ? " ORDER BY db_id " : " ORDER BY db_id DESC ").append(DbUtils.limitsClause(limit + 1));
+        Connection con = null;
+        try {
+            con = Db.getConnection();
+            PreparedStatement pstmt = con.prepareStatement(sql.toString());
+            int i = 1;
+            if (dbClause != null) {
+                i = dbClause.set(pstmt, i);
+            }
+            if (after != null) {
+                pstmt.setLong(i++, after[0]);
+            }
+            DbUtils.setLimits(i, pstmt, limit + 1);
+            return new DbIterator<>(con, pstmt, getReader(true), new DbIterator.ResultSetReader<String>() {
+                @Override
+                public String get(Connection con, ResultSet rs) throws SQLException {
+                    return ContinuationToken.encode(rs.getLong("db_id"));
+                }
+            }, limit);
+        } catch (SQLException e) {
+            DbUtils.close(con);
+            throw new RuntimeException(e.toString(), e);
+        }
     }
 
     @Override
@@ -320,13 +398,16 @@ public abstract class EntitySqlTable<T> extends DerivedSqlTable implements Entit
             throw new IllegalStateException("Not in transaction");
         }
         DbKey dbKey = (DbKey) dbKeyFactory.newKey(t);
-        T cachedT = (T) Db.getCache(table).get(dbKey);
+        T cachedT = (T) Db.getCache(table, dbKeyFactory).get(dbKey);
         if (cachedT == null) {
-            Db.getCache(table).put(dbKey, t);
+            Db.getCache(table, dbKeyFactory).put(dbKey, t);
         } else if (t != cachedT) { // not a bug
             throw new IllegalStateException("Different instance found in Db cache, perhaps trying to save an object "
                     + "that was read outside the current transaction");
         }
+        if (EntityCache.isAvailable()) {
+            cache.put(dbKey, t, Nxt.getBlockchain().getHeight());
+        }
         try (Connection con = Db.getConnection()) {
             if (multiversion) {
                 try (PreparedStatement pstmt = con.prepareStatement("UPDATE " + DbUtils.quoteTableName(table)
@@ -345,13 +426,15 @@ public abstract class EntitySqlTable<T> extends DerivedSqlTable implements Entit
     @Override
     public void rollback(int height) {
         super.rollback(height);
-        Db.getCache(table).clear();
+        Db.getCache(table, dbKeyFactory).clear();
+        cache.removeAbove(height);
     }
 
     @Override
     public void truncate() {
         super.truncate();
-        Db.getCache(table).clear();
+        Db.getCache(table, dbKeyFactory).clear();
+        cache.clear();
     }
 
 }
@@ -0,0 +1,196 @@
+package nxt.db.sql;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Map for tables keyed by a single long id, used for the transaction caches and batches.
+ *
+ * Ids and values are kept in two arrays with open addressing, so neither lookups nor inserts allocate anything.
+ * {@link DbKey.LongKey} instances are only created when iterating, which happens once per batch when it is written.
+ */
+final class LongKeyMap extends AbstractMap<DbKey, Object> {
+
+    /** Stands in for null values, an empty slot has a null value */
+    private static final Object NULL = new Object();
+
+    private long[] ids;
+    private Object[] values;
+    private int mask;
+    private int size;
+
+    LongKeyMap() {
+        allocate(16);
+    }
+
+    private void allocate(int capacity) {
+        ids = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    private static int hash(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int slot(long id) {
+        int i = hash(id) & mask;
+        while (values[i] != null && ids[i] != id) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    Object get(long id) {
+        Object value = values[slot(id)];
+        return value == NULL ? null : value;
+    }
+
+    boolean containsKey(long id) {
+        return values[slot(id)] != null;
+    }
+
+    Object put(long id, Object value) {
+        int i = slot(id);
+        Object old = values[i];
+        values[i] = value == null ? NULL : value;
+        if (old == null) {
+            ids[i] = id;
+            if (++size > (mask + 1) * 3 / 4) {
+                rehash();
+            }
+            return null;
+        }
+        return old == NULL ? null : old;
+    }
+
+    Object remove(long id) {
+        int i = slot(id);
+        Object old = values[i];
+        if (old == null) {
+            return null;
+        }
+        size--;
+        shiftKeys(i);
+        return old == NULL ? null : old;
+    }
+
+    /**
+     * Moves the entries following a removed one back, so that lookups don't stop at the gap.
+     */
+    private void shiftKeys(int pos) {
+        while (true) {
+            int last = pos;
+            pos = (pos + 1) & mask;
+            while (true) {
+                if (values[pos] == null) {
+                    values[last] = null;
+                    return;
+                }
+                int slot = hash(ids[pos]) & mask;
+                if (last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos) {
+                    break;
+                }
+                pos = (pos + 1) & mask;
+            }
+            ids[last] = ids[pos];
+            values[last] = values[pos];
+        }
+    }
+
+    private void rehash() {
+        long[] oldIds = ids;
+        Object[] oldValues = values;
+        allocate(oldIds.length * 2);
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldValues[i] != null) {
+                int j = slot(oldIds[i]);
+                ids[j] = oldIds[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    @Override
+    public Object get(Object key) {
+        return key instanceof DbKey.LongKey ? get(((DbKey.LongKey) key).getId()) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof DbKey.LongKey && containsKey(((DbKey.LongKey) key).getId());
+    }
+
+    @Override
+    public Object put(DbKey key, Object value) {
+        if (!(key instanceof DbKey.LongKey)) {
+            throw new IllegalArgumentException("Not a long key: " + key);
+        }
+        return put(((DbKey.LongKey) key).getId(), value);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        return key instanceof DbKey.LongKey ? remove(((DbKey.LongKey) key).getId()) : null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        if (size > 0) {
+            allocate(16);
+            size = 0;
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<DbKey, Object>> entrySet() {
+        return new AbstractSet<Map.Entry<DbKey, Object>>() {
+            @Override
+            public Iterator<Map.Entry<DbKey, Object>> iterator() {
+                return new Iterator<Map.Entry<DbKey, Object>>() {
+                    private int next = advance(0);
+
+                    private int advance(int i) {
+                        while (i < values.length && values[i] == null) {
+                            i++;
+                        }
+                        return i;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < values.length;
+                    }
+
+                    @Override
+                    public Map.Entry<DbKey, Object> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        Object value = values[next];
+                        Map.Entry<DbKey, Object> entry = new SimpleImmutableEntry<DbKey, Object>(
+                                new DbKey.LongKey(ids[next]), value == NULL ? null : value);
+                        next = advance(next + 1);
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+}
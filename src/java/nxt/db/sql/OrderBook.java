@@ -0,0 +1,228 @@
+package nxt.db.sql;
+
+import nxt.Order;
+import nxt.db.EntityTable;
+import nxt.db.NxtIterator;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+/**
+ * Open orders of one side of the asset exchange, kept in memory per asset in price-time priority.
+ *
+ * The committed book of an asset is loaded from the order table the first time it is needed and never modified once
+ * published, so any thread can read it. A transaction works on its own copies of the books it reads or changes, which
+ * replace the committed ones when it commits and are dropped otherwise. After a rollback of the order table the
+ * transaction reloads the books it needs from the database, and all committed books are dropped on commit.
+ */
+final class OrderBook<T extends Order> {
+
+    static final Comparator<Order> ASK_ORDER = new Comparator<Order>() {
+        @Override
+        public int compare(Order o1, Order o2) {
+            int result = Long.compare(o1.getPriceNQT(), o2.getPriceNQT());
+            return result != 0 ? result : compareTime(o1, o2);
+        }
+    };
+
+    static final Comparator<Order> BID_ORDER = new Comparator<Order>() {
+        @Override
+        public int compare(Order o1, Order o2) {
+            int result = Long.compare(o2.getPriceNQT(), o1.getPriceNQT());
+            return result != 0 ? result : compareTime(o1, o2);
+        }
+    };
+
+    private static int compareTime(Order o1, Order o2) {
+        int result = Integer.compare(o1.getHeight(), o2.getHeight());
+        return result != 0 ? result : Long.compare(o1.getId(), o2.getId());
+    }
+
+    private static final List<OrderBook<?>> orderBooks = new CopyOnWriteArrayList<>();
+
+    private final EntityTable<T> orderTable;
+    private final String table;
+    private final Comparator<Order> comparator;
+    private final Function<T, T> copier;
+
+    private final Map<Long, NavigableSet<T>> committed = new HashMap<>();
+    private int generation;
+
+    private final ThreadLocal<Working<T>> working = new ThreadLocal<Working<T>>() {
+        @Override
+        protected Working<T> initialValue() {
+            return new Working<>();
+        }
+    };
+
+    /**
+     * @param copier creates the copy of an order that is kept in the book, the table's instances can change
+     */
+    OrderBook(EntityTable<T> orderTable, String table, Comparator<Order> comparator, Function<T, T> copier) {
+        this.orderTable = orderTable;
+        this.table = table;
+        this.comparator = comparator;
+        this.copier = copier;
+        orderBooks.add(this);
+    }
+
+    /**
+     * The order with the highest priority, a copy that must not be saved.
+     */
+    T first(long assetId) {
+        NavigableSet<T> orders = getOrders(assetId);
+        return orders.isEmpty() ? null : orders.first();
+    }
+
+    /**
+     * Copies of the orders from index from to to, both inclusive, with the same limits as {@link DbUtils#limitsClause(int, int)}.
+     */
+    NxtIterator<T> getSorted(long assetId, int from, int to) {
+        NavigableSet<T> orders = getOrders(assetId);
+        boolean limited = to >= 0 && to >= from && to < Integer.MAX_VALUE;
+        List<T> result = new ArrayList<>();
+        int i = 0;
+        for (T order : orders) {
+            if (limited && i > to) {
+                break;
+            }
+            if (i >= from) {
+                result.add(order);
+            }
+            i++;
+        }
+        return new CollectionIterator<>(result);
+    }
+
+    void put(T order) {
+        NavigableSet<T> orders = getWorking(order.getAssetId());
+        orders.remove(order);
+        orders.add(copier.apply(order));
+    }
+
+    void remove(T order) {
+        getWorking(order.getAssetId()).remove(order);
+    }
+
+    /**
+     * The order table was rolled back or truncated, the books have to be reloaded.
+     */
+    void invalidate() {
+        Working<T> w = working.get();
+        w.books.clear();
+        w.reload = true;
+    }
+
+    private NavigableSet<T> getOrders(long assetId) {
+        if (Db.isInTransaction()) {
+            return getWorking(assetId);
+        }
+        if (Db.isInSnapshot()) {
+            // the committed books may be newer than the snapshot
+            return load(assetId);
+        }
+        int loadedGeneration;
+        synchronized (this) {
+            NavigableSet<T> orders = committed.get(assetId);
+            if (orders != null) {
+                return orders;
+            }
+            loadedGeneration = generation;
+        }
+        NavigableSet<T> orders = load(assetId);
+        synchronized (this) {
+            // a transaction may have committed other orders in the meantime
+            if (generation == loadedGeneration && !committed.containsKey(assetId)) {
+                committed.put(assetId, orders);
+            }
+        }
+        return orders;
+    }
+
+    private NavigableSet<T> getWorking(long assetId) {
+        if (!Db.isInTransaction()) {
+            throw new IllegalStateException("Not in transaction");
+        }
+        Working<T> w = working.get();
+        NavigableSet<T> orders = w.books.get(assetId);
+        if (orders == null) {
+            NavigableSet<T> committedOrders = null;
+            if (!w.reload) {
+                synchronized (this) {
+                    committedOrders = committed.get(assetId);
+                }
+            }
+            if (committedOrders != null) {
+                orders = new TreeSet<>(comparator);
+                orders.addAll(committedOrders);
+            } else {
+                orders = load(assetId);
+            }
+            w.books.put(assetId, orders);
+        }
+        return orders;
+    }
+
+    private NavigableSet<T> load(long assetId) {
+        NavigableSet<T> orders = new TreeSet<>(comparator);
+        try (Connection con = Db.getConnection();
+             PreparedStatement pstmt = con.prepareStatement("SELECT * FROM " + table
+                     + " WHERE asset_id = ? AND latest = TRUE")) {
+            pstmt.setLong(1, assetId);
+            try (NxtIterator<T> it = orderTable.getManyBy(con, pstmt, false)) {
+                while (it.hasNext()) {
+                    orders.add(it.next());
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+        return orders;
+    }
+
+    private void commit() {
+        Working<T> w = working.get();
+        if (w.reload || !w.books.isEmpty()) {
+            synchronized (this) {
+                if (w.reload) {
+                    committed.clear();
+                    generation++;
+                }
+                committed.putAll(w.books);
+            }
+        }
+        working.remove();
+    }
+
+    private void rollback() {
+        working.remove();
+    }
+
+    static void commitAll() {
+        for (OrderBook<?> orderBook : orderBooks) {
+            orderBook.commit();
+        }
+    }
+
+    static void rollbackAll() {
+        for (OrderBook<?> orderBook : orderBooks) {
+            orderBook.rollback();
+        }
+    }
+
+    private static final class Working<T> {
+        private final Map<Long, NavigableSet<T>> books = new HashMap<>();
+        private boolean reload;
+    }
+
+}
@@ -66,7 +66,7 @@ public abstract class SqlAliasStore implements AliasStore {
         }
     }
 
-    private final VersionedEntityTable<Alias.Offer> offerTable = new VersionedEntitySqlTable<Alias.Offer>("alias_offer", offerDbKeyFactory) {
+    private final VersionedEntityTable<Alias.Offer> offerTable = new VersionedBatchEntitySqlTable<Alias.Offer>("alias_offer", offerDbKeyFactory) {
 
         @Override
         protected Alias.Offer load(Connection con, ResultSet rs) throws SQLException {
@@ -114,7 +114,7 @@ public abstract class SqlAliasStore implements AliasStore {
         }
     }
 
-    private final VersionedEntityTable<Alias> aliasTable = new VersionedEntitySqlTable<Alias>("alias", aliasDbKeyFactory) {
+    private final VersionedEntityTable<Alias> aliasTable = new VersionedBatchEntitySqlTable<Alias>("alias", aliasDbKeyFactory) {
 
         @Override
         protected Alias load(Connection con, ResultSet rs) throws SQLException {
@@ -156,6 +156,22 @@ public abstract class SqlBlockchainStore implements BlockchainStore {
     @Override
     public NxtIterator<TransactionImpl> getTransactions(Account account, int numberOfConfirmations, byte type, byte subtype,
                                                         int blockTimestamp, int from, int to) {
+        return getTransactions(account, numberOfConfirmations, type, subtype, blockTimestamp, null, from, to, 0);
+    }
+
+    @Override
+    public NxtIterator<TransactionImpl> getTransactions(Account account, int numberOfConfirmations, byte type, byte subtype,
+                                                        int blockTimestamp, String continuationToken, int limit) {
+        long[] after = continuationToken == null ? null : ContinuationToken.decode(continuationToken, 2);
+        return getTransactions(account, numberOfConfirmations, type, subtype, blockTimestamp, after, 0, limit, limit);
+    }
+
+    /**
+     * Transactions received and sent by an account, newest first. With a limit, rows are read from after the block
+     * timestamp and id of the last transaction of the previous page until one more than the limit.
+     */
+    private NxtIterator<TransactionImpl> getTransactions(Account account, int numberOfConfirmations, byte type, byte subtype,
+                                                         int blockTimestamp, long[] after, int from, int to, int limit) {
         int height = numberOfConfirmations > 0 ? Nxt.getBlockchain().getHeight() - numberOfConfirmations : Integer.MAX_VALUE;
         if (height < 0) {
             throw new IllegalArgumentException("Number of confirmations required " + numberOfConfirmations
@@ -164,31 +180,26 @@ public abstract class SqlBlockchainStore implements BlockchainStore {
         Connection con = null;
         try {
             StringBuilder buf = new StringBuilder();
-            buf.append("SELECT * FROM transaction WHERE recipient_id = ? AND sender_id <> ? ");
-            if (blockTimestamp > 0) {
-                buf.append("AND block_timestamp >= ? ");
-            }
-            if (type >= 0) {
-                buf.append("AND type = ? ");
-                if (subtype >= 0) {
-                    buf.append("AND subtype = ? ");
+            for (String accountClause : new String[] {"recipient_id = ? AND sender_id <> ? ", "sender_id = ? "}) {
+                if (buf.length() > 0) {
+                    buf.append("UNION ALL ");
                 }
-            }
-            if (height < Integer.MAX_VALUE) {
-                buf.append("AND height <= ? ");
-            }
-            buf.append("UNION ALL SELECT * FROM transaction WHERE sender_id = ? ");
-            if (blockTimestamp > 0) {
-                buf.append("AND block_timestamp >= ? ");
-            }
-            if (type >= 0) {
-                buf.append("AND type = ? ");
-                if (subtype >= 0) {
-                    buf.append("AND subtype = ? ");
+                buf.append("SELECT * FROM transaction WHERE ").append(accountClause);
+                if (blockTimestamp > 0) {
+                    buf.append("AND block_timestamp >= ? ");
+                }
+                if (type >= 0) {
+                    buf.append("AND type = ? ");
+                    if (subtype >= 0) {
+                        buf.append("AND subtype = ? ");
+                    }
+                }
+                if (height < Integer.MAX_VALUE) {
+                    buf.append("AND height <= ? ");
+                }
+                if (after != null) {
+                    buf.append("AND (block_timestamp < ? OR (block_timestamp = ? AND id < ?)) ");
                 }
-            }
-            if (height < Integer.MAX_VALUE) {
-                buf.append("AND height <= ? ");
             }
             buf.append("ORDER BY block_timestamp DESC, id DESC");
             buf.append(DbUtils.limitsClause(from, to));
@@ -196,35 +207,44 @@ public abstract class SqlBlockchainStore implements BlockchainStore {
             PreparedStatement pstmt;
             int i = 0;
             pstmt = con.prepareStatement(buf.toString());
-            pstmt.setLong(++i, account.getId());
-            pstmt.setLong(++i, account.getId());
-            if (blockTimestamp > 0) {
-                pstmt.setInt(++i, blockTimestamp);
-            }
-            if (type >= 0) {
-                pstmt.setByte(++i, type);
-                if (subtype >= 0) {
-                    pstmt.setByte(++i, subtype);
+            for (int branch = 0; branch < 2; branch++) {
+                pstmt.setLong(++i, account.getId());
+                if (branch == 0) {
+                    pstmt.setLong(++i, account.getId());
                 }
-            }
-            if (height < Integer.MAX_VALUE) {
-                pstmt.setInt(++i, height);
-            }
-            pstmt.setLong(++i, account.getId());
-            if (blockTimestamp > 0) {
-                pstmt.setInt(++i, blockTimestamp);
-            }
-            if (type >= 0) {
-                pstmt.setByte(++i, type);
-                if (subtype >= 0) {
-                    pstmt.setByte(++i, subtype);
+                if (blockTimestamp > 0) {
+                    pstmt.setInt(++i, blockTimestamp);
+                }
+                if (type >= 0) {
+                    pstmt.setByte(++i, type);
+                    if (subtype >= 0) {
+                        pstmt.setByte(++i, subtype);
+                    }
+                }
+                if (height < Integer.MAX_VALUE) {
+                    pstmt.setInt(++i, height);
+                }
+                if (after != null) {
+                    pstmt.setInt(++i, (int) after[0]);
+                    pstmt.setInt(++i, (int) after[0]);
+                    pstmt.setLong(++i, after[1]);
                 }
-            }
-            if (height < Integer.MAX_VALUE) {
-                pstmt.setInt(++i, height);
             }
             DbUtils.setLimits(++i, pstmt, from, to);
-            return getTransactions(con, pstmt);
+            if (limit == 0) {
+                return getTransactions(con, pstmt);
+            }
+            return new DbIterator<>(con, pstmt, new DbIterator.ResultSetReader<TransactionImpl>() {
+                @Override
+                public TransactionImpl get(Connection con, ResultSet rs) throws NxtException.ValidationException {
+                    return transactionDb.loadTransaction(con, rs);
+                }
+            }, new DbIterator.ResultSetReader<String>() {
+                @Override
+                public String get(Connection con, ResultSet rs) throws SQLException {
+                    return ContinuationToken.encode(rs.getInt("block_timestamp"), rs.getLong("id"));
+                }
+            }, limit);
         } catch (SQLException e) {
             DbUtils.close(con);
             throw new RuntimeException(e.toString(), e);
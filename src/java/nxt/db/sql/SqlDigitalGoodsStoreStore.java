@@ -29,7 +29,7 @@ public abstract class SqlDigitalGoodsStoreStore implements DigitalGoodsStoreStor
         }
 
     };
-    private final VersionedEntityTable<DigitalGoodsStore.Purchase> purchaseTable = new VersionedEntitySqlTable<DigitalGoodsStore.Purchase>("purchase", purchaseDbKeyFactory) {
+    private final VersionedEntityTable<DigitalGoodsStore.Purchase> purchaseTable = new VersionedBatchEntitySqlTable<DigitalGoodsStore.Purchase>("purchase", purchaseDbKeyFactory) {
 
         @Override
         protected DigitalGoodsStore.Purchase load(Connection con, ResultSet rs) throws SQLException {
@@ -91,7 +91,7 @@ public abstract class SqlDigitalGoodsStoreStore implements DigitalGoodsStoreStor
         }
 
     };
-    private final VersionedEntityTable<DigitalGoodsStore.Goods> goodsTable = new VersionedEntitySqlTable<DigitalGoodsStore.Goods>("goods", goodsDbKeyFactory) {
+    private final VersionedEntityTable<DigitalGoodsStore.Goods> goodsTable = new VersionedBatchEntitySqlTable<DigitalGoodsStore.Goods>("goods", goodsDbKeyFactory) {
 
         @Override
         protected DigitalGoodsStore.Goods load(Connection con, ResultSet rs) throws SQLException {
@@ -23,7 +23,7 @@ public abstract class SqlEscrowStore implements EscrowStore {
             return escrow.dbKey;
         }
     };
-    private final VersionedEntityTable<Escrow> escrowTable = new VersionedEntitySqlTable<Escrow>("escrow", escrowDbKeyFactory) {
+    private final VersionedEntityTable<Escrow> escrowTable = new VersionedBatchEntitySqlTable<Escrow>("escrow", escrowDbKeyFactory) {
         @Override
         protected Escrow load(Connection con, ResultSet rs) throws SQLException {
             return new SqlEscrow(rs);
@@ -41,7 +41,7 @@ public abstract class SqlEscrowStore implements EscrowStore {
                     return decision.dbKey;
                 }
             };
-    private final VersionedEntityTable<Escrow.Decision> decisionTable = new VersionedEntitySqlTable<Escrow.Decision>("escrow_decision", decisionDbKeyFactory) {
+    private final VersionedEntityTable<Escrow.Decision> decisionTable = new VersionedBatchEntitySqlTable<Escrow.Decision>("escrow_decision", decisionDbKeyFactory) {
         @Override
         protected Escrow.Decision load(Connection con, ResultSet rs) throws SQLException {
             return new SqlDecision(rs);
@@ -11,6 +11,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.function.Function;
 
 public abstract class SqlOrderStore implements OrderStore {
     protected DbKey.LongKeyFactory<Order.Ask> askOrderDbKeyFactory = new DbKey.LongKeyFactory<Order.Ask>("id") {
@@ -21,7 +22,7 @@ public abstract class SqlOrderStore implements OrderStore {
         }
 
     };
-    protected VersionedEntityTable<Order.Ask> askOrderTable = new VersionedEntitySqlTable<Order.Ask>("ask_order", askOrderDbKeyFactory) {
+    protected VersionedEntityTable<Order.Ask> askOrderTable = new VersionedBatchEntitySqlTable<Order.Ask>("ask_order", askOrderDbKeyFactory) {
         @Override
         protected Order.Ask load(Connection con, ResultSet rs) throws SQLException {
             return new SqlAsk(rs);
@@ -32,6 +33,33 @@ public abstract class SqlOrderStore implements OrderStore {
             saveAsk(con, table, ask);
         }
 
+        @Override
+        public void insert(Order.Ask ask) {
+            super.insert(ask);
+            askOrderBook.put(ask);
+        }
+
+        @Override
+        public boolean delete(Order.Ask ask) {
+            boolean deleted = super.delete(ask);
+            if (ask != null) {
+                askOrderBook.remove(ask);
+            }
+            return deleted;
+        }
+
+        @Override
+        public void rollback(int height) {
+            super.rollback(height);
+            askOrderBook.invalidate();
+        }
+
+        @Override
+        public void truncate() {
+            super.truncate();
+            askOrderBook.invalidate();
+        }
+
         @Override
         protected String defaultSort() {
             return " ORDER BY creation_height DESC ";
@@ -46,7 +74,7 @@ public abstract class SqlOrderStore implements OrderStore {
         }
 
     };
-    protected VersionedEntityTable<Order.Bid> bidOrderTable = new VersionedEntitySqlTable<Order.Bid>("bid_order", bidOrderDbKeyFactory) {
+    protected VersionedEntityTable<Order.Bid> bidOrderTable = new VersionedBatchEntitySqlTable<Order.Bid>("bid_order", bidOrderDbKeyFactory) {
 
         @Override
         protected Order.Bid load(Connection con, ResultSet rs) throws SQLException {
@@ -58,6 +86,33 @@ public abstract class SqlOrderStore implements OrderStore {
             saveBid(con, table, bid);
         }
 
+        @Override
+        public void insert(Order.Bid bid) {
+            super.insert(bid);
+            bidOrderBook.put(bid);
+        }
+
+        @Override
+        public boolean delete(Order.Bid bid) {
+            boolean deleted = super.delete(bid);
+            if (bid != null) {
+                bidOrderBook.remove(bid);
+            }
+            return deleted;
+        }
+
+        @Override
+        public void rollback(int height) {
+            super.rollback(height);
+            bidOrderBook.invalidate();
+        }
+
+        @Override
+        public void truncate() {
+            super.truncate();
+            bidOrderBook.invalidate();
+        }
+
         @Override
         protected String defaultSort() {
             return " ORDER BY creation_height DESC ";
@@ -65,6 +120,23 @@ public abstract class SqlOrderStore implements OrderStore {
 
     };
 
+    private final OrderBook<Order.Ask> askOrderBook = new OrderBook<>(askOrderTable, "ask_order", OrderBook.ASK_ORDER,
+            new Function<Order.Ask, Order.Ask>() {
+                @Override
+                public Order.Ask apply(Order.Ask ask) {
+                    return new Order.Ask(ask.getId(), ask.getAccountId(), ask.getAssetId(), ask.getPriceNQT(),
+                            ask.getHeight(), ask.getQuantityQNT(), ask.dbKey);
+                }
+            });
+    private final OrderBook<Order.Bid> bidOrderBook = new OrderBook<>(bidOrderTable, "bid_order", OrderBook.BID_ORDER,
+            new Function<Order.Bid, Order.Bid>() {
+                @Override
+                public Order.Bid apply(Order.Bid bid) {
+                    return new Order.Bid(bid.getId(), bid.getAccountId(), bid.getAssetId(), bid.getPriceNQT(),
+                            bid.getHeight(), bid.getQuantityQNT(), bid.dbKey);
+                }
+            });
+
     @Override
     public VersionedEntityTable<Order.Bid> getBidOrderTable() {
         return bidOrderTable;
@@ -85,23 +157,13 @@ public abstract class SqlOrderStore implements OrderStore {
 
     @Override
     public NxtIterator<Order.Ask> getSortedAsks(long assetId, int from, int to) {
-        return askOrderTable.getManyBy(new DbClause.LongClause("asset_id", assetId), from, to,
-                " ORDER BY price ASC, creation_height ASC, id ASC ");
+        return askOrderBook.getSorted(assetId, from, to);
     }
 
     @Override
     public Order.Ask getNextOrder(long assetId) {
-        try (Connection con = Db.getConnection();
-             PreparedStatement pstmt = con.prepareStatement("SELECT * FROM ask_order WHERE asset_id = ? "
-                     + "AND latest = TRUE ORDER BY price ASC, creation_height ASC, id ASC" + DbUtils.limitsClause(1))) {
-            pstmt.setLong(1, assetId);
-            DbUtils.setLimits(2, pstmt, 1);
-            try (NxtIterator<Order.Ask> askOrders = askOrderTable.getManyBy(con, pstmt, true)) {
-                return askOrders.hasNext() ? askOrders.next() : null;
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e.toString(), e);
-        }
+        Order.Ask ask = askOrderBook.first(assetId);
+        return ask == null ? null : askOrderTable.get(ask.dbKey);
     }
 
     @Override
@@ -165,24 +227,13 @@ public abstract class SqlOrderStore implements OrderStore {
 
     @Override
     public NxtIterator<Order.Bid> getSortedBids(long assetId, int from, int to) {
-
-        return bidOrderTable.getManyBy(new DbClause.LongClause("asset_id", assetId), from, to,
-                " ORDER BY price DESC, creation_height ASC, id ASC ");
+        return bidOrderBook.getSorted(assetId, from, to);
     }
 
     @Override
     public Order.Bid getNextBid(long assetId) {
-        try (Connection con = Db.getConnection();
-             PreparedStatement pstmt = con.prepareStatement("SELECT * FROM bid_order WHERE asset_id = ? "
-                     + "AND latest = TRUE ORDER BY price DESC, creation_height ASC, id ASC" + DbUtils.limitsClause(1) )) {
-            pstmt.setLong(1, assetId);
-            DbUtils.setLimits(2, pstmt, 1);
-            try (NxtIterator<Order.Bid> bidOrders = bidOrderTable.getManyBy(con, pstmt, true)) {
-                return bidOrders.hasNext() ? bidOrders.next() : null;
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e.toString(), e);
-        }
+        Order.Bid bid = bidOrderBook.first(assetId);
+        return bid == null ? null : bidOrderTable.get(bid.dbKey);
     }
 
     private void saveBid(Connection con, String table, Order.Bid bid) throws SQLException {
@@ -22,7 +22,7 @@ public abstract class SqlSubscriptionStore implements SubscriptionStore {
     };
 
     private final VersionedEntityTable<Subscription> subscriptionTable =
-            new VersionedEntitySqlTable<Subscription>("subscription", subscriptionDbKeyFactory) {
+            new VersionedBatchEntitySqlTable<Subscription>("subscription", subscriptionDbKeyFactory) {
                 @Override
                 protected Subscription load(Connection con, ResultSet rs) throws SQLException {
                     return new SqlSubscription(rs);
@@ -28,6 +28,9 @@ public class SqlTransactionProcessorStore implements TransactionProcessorStore {
     private final Set<TransactionImpl> lostTransactions = new HashSet<>();
     private final Map<Long, Integer> lostTransactionHeights = new HashMap<>();
 
+    // created before the table, it has to be rolled back before the table's rows are gone
+    private final UnconfirmedTransactionPool unconfirmedTransactionPool =
+            new UnconfirmedTransactionPool("unconfirmed_transaction", this::getUnconfirmedTransactionTable);
 
     private final EntitySqlTable<TransactionImpl> unconfirmedTransactionTable =
             new EntitySqlTable<TransactionImpl>("unconfirmed_transaction", unconfirmedTransactionDbKeyFactory) {
@@ -86,14 +89,6 @@ public class SqlTransactionProcessorStore implements TransactionProcessorStore {
                 }
             };
 
-    private final DbClause expiredClause = new DbClause(" expiration < ? ") {
-        @Override
-        protected int set(PreparedStatement pstmt, int index) throws SQLException {
-            pstmt.setInt(index, Nxt.getEpochTime());
-            return index + 1;
-        }
-    };
-
     // WATCH: BUSINESS-LOGIC
     @Override
     public void processLater(Collection<TransactionImpl> transactions) {
@@ -126,11 +121,12 @@ public class SqlTransactionProcessorStore implements TransactionProcessorStore {
 
     @Override
     public NxtIterator<TransactionImpl> getExpiredTransactions() {
-        return unconfirmedTransactionTable.getManyBy(expiredClause, 0, -1, "");
+        return new CollectionIterator<>(unconfirmedTransactionPool.getExpired(Nxt.getEpochTime()));
     }
 
     @Override
     public int deleteTransaction(Transaction transaction) {
+        unconfirmedTransactionPool.remove(transaction.getId());
         try (Connection con = Db.getConnection();
              PreparedStatement pstmt = con.prepareStatement("DELETE FROM unconfirmed_transaction WHERE id = ?")) {
             pstmt.setLong(1, transaction.getId());
@@ -141,4 +137,36 @@ public class SqlTransactionProcessorStore implements TransactionProcessorStore {
             throw new RuntimeException(e.toString(), e);
         }
     }
+
+    @Override
+    public void addUnconfirmedTransaction(TransactionImpl transaction) {
+        unconfirmedTransactionPool.put(transaction);
+        getUnconfirmedTransactionTable().insert(transaction);
+    }
+
+    @Override
+    public TransactionImpl getUnconfirmedTransaction(long transactionId) {
+        return unconfirmedTransactionPool.get(transactionId);
+    }
+
+    @Override
+    public NxtIterator<TransactionImpl> getAllUnconfirmedTransactions() {
+        return new CollectionIterator<>(unconfirmedTransactionPool.getAll());
+    }
+
+    @Override
+    public List<TransactionImpl> getUnconfirmedTransactions(long accountId) {
+        return unconfirmedTransactionPool.getByAccount(accountId);
+    }
+
+    @Override
+    public List<TransactionImpl> getUnconfirmedTransactionsToEvict(TransactionImpl transaction) {
+        return unconfirmedTransactionPool.getEvictions(transaction);
+    }
+
+    @Override
+    public void clearUnconfirmedTransactions() {
+        unconfirmedTransactionPool.truncate();
+        getUnconfirmedTransactionTable().truncate();
+    }
 }
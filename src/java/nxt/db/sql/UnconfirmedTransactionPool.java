@@ -0,0 +1,411 @@
+package nxt.db.sql;
+
+import nxt.Nxt;
+import nxt.TransactionImpl;
+import nxt.db.DerivedTable;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+/**
+ * Unconfirmed transactions kept in memory in the order block generation picks them.
+ *
+ * The unconfirmed_transaction table is only the journal of the pool. It is written in the same transaction as the
+ * unconfirmed balances and read once, before the first change to the pool, so the pool survives a restart. A
+ * transaction records its changes to the pool separately, they are applied to the committed pool when it commits and
+ * dropped otherwise, so every other thread only sees committed transactions.
+ */
+final class UnconfirmedTransactionPool implements DerivedTable {
+
+    /**
+     * Highest fee per byte first, the order blocks are filled in. Transactions of popped off blocks go first among those
+     * paying the same.
+     */
+    private static final Comparator<Entry> PRIORITY = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry e1, Entry e2) {
+            int result = Long.compare(e2.feePerByte, e1.feePerByte);
+            if (result == 0) {
+                result = Integer.compare(e1.transactionHeight, e2.transactionHeight);
+            }
+            if (result == 0) {
+                result = Integer.compare(e1.timestamp, e2.timestamp);
+            }
+            return result != 0 ? result : Long.compare(e1.id, e2.id);
+        }
+    };
+
+    private static final List<UnconfirmedTransactionPool> pools = new CopyOnWriteArrayList<>();
+
+    private final int maxTransactions = Nxt.getIntProperty("nxt.maxUnconfirmedTransactions");
+    private final int maxSize = Nxt.getIntProperty("nxt.maxUnconfirmedTransactionsSize");
+
+    private final String table;
+    private final Supplier<EntitySqlTable<TransactionImpl>> journal;
+
+    private final Map<Long, Entry> committed = new HashMap<>();
+    private final NavigableSet<Entry> committedOrder = new TreeSet<>(PRIORITY);
+    private final Map<Long, NavigableSet<Entry>> committedByAccount = new HashMap<>();
+    private long committedSize;
+    private boolean loaded;
+
+    private final ThreadLocal<Working> working = new ThreadLocal<Working>() {
+        @Override
+        protected Working initialValue() {
+            return new Working();
+        }
+    };
+
+    /**
+     * @param journal the table the pool is loaded from, its load method is used to parse the rows
+     */
+    UnconfirmedTransactionPool(String table, Supplier<EntitySqlTable<TransactionImpl>> journal) {
+        this.table = table;
+        this.journal = journal;
+        pools.add(this);
+        Nxt.getBlockchainProcessor().registerDerivedTable(this);
+    }
+
+    TransactionImpl get(long id) {
+        if (Db.isInTransaction()) {
+            Working w = working.get();
+            Entry entry = w.added.get(id);
+            if (entry != null) {
+                return entry.transaction;
+            }
+            if (w.cleared || w.removed.contains(id)) {
+                return null;
+            }
+        }
+        synchronized (this) {
+            load();
+            Entry entry = committed.get(id);
+            return entry == null ? null : entry.transaction;
+        }
+    }
+
+    /**
+     * All transactions in priority order.
+     */
+    List<TransactionImpl> getAll() {
+        List<Entry> entries = getEntries();
+        List<TransactionImpl> result = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            result.add(entry.transaction);
+        }
+        return result;
+    }
+
+    /**
+     * The transactions the account sends or receives, in priority order.
+     */
+    List<TransactionImpl> getByAccount(long accountId) {
+        Working w = Db.isInTransaction() ? working.get() : null;
+        NavigableSet<Entry> entries = new TreeSet<>(PRIORITY);
+        if (w == null || !w.cleared) {
+            synchronized (this) {
+                load();
+                NavigableSet<Entry> committedEntries = committedByAccount.get(accountId);
+                if (committedEntries != null) {
+                    for (Entry entry : committedEntries) {
+                        if (w == null || !(w.removed.contains(entry.id) || w.added.containsKey(entry.id))) {
+                            entries.add(entry);
+                        }
+                    }
+                }
+            }
+        }
+        if (w != null) {
+            for (Entry entry : w.added.values()) {
+                if (entry.senderId == accountId || entry.recipientId == accountId) {
+                    entries.add(entry);
+                }
+            }
+        }
+        List<TransactionImpl> result = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            result.add(entry.transaction);
+        }
+        return result;
+    }
+
+    List<TransactionImpl> getExpired(int epochTime) {
+        List<TransactionImpl> result = new ArrayList<>();
+        for (Entry entry : getEntries()) {
+            if (entry.expiration < epochTime) {
+                result.add(entry.transaction);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The transactions which have to be removed to make room for the given one within the configured limits,
+     * lowest priority first. Only transactions with a lower priority are given up for it, null if that isn't enough.
+     */
+    List<TransactionImpl> getEvictions(TransactionImpl transaction) {
+        Entry candidate = new Entry(transaction, 0);
+        int count;
+        long size;
+        if (Db.isInTransaction() && !working.get().isEmpty()) {
+            count = 0;
+            size = 0;
+            for (Entry entry : getEntries()) {
+                count++;
+                size += entry.size;
+            }
+        } else {
+            synchronized (this) {
+                load();
+                count = committed.size();
+                size = committedSize;
+            }
+        }
+        if (fits(count + 1, size + candidate.size)) {
+            return Collections.emptyList();
+        }
+        List<Entry> entries = getEntries();
+        List<TransactionImpl> evictions = new ArrayList<>();
+        ListIterator<Entry> it = entries.listIterator(entries.size());
+        while (it.hasPrevious()) {
+            Entry entry = it.previous();
+            if (PRIORITY.compare(entry, candidate) <= 0) {
+                return null;
+            }
+            evictions.add(entry.transaction);
+            count--;
+            size -= entry.size;
+            if (fits(count + 1, size + candidate.size)) {
+                return evictions;
+            }
+        }
+        return null;
+    }
+
+    void put(TransactionImpl transaction) {
+        Entry entry = new Entry(transaction, Nxt.getBlockchain().getHeight());
+        getWorking().added.put(entry.id, entry);
+    }
+
+    void remove(long id) {
+        Working w = getWorking();
+        w.added.remove(id);
+        w.removed.add(id);
+    }
+
+    @Override
+    public void rollback(int height) {
+        Working w = getWorking();
+        for (Entry entry : getEntries()) {
+            if (entry.height > height) {
+                w.added.remove(entry.id);
+                w.removed.add(entry.id);
+            }
+        }
+    }
+
+    @Override
+    public void truncate() {
+        Working w = getWorking();
+        w.added.clear();
+        w.removed.clear();
+        w.cleared = true;
+    }
+
+    @Override
+    public void trim(int height) {
+    }
+
+    @Override
+    public void finish() {
+    }
+
+    private boolean fits(int count, long size) {
+        return (maxTransactions <= 0 || count <= maxTransactions) && (maxSize <= 0 || size <= maxSize);
+    }
+
+    private Working getWorking() {
+        if (!Db.isInTransaction()) {
+            throw new IllegalStateException("Not in transaction");
+        }
+        synchronized (this) {
+            // the journal must not contain changes of the transaction yet
+            load();
+        }
+        return working.get();
+    }
+
+    /**
+     * The committed entries with the changes of the current transaction, in priority order.
+     */
+    private List<Entry> getEntries() {
+        Working w = Db.isInTransaction() ? working.get() : null;
+        if (w == null || w.isEmpty()) {
+            synchronized (this) {
+                load();
+                return new ArrayList<>(committedOrder);
+            }
+        }
+        NavigableSet<Entry> entries = new TreeSet<>(PRIORITY);
+        if (!w.cleared) {
+            synchronized (this) {
+                load();
+                for (Entry entry : committedOrder) {
+                    if (!w.removed.contains(entry.id) && !w.added.containsKey(entry.id)) {
+                        entries.add(entry);
+                    }
+                }
+            }
+        }
+        entries.addAll(w.added.values());
+        return new ArrayList<>(entries);
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        EntitySqlTable<TransactionImpl> journalTable = journal.get();
+        try (Connection con = Db.getConnection();
+             PreparedStatement pstmt = con.prepareStatement("SELECT * FROM " + table);
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                addCommitted(new Entry(journalTable.load(con, rs), rs.getInt("height")));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+        loaded = true;
+    }
+
+    private void addCommitted(Entry entry) {
+        removeCommitted(entry.id);
+        committed.put(entry.id, entry);
+        committedOrder.add(entry);
+        committedSize += entry.size;
+        index(entry.senderId, entry);
+        if (entry.recipientId != 0 && entry.recipientId != entry.senderId) {
+            index(entry.recipientId, entry);
+        }
+    }
+
+    private void removeCommitted(long id) {
+        Entry entry = committed.remove(id);
+        if (entry == null) {
+            return;
+        }
+        committedOrder.remove(entry);
+        committedSize -= entry.size;
+        unindex(entry.senderId, entry);
+        unindex(entry.recipientId, entry);
+    }
+
+    private void index(long accountId, Entry entry) {
+        NavigableSet<Entry> entries = committedByAccount.get(accountId);
+        if (entries == null) {
+            entries = new TreeSet<>(PRIORITY);
+            committedByAccount.put(accountId, entries);
+        }
+        entries.add(entry);
+    }
+
+    private void unindex(long accountId, Entry entry) {
+        NavigableSet<Entry> entries = committedByAccount.get(accountId);
+        if (entries != null && entries.remove(entry) && entries.isEmpty()) {
+            committedByAccount.remove(accountId);
+        }
+    }
+
+    private void commit() {
+        Working w = working.get();
+        if (!w.isEmpty()) {
+            synchronized (this) {
+                if (w.cleared) {
+                    committed.clear();
+                    committedOrder.clear();
+                    committedByAccount.clear();
+                    committedSize = 0;
+                }
+                for (Long id : w.removed) {
+                    removeCommitted(id);
+                }
+                for (Entry entry : w.added.values()) {
+                    addCommitted(entry);
+                }
+            }
+        }
+        working.remove();
+    }
+
+    private void rollback() {
+        working.remove();
+    }
+
+    static void commitAll() {
+        for (UnconfirmedTransactionPool pool : pools) {
+            pool.commit();
+        }
+    }
+
+    static void rollbackAll() {
+        for (UnconfirmedTransactionPool pool : pools) {
+            pool.rollback();
+        }
+    }
+
+    /**
+     * A transaction with the values it is sorted by, they can change on the transaction once it is put into a block.
+     */
+    private static final class Entry {
+        private final TransactionImpl transaction;
+        private final long id;
+        private final int transactionHeight;
+        private final long feePerByte;
+        private final int timestamp;
+        private final int expiration;
+        private final int size;
+        private final long senderId;
+        private final long recipientId;
+        /** Blockchain height the transaction was added at */
+        private final int height;
+
+        private Entry(TransactionImpl transaction, int height) {
+            this.transaction = transaction;
+            this.id = transaction.getId();
+            this.transactionHeight = transaction.getHeight();
+            this.size = transaction.getSize();
+            this.feePerByte = transaction.getFeeNQT() / size;
+            this.timestamp = transaction.getTimestamp();
+            this.expiration = transaction.getExpiration();
+            this.senderId = transaction.getSenderId();
+            this.recipientId = transaction.getRecipientId();
+            this.height = height;
+        }
+    }
+
+    private static final class Working {
+        private final Map<Long, Entry> added = new HashMap<>();
+        private final Set<Long> removed = new HashSet<>();
+        private boolean cleared;
+
+        private boolean isEmpty() {
+            return !cleared && added.isEmpty() && removed.isEmpty();
+        }
+    }
+
+}
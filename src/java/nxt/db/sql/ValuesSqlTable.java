@@ -35,7 +35,7 @@ public abstract class ValuesSqlTable<T,V> extends DerivedSqlTable implements Val
         DbKey dbKey = (DbKey) nxtKey;
         List<V> values;
         if (Db.isInTransaction()) {
-            values = (List<V>)Db.getCache(table).get(dbKey);
+            values = (List<V>)Db.getCache(table, dbKeyFactory).get(dbKey);
             if (values != null) {
                 return values;
             }
@@ -46,7 +46,7 @@ public abstract class ValuesSqlTable<T,V> extends DerivedSqlTable implements Val
             dbKey.setPK(pstmt);
             values = get(con, pstmt);
             if (Db.isInTransaction()) {
-                Db.getCache(table).put(dbKey, values);
+                Db.getCache(table, dbKeyFactory).put(dbKey, values);
             }
             return values;
         } catch (SQLException e) {
@@ -74,7 +74,7 @@ public abstract class ValuesSqlTable<T,V> extends DerivedSqlTable implements Val
             throw new IllegalStateException("Not in transaction");
         }
         DbKey dbKey = (DbKey)dbKeyFactory.newKey(t);
-        Db.getCache(table).put(dbKey, values);
+        Db.getCache(table, dbKeyFactory).put(dbKey, values);
         try (Connection con = Db.getConnection()) {
             if (multiversion) {
                 try (PreparedStatement pstmt = con.prepareStatement("UPDATE " + table
@@ -94,13 +94,13 @@ public abstract class ValuesSqlTable<T,V> extends DerivedSqlTable implements Val
     @Override
     public void rollback(int height) {
         super.rollback(height);
-        Db.getCache(table).clear();
+        Db.getCache(table, dbKeyFactory).clear();
     }
 
     @Override
     public final void truncate() {
         super.truncate();
-        Db.getCache(table).clear();
+        Db.getCache(table, dbKeyFactory).clear();
     }
 
 }
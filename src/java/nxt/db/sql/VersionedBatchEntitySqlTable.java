@@ -1,7 +1,5 @@
 package nxt.db.sql;
 
-import com.codahale.metrics.Histogram;
-import com.codahale.metrics.MetricRegistry;
 import nxt.Nxt;
 import nxt.db.NxtIterator;
 import nxt.db.NxtKey;
@@ -10,35 +8,84 @@ import nxt.db.VersionedBatchEntityTable;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
-import java.util.*;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+/**
+ * Versioned table whose changes are kept in the transaction batch and written in {@link #finish()}, once per entity
+ * and with JDBC batches.
+ *
+ * Tables provide {@link #updateQuery()} and {@link #batch(PreparedStatement, Object)} to write all entities with one
+ * batch, otherwise every entity is written with {@link #save(Connection, Object)}. Queries other than by key flush
+ * the batch first, so they see the changes of the current transaction. Pending batches are also flushed when the
+ * transaction commits.
+ */
 public abstract class VersionedBatchEntitySqlTable<T> extends VersionedEntitySqlTable<T> implements VersionedBatchEntityTable<T>
 {
-    protected VersionedBatchEntitySqlTable(String table, DbKey.Factory<T> dbKeyFactory) {
+    private static final List<VersionedBatchEntitySqlTable<?>> tables = new CopyOnWriteArrayList<>();
+
+    protected VersionedBatchEntitySqlTable(String table, NxtKey.Factory<T> dbKeyFactory) {
         super(table, dbKeyFactory);
+        tables.add(this);
     }
 
-    protected abstract String updateQuery();
-    protected abstract void batch(PreparedStatement pstmt, T t) throws SQLException;
+    /**
+     * Statement writing one entity with the parameters set by {@link #batch(PreparedStatement, Object)}, or null to
+     * write every entity with {@link #save(Connection, Object)}.
+     */
+    protected String updateQuery() {
+        return null;
+    }
 
+    protected void batch(PreparedStatement pstmt, T t) throws SQLException {
+        throw new UnsupportedOperationException("No update query for " + table);
+    }
+
+    /**
+     * Writes a single entity with the update query, for tables that only provide a batch.
+     */
+    @Override
+    protected void save(Connection con, T t) throws SQLException {
+        try (PreparedStatement pstmt = con.prepareStatement(updateQuery())) {
+            batch(pstmt, t);
+            pstmt.executeBatch();
+        }
+    }
+
+    /**
+     * Writes the pending changes of every table, called before the transaction commits.
+     */
+    static void finishAll() {
+        for (VersionedBatchEntitySqlTable<?> table : tables) {
+            table.finish();
+        }
+    }
+
+    private void flush() {
+        if (Db.isInTransaction()) {
+            finish();
+        }
+    }
 
     @Override
     public boolean delete(T t) {
+        if (t == null) {
+            return false;
+        }
         if(!Db.isInTransaction()) {
             throw new IllegalStateException("Not in transaction");
         }
-        DbKey dbKey = (DbKey)dbKeyFactory.newKey(t);
-        Db.getBatch(table).put(dbKey, null);
-        Db.getCache(table).remove(dbKey);
-
-        return true;
+        // a pending insert is dropped, the delete itself is written right away to keep the history intact
+        Db.getBatch(table, dbKeyFactory).remove(dbKeyFactory.newKey(t));
+        return super.delete(t);
     }
 
     @Override
     public T get(NxtKey dbKey) {
         if(Db.isInTransaction()) {
-            if(Db.getBatch(table).containsKey(dbKey)) {
-                return (T)Db.getBatch(table).get(dbKey);
+            if(Db.getBatch(table, dbKeyFactory).containsKey(dbKey)) {
+                return (T)Db.getBatch(table, dbKeyFactory).get(dbKey);
             }
         }
         return super.get(dbKey);
@@ -50,8 +97,11 @@ public abstract class VersionedBatchEntitySqlTable<T> extends VersionedEntitySql
             throw new IllegalStateException("Not in transaction");
         }
         DbKey dbKey = (DbKey)dbKeyFactory.newKey(t);
-        Db.getBatch(table).put(dbKey, t);
-        Db.getCache(table).put(dbKey, t);
+        Db.getBatch(table, dbKeyFactory).put(dbKey, t);
+        Db.getCache(table, dbKeyFactory).put(dbKey, t);
+        if (EntityCache.isAvailable()) {
+            cache.put(dbKey, t, Nxt.getBlockchain().getHeight());
+        }
     }
 
     @Override
@@ -59,16 +109,17 @@ public abstract class VersionedBatchEntitySqlTable<T> extends VersionedEntitySql
         if(!Db.isInTransaction()) {
             throw new IllegalStateException("Not in transaction");
         }
+        Map<DbKey, Object> batch = Db.getBatch(table, dbKeyFactory);
+        if (batch.isEmpty()) {
+            return;
+        }
 
         try(Connection con = Db.getConnection();
-            PreparedStatement pstmt = con.prepareStatement("UPDATE " + table
+            PreparedStatement pstmt = con.prepareStatement("UPDATE " + DbUtils.quoteTableName(table)
                 + " SET latest = FALSE " + dbKeyFactory.getPKClause() + " AND latest = TRUE" + DbUtils.limitsClause(1))) {
-            Set keySet = Db.getBatch(table).keySet();
-            Iterator<DbKey> it = keySet.iterator();
-            while(it.hasNext()) {
-                DbKey key = it.next();
-                key.setPK(pstmt);
-                DbUtils.setLimits(2, pstmt, 1);
+            for (DbKey key : batch.keySet()) {
+                int i = key.setPK(pstmt);
+                DbUtils.setLimits(i, pstmt, 1);
                 pstmt.addBatch();
             }
             pstmt.executeBatch();
@@ -77,145 +128,136 @@ public abstract class VersionedBatchEntitySqlTable<T> extends VersionedEntitySql
             throw new RuntimeException(e.toString(), e);
         }
 
-        try(Connection con =Db.getConnection();
-            PreparedStatement pstmt = con.prepareStatement(updateQuery())) {
-
-            List<Map.Entry<DbKey,Object>> entries = new ArrayList<>(Db.getBatch(table).entrySet());
-            for ( Map.Entry<DbKey,Object> entry: entries)
-            {
-                if(entry.getValue() != null) {
-                    batch(pstmt, (T)entry.getValue());
+        String updateQuery = updateQuery();
+        try(Connection con = Db.getConnection()) {
+            if (updateQuery != null) {
+                try (PreparedStatement pstmt = con.prepareStatement(updateQuery)) {
+                    for (Object t : batch.values()) {
+                        if (t != null) {
+                            batch(pstmt, (T) t);
+                        }
+                    }
+                    pstmt.executeBatch();
+                }
+            } else {
+                for (Object t : batch.values()) {
+                    if (t != null) {
+                        save(con, (T) t);
+                    }
                 }
             }
-            pstmt.executeBatch();
-
         }
         catch(SQLException e) {
             throw new RuntimeException(e.toString(), e);
         }
+        batch.clear();
     }
 
     @Override
     public T get(NxtKey dbKey, int height) {
-        if(Db.isInTransaction()) {
-            throw new IllegalStateException("Cannot use in batch table transaction");
-        }
+        flush();
         return super.get(dbKey, height);
     }
 
     @Override
     public T getBy(DbClause dbClause) {
-        if(Db.isInTransaction()) {
-            throw new IllegalStateException("Cannot use in batch table transaction");
-        }
+        flush();
         return super.getBy(dbClause);
     }
 
     @Override
     public T getBy(DbClause dbClause, int height) {
-        if(Db.isInTransaction()) {
-            throw new IllegalStateException("Cannot use in batch table transaction");
-        }
+        flush();
         return super.getBy(dbClause, height);
     }
 
     @Override
     public NxtIterator<T> getManyBy(DbClause dbClause, int from, int to) {
-        if(Db.isInTransaction()) {
-            throw new IllegalStateException("Cannot use in batch table transaction");
-        }
+        flush();
         return super.getManyBy(dbClause, from, to);
     }
 
     @Override
     public NxtIterator<T> getManyBy(DbClause dbClause, int from, int to, String sort) {
-        if(Db.isInTransaction()) {
-            throw new IllegalStateException("Cannot use in batch table transaction");
-        }
+        flush();
         return super.getManyBy(dbClause, from, to, sort);
     }
 
     @Override
     public NxtIterator<T> getManyBy(DbClause dbClause, int height, int from, int to) {
-        if(Db.isInTransaction()) {
-            throw new IllegalStateException("Cannot use in batch table transaction");
-        }
+        flush();
         return super.getManyBy(dbClause, height, from, to);
     }
 
     @Override
     public NxtIterator<T> getManyBy(DbClause dbClause, int height, int from, int to, String sort) {
-        if(Db.isInTransaction()) {
-            throw new IllegalStateException("Cannot use in batch table transaction");
-        }
+        flush();
         return super.getManyBy(dbClause, height, from, to, sort);
     }
 
     @Override
     public NxtIterator<T> getManyBy(Connection con, PreparedStatement pstmt, boolean cache) {
-        if(Db.isInTransaction()) {
-            throw new IllegalStateException("Cannot use in batch table transaction");
-        }
+        flush();
         return super.getManyBy(con, pstmt, cache);
     }
 
+    @Override
+    public NxtIterator<T> getManyBy(DbClause dbClause, String continuationToken, int limit) {
+        flush();
+        return super.getManyBy(dbClause, continuationToken, limit);
+    }
+
     @Override
     public NxtIterator<T> getAll(int from, int to) {
-        if(Db.isInTransaction()) {
-            throw new IllegalStateException("Cannot use in batch table transaction");
-        }
+        flush();
         return super.getAll(from, to);
     }
 
     @Override
     public NxtIterator<T> getAll(int from, int to, String sort) {
-        if(Db.isInTransaction()) {
-            throw new IllegalStateException("Cannot use in batch table transaction");
-        }
+        flush();
         return super.getAll(from, to, sort);
     }
 
     @Override
     public NxtIterator<T> getAll(int height, int from, int to) {
-        if(Db.isInTransaction()) {
-            throw new IllegalStateException("Cannot use in batch table transaction");
-        }
+        flush();
         return super.getAll(height, from, to);
     }
 
     @Override
     public NxtIterator<T> getAll(int height, int from, int to, String sort) {
-        if(Db.isInTransaction()) {
-            throw new IllegalStateException("Cannot use in batch table transaction");
-        }
+        flush();
         return super.getAll(height, from, to, sort);
     }
 
+    @Override
+    public NxtIterator<T> getAll(String continuationToken, int limit) {
+        flush();
+        return super.getAll(continuationToken, limit);
+    }
+
     @Override
     public int getCount() {
-        if(Db.isInTransaction()) {
-            throw new IllegalStateException("Cannot use in batch table transaction");
-        }
+        flush();
         return super.getCount();
     }
 
     @Override
     public int getRowCount() {
-        if(Db.isInTransaction()) {
-            throw new IllegalStateException("Cannot use in batch table transaction");
-        }
+        flush();
         return super.getRowCount();
     }
 
     @Override
     public void rollback(int height) {
         super.rollback(height);
-        Db.getBatch(table).clear();
+        Db.getBatch(table, dbKeyFactory).clear();
     }
 
     @Override
     public void truncate() {
         super.truncate();
-        Db.getBatch(table).clear();
+        Db.getBatch(table, dbKeyFactory).clear();
     }
 }
@@ -1,5 +1,7 @@
 package nxt.db.sql;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import nxt.Nxt;
 import nxt.db.NxtKey;
 import nxt.db.VersionedEntityTable;
@@ -8,8 +10,6 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.List;
 
 public abstract class VersionedEntitySqlTable<T> extends EntitySqlTable<T> implements VersionedEntityTable<T> {
 
@@ -20,6 +20,7 @@ public abstract class VersionedEntitySqlTable<T> extends EntitySqlTable<T> imple
     @Override
     public void rollback(int height) {
         rollback(table, height, dbKeyFactory);
+        cache.removeAbove(height);
     }
 
     @Override
@@ -59,7 +60,8 @@ public abstract class VersionedEntitySqlTable<T> extends EntitySqlTable<T> imple
         } catch (SQLException e) {
             throw new RuntimeException(e.toString(), e);
         } finally {
-            Db.getCache(table).remove(dbKey);
+            Db.getCache(table, dbKeyFactory).remove(dbKey);
+            cache.remove(dbKey);
         }
     }
 
@@ -68,96 +70,103 @@ public abstract class VersionedEntitySqlTable<T> extends EntitySqlTable<T> imple
         trim(table, height, dbKeyFactory);
     }
 
+    /**
+     * Deletes the rows above height and marks the highest remaining row of every key that had such rows as latest.
+     * Both are done with one statement each, whatever the number of keys.
+     */
     static void rollback(final String table, final int height, final DbKey.Factory dbKeyFactory) {
         if (!Db.isInTransaction()) {
             throw new IllegalStateException("Not in transaction");
         }
-
-        // WATCH: DIRTY HACK :/ Too lazy to rework all store classes to use subclasses of VersionedEntitySqlTable
+        String quotedTable = DbUtils.quoteTableName(table);
         String setLatestSql;
-        switch (Db.getDatabaseType())
-        {
+        switch (Db.getDatabaseType()) {
             case FIREBIRD:
-                throw new IllegalArgumentException("FIX MEEEEE!!!");
             case H2:
-                setLatestSql = "UPDATE " + DbUtils.quoteTableName(table)
-                        + " SET latest = TRUE " + dbKeyFactory.getPKClause() + " AND height ="
-                        + " (SELECT MAX(height) FROM " + DbUtils.quoteTableName(table) + dbKeyFactory.getPKClause() + ")";
+                setLatestSql = "UPDATE " + quotedTable + " a SET latest = TRUE WHERE a.height ="
+                        + " (SELECT MAX(b.height) FROM " + quotedTable + " b WHERE" + dbKeyFactory.getSelfJoinClause()
+                        + "AND b.height <= ?) AND EXISTS (SELECT 1 FROM " + quotedTable + " b WHERE"
+                        + dbKeyFactory.getSelfJoinClause() + "AND b.height > ?)";
                 break;
             case MARIADB:
-                setLatestSql="UPDATE " + DbUtils.quoteTableName(table)
-                        + " SET latest = TRUE " + dbKeyFactory.getPKClause() + " AND height IN"
-                        + " ( SELECT * FROM (SELECT MAX(height) FROM " + DbUtils.quoteTableName(table) + dbKeyFactory.getPKClause() + ") ac0v )";
+                // MariaDB can't select from the table being updated, except through a materialized derived table
+                setLatestSql = "UPDATE " + quotedTable + " a JOIN (SELECT " + dbKeyFactory.getPKColumns()
+                        + ", MAX(height) AS max_height FROM " + quotedTable + " WHERE height <= ? AND ("
+                        + dbKeyFactory.getPKColumns() + ") IN (SELECT " + dbKeyFactory.getPKColumns() + " FROM "
+                        + quotedTable + " WHERE height > ?) GROUP BY " + dbKeyFactory.getPKColumns() + ") b ON"
+                        + dbKeyFactory.getSelfJoinClause() + "AND a.height = b.max_height SET a.latest = TRUE";
                 break;
             default:
                 throw new IllegalArgumentException("Unknown database type");
         }
 
+        final Timer.Context context = Nxt.metrics.timer(MetricRegistry.name(VersionedEntitySqlTable.class, table, "rollback")).time();
         try (Connection con = Db.getConnection();
-             PreparedStatement pstmtSelectToDelete = con.prepareStatement("SELECT DISTINCT " + dbKeyFactory.getPKColumns()
-                     + " FROM " + DbUtils.quoteTableName(table) + " WHERE height > ?");
-             PreparedStatement pstmtDelete = con.prepareStatement("DELETE FROM " + DbUtils.quoteTableName(table)
-                     + " WHERE height > ?");
-             PreparedStatement pstmtSetLatest = con.prepareStatement(setLatestSql)) {
-            pstmtSelectToDelete.setInt(1, height);
-            List<DbKey> dbKeys = new ArrayList<>();
-            try (ResultSet rs = pstmtSelectToDelete.executeQuery()) {
-                while (rs.next()) {
-                    dbKeys.add((DbKey) dbKeyFactory.newKey(rs));
-                }
-            }
+             PreparedStatement pstmtSetLatest = con.prepareStatement(setLatestSql);
+             PreparedStatement pstmtDelete = con.prepareStatement("DELETE FROM " + quotedTable
+                     + " WHERE height > ?")) {
+            pstmtSetLatest.setInt(1, height);
+            pstmtSetLatest.setInt(2, height);
+            pstmtSetLatest.executeUpdate();
             pstmtDelete.setInt(1, height);
             pstmtDelete.executeUpdate();
-            for (DbKey dbKey : dbKeys) {
-                int i = 1;
-                i = dbKey.setPK(pstmtSetLatest, i);
-                i = dbKey.setPK(pstmtSetLatest, i);
-                pstmtSetLatest.executeUpdate();
-                //Db.getCache(table).remove(dbKey);
-            }
         } catch (SQLException e) {
             throw new RuntimeException(e.toString(), e);
+        } finally {
+            context.stop();
         }
-        Db.getCache(table).clear();
+        Db.getCache(table, dbKeyFactory).clear();
     }
 
+    /**
+     * Deletes the rows below height which are followed by a newer row of the same key that is still below height,
+     * and the rows of deleted entities which have no row at height or above.
+     */
     static void trim(final String table, final int height, final DbKey.Factory dbKeyFactory) {
         if (!Db.isInTransaction()) {
             throw new IllegalStateException("Not in transaction");
         }
-        try (Connection con = Db.getConnection();
-             PreparedStatement pstmtSelect = con.prepareStatement("SELECT " + dbKeyFactory.getPKColumns() + ", MAX(height) AS max_height"
-                     + " FROM " + DbUtils.quoteTableName(table) + " WHERE height < ? GROUP BY " + dbKeyFactory.getPKColumns() + " HAVING COUNT(DISTINCT height) > 1");
-             PreparedStatement pstmtDelete = con.prepareStatement("DELETE FROM " + DbUtils.quoteTableName(table) + dbKeyFactory.getPKClause()
-                     + " AND height < ?");
+        String quotedTable = DbUtils.quoteTableName(table);
+        String deleteOldSql;
+        switch (Db.getDatabaseType()) {
+            case FIREBIRD:
+            case H2:
+                deleteOldSql = "DELETE FROM " + quotedTable + " a WHERE a.height < ? AND EXISTS (SELECT 1 FROM "
+                        + quotedTable + " b WHERE" + dbKeyFactory.getSelfJoinClause()
+                        + "AND b.height > a.height AND b.height < ?)";
+                break;
+            case MARIADB:
+                deleteOldSql = "DELETE a FROM " + quotedTable + " a JOIN (SELECT " + dbKeyFactory.getPKColumns()
+                        + ", MAX(height) AS max_height FROM " + quotedTable + " WHERE height < ? GROUP BY "
+                        + dbKeyFactory.getPKColumns() + " HAVING COUNT(DISTINCT height) > 1) b ON"
+                        + dbKeyFactory.getSelfJoinClause() + "WHERE a.height < b.max_height AND a.height < ?";
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown database type");
+        }
 
+        final Timer.Context context = Nxt.metrics.timer(MetricRegistry.name(VersionedEntitySqlTable.class, table, "trim")).time();
+        try (Connection con = Db.getConnection();
+             PreparedStatement pstmtDelete = con.prepareStatement(deleteOldSql);
              PreparedStatement pstmtDeleteDeleted = con.prepareStatement(
                  Db.getDatabaseType() == Db.TYPE.FIREBIRD
-                     ? "DELETE FROM " + DbUtils.quoteTableName(table) + " WHERE height < ? AND latest = FALSE "
+                     ? "DELETE FROM " + quotedTable + " WHERE height < ? AND latest = FALSE "
                          + " AND (" + String.join(" || '\\0' || ", dbKeyFactory.getPKColumns().split(",")) + ") NOT IN ( SELECT * FROM ( SELECT (" + String.join(" || '\\0' || ", dbKeyFactory.getPKColumns().split(",")) + ") AS ac1v FROM "
-                         + DbUtils.quoteTableName(table) + " WHERE height >= ?) ac0v )"
-                     : "DELETE FROM " + DbUtils.quoteTableName(table) + " WHERE height < ? AND latest = FALSE "
+                         + quotedTable + " WHERE height >= ?) ac0v )"
+                     : "DELETE FROM " + quotedTable + " WHERE height < ? AND latest = FALSE "
                          + " AND CONCAT_WS('\\0', " + dbKeyFactory.getPKColumns() + ") NOT IN ( SELECT * FROM ( SELECT CONCAT_WS('\\0', " + dbKeyFactory.getPKColumns() + ") FROM "
-                         + DbUtils.quoteTableName(table) + " WHERE height >= ?) ac0v )"
+                         + quotedTable + " WHERE height >= ?) ac0v )"
              )) {
-
-             // logger.info( "DELETE PK columns: ", dbKeyFactory.getPKColumns() );
-            pstmtSelect.setInt(1, height);
-            try (ResultSet rs = pstmtSelect.executeQuery()) {
-                while (rs.next()) {
-                    DbKey dbKey = (DbKey) dbKeyFactory.newKey(rs);
-                    int maxHeight = rs.getInt("max_height");
-                    int i = 1;
-                    i = dbKey.setPK(pstmtDelete, i);
-                    pstmtDelete.setInt(i, maxHeight);
-                    pstmtDelete.executeUpdate();
-                }
-                pstmtDeleteDeleted.setInt(1, height);
-                pstmtDeleteDeleted.setInt(2, height);
-                pstmtDeleteDeleted.executeUpdate();
-            }
+            pstmtDelete.setInt(1, height);
+            pstmtDelete.setInt(2, height);
+            pstmtDelete.executeUpdate();
+            pstmtDeleteDeleted.setInt(1, height);
+            pstmtDeleteDeleted.setInt(2, height);
+            pstmtDeleteDeleted.executeUpdate();
         } catch (SQLException e) {
             throw new RuntimeException(e.toString(), e);
+        } finally {
+            context.stop();
         }
     }
 
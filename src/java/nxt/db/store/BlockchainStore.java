@@ -35,6 +35,9 @@ public interface BlockchainStore {
     NxtIterator<TransactionImpl> getTransactions(Account account, int numberOfConfirmations, byte type, byte subtype,
                                                  int blockTimestamp, int from, int to);
 
+    NxtIterator<TransactionImpl> getTransactions(Account account, int numberOfConfirmations, byte type, byte subtype,
+                                                 int blockTimestamp, String continuationToken, int limit);
+
     NxtIterator<TransactionImpl> getTransactions(Connection con, PreparedStatement pstmt);
 
     boolean addBlock(BlockImpl block);
@@ -40,4 +40,11 @@ public interface Stores {
     void endTransaction();
 
     boolean isInTransaction();
+
+    void beginSnapshot();
+
+    /**
+     * @return false if the snapshot may not have been consistent and the reads have to be repeated
+     */
+    boolean endSnapshot();
 }
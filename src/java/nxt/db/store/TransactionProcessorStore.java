@@ -7,6 +7,7 @@ import nxt.db.NxtKey;
 import nxt.db.sql.EntitySqlTable;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -25,4 +26,26 @@ public interface TransactionProcessorStore {
     NxtIterator<TransactionImpl> getExpiredTransactions();
 
     int deleteTransaction (Transaction transaction);
+
+    /**
+     * Adds the transaction to the pool, unconfirmed balances have to be applied by the caller in the same transaction.
+     */
+    void addUnconfirmedTransaction(TransactionImpl transaction);
+
+    TransactionImpl getUnconfirmedTransaction(long transactionId);
+
+    /**
+     * The pool in the order transactions are included into blocks.
+     */
+    NxtIterator<TransactionImpl> getAllUnconfirmedTransactions();
+
+    List<TransactionImpl> getUnconfirmedTransactions(long accountId);
+
+    /**
+     * The transactions of lower priority which have to go to keep the pool within its limits with the given one added,
+     * null if the transaction can't be added.
+     */
+    List<TransactionImpl> getUnconfirmedTransactionsToEvict(TransactionImpl transaction);
+
+    void clearUnconfirmedTransactions();
 }
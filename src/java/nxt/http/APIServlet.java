@@ -52,9 +52,19 @@ public final class APIServlet extends HttpServlet {
             return false;
         }
 
+        /**
+         * Requests that only read run on a database snapshot, so block imports neither block them nor show through
+         * partially.
+         */
+        boolean readSnapshot() {
+            return !requirePost() && !startDbTransaction();
+        }
+
     }
 
     private static final boolean enforcePost = Nxt.getBooleanProperty("nxt.apiServerEnforcePOST");
+    private static final boolean snapshotReads = Nxt.getBooleanProperty("nxt.apiServerSnapshotReads", true);
+    private static final int MAX_SNAPSHOT_ATTEMPTS = 2;
 
     static final Map<String,APIRequestHandler> apiRequestHandlers;
 
@@ -250,7 +260,11 @@ public final class APIServlet extends HttpServlet {
                 if (apiRequestHandler.startDbTransaction()) {
                     Nxt.getStores().beginTransaction();
                 }
-                response = apiRequestHandler.processRequest(req);
+                if (snapshotReads && apiRequestHandler.readSnapshot()) {
+                    response = processOnSnapshot(apiRequestHandler, req);
+                } else {
+                    response = apiRequestHandler.processRequest(req);
+                }
             } catch (ParameterException e) {
                 response = e.getErrorResponse();
             } catch (NxtException |RuntimeException e) {
@@ -275,4 +289,26 @@ public final class APIServlet extends HttpServlet {
 
     }
 
+    /**
+     * Repeats the request once if the snapshot turns out to be inconsistent, which happens only with H2. H2 cannot
+     * provide snapshots, so the second attempt is returned even if a block was imported meanwhile. Reads never wait
+     * for block imports.
+     */
+    private static JSONStreamAware processOnSnapshot(APIRequestHandler apiRequestHandler, HttpServletRequest req) throws NxtException {
+        JSONStreamAware response = null;
+        for (int attempt = 1; attempt <= MAX_SNAPSHOT_ATTEMPTS; attempt++) {
+            boolean consistent;
+            Nxt.getStores().beginSnapshot();
+            try {
+                response = apiRequestHandler.processRequest(req);
+            } finally {
+                consistent = Nxt.getStores().endSnapshot();
+            }
+            if (consistent) {
+                break;
+            }
+        }
+        return response;
+    }
+
 }
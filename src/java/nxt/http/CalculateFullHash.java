@@ -1,6 +1,6 @@
 package nxt.http;
 
-import nxt.crypto.Crypto;
+import nxt.crypto.Digests;
 import nxt.util.Convert;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONStreamAware;
@@ -31,7 +31,7 @@ public final class CalculateFullHash extends APIServlet.APIRequestHandler {
             return MISSING_SIGNATURE_HASH;
         }
 
-        MessageDigest digest = Crypto.sha256();
+        MessageDigest digest = Digests.sha256();
         digest.update(Convert.parseHexString(unsignedBytesString));
         byte[] fullHash = digest.digest(Convert.parseHexString(signatureHashString));
         JSONObject response = new JSONObject();
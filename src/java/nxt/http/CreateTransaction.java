@@ -2,6 +2,7 @@ package nxt.http;
 
 import nxt.*;
 import nxt.crypto.Crypto;
+import nxt.crypto.Digests;
 import nxt.crypto.EncryptedData;
 import nxt.util.Convert;
 import org.json.simple.JSONObject;
@@ -152,7 +153,7 @@ abstract class CreateTransaction extends APIServlet.APIRequestHandler {
                 response.put("transaction", transaction.getStringId());
                 response.put("fullHash", transaction.getFullHash());
                 response.put("transactionBytes", Convert.toHexString(transaction.getBytes()));
-                response.put("signatureHash", Convert.toHexString(Crypto.sha256().digest(transaction.getSignature())));
+                response.put("signatureHash", Convert.toHexString(Digests.sha256(transaction.getSignature())));
                 if (broadcast) {
                     Nxt.getTransactionProcessor().broadcast(transaction);
                     response.put("broadcasted", true);
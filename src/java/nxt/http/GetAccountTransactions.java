@@ -11,12 +11,14 @@ import org.json.simple.JSONStreamAware;
 
 import javax.servlet.http.HttpServletRequest;
 
+import static nxt.http.JSONResponses.INCORRECT_CONTINUATION_TOKEN;
+
 public final class GetAccountTransactions extends APIServlet.APIRequestHandler {
 
     static final GetAccountTransactions instance = new GetAccountTransactions();
 
     private GetAccountTransactions() {
-        super(new APITag[] {APITag.ACCOUNTS}, "account", "timestamp", "type", "subtype", "firstIndex", "lastIndex", "numberOfConfirmations");
+        super(new APITag[] {APITag.ACCOUNTS}, "account", "timestamp", "type", "subtype", "firstIndex", "lastIndex", "limit", "continuationToken", "numberOfConfirmations");
     }
 
     @Override
@@ -41,17 +43,32 @@ public final class GetAccountTransactions extends APIServlet.APIRequestHandler {
 
         int firstIndex = ParameterParser.getFirstIndex(req);
         int lastIndex = ParameterParser.getLastIndex(req);
+        int limit = ParameterParser.getLimit(req);
 
+        JSONObject response = new JSONObject();
         JSONArray transactions = new JSONArray();
-        try (NxtIterator<? extends Transaction> iterator = Nxt.getBlockchain().getTransactions(account, numberOfConfirmations, type, subtype, timestamp,
-                firstIndex, lastIndex)) {
+        NxtIterator<? extends Transaction> page;
+        if (limit > 0) {
+            try {
+                page = Nxt.getBlockchain().getTransactions(account, numberOfConfirmations, type, subtype, timestamp,
+                        ParameterParser.getContinuationToken(req), limit);
+            } catch (IllegalArgumentException e) {
+                throw new ParameterException(INCORRECT_CONTINUATION_TOKEN);
+            }
+        } else {
+            page = Nxt.getBlockchain().getTransactions(account, numberOfConfirmations, type, subtype, timestamp,
+                    firstIndex, lastIndex);
+        }
+        try (NxtIterator<? extends Transaction> iterator = page) {
             while (iterator.hasNext()) {
                 Transaction transaction = iterator.next();
                 transactions.add(JSONData.transaction(transaction));
             }
+            if (iterator.getContinuationToken() != null) {
+                response.put("continuationToken", iterator.getContinuationToken());
+            }
         }
 
-        JSONObject response = new JSONObject();
         response.put("transactions", transactions);
         return response;
 
@@ -1,6 +1,7 @@
 package nxt.http;
 
 import nxt.Asset;
+import nxt.NxtException;
 import nxt.db.NxtIterator;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
@@ -8,27 +9,43 @@ import org.json.simple.JSONStreamAware;
 
 import javax.servlet.http.HttpServletRequest;
 
+import static nxt.http.JSONResponses.INCORRECT_CONTINUATION_TOKEN;
+
 public final class GetAllAssets extends APIServlet.APIRequestHandler {
 
     static final GetAllAssets instance = new GetAllAssets();
 
     private GetAllAssets() {
-        super(new APITag[] {APITag.AE}, "firstIndex", "lastIndex");
+        super(new APITag[] {APITag.AE}, "firstIndex", "lastIndex", "limit", "continuationToken");
     }
 
     @Override
-    JSONStreamAware processRequest(HttpServletRequest req) {
+    JSONStreamAware processRequest(HttpServletRequest req) throws NxtException {
 
         int firstIndex = ParameterParser.getFirstIndex(req);
         int lastIndex = ParameterParser.getLastIndex(req);
+        int limit = ParameterParser.getLimit(req);
 
         JSONObject response = new JSONObject();
         JSONArray assetsJSONArray = new JSONArray();
         response.put("assets", assetsJSONArray);
-        try (NxtIterator<Asset> assets = Asset.getAllAssets(firstIndex, lastIndex)) {
+        NxtIterator<Asset> page;
+        if (limit > 0) {
+            try {
+                page = Asset.getAllAssets(ParameterParser.getContinuationToken(req), limit);
+            } catch (IllegalArgumentException e) {
+                throw new ParameterException(INCORRECT_CONTINUATION_TOKEN);
+            }
+        } else {
+            page = Asset.getAllAssets(firstIndex, lastIndex);
+        }
+        try (NxtIterator<Asset> assets = page) {
             while (assets.hasNext()) {
                 assetsJSONArray.add(JSONData.asset(assets.next()));
             }
+            if (assets.getContinuationToken() != null) {
+                response.put("continuationToken", assets.getContinuationToken());
+            }
         }
         return response;
     }
@@ -1,8 +1,8 @@
 package nxt.http;
 
-import fr.cryptohash.Shabal256;
 import nxt.Block;
 import nxt.Nxt;
+import nxt.crypto.Digests;
 import nxt.util.Convert;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONStreamAware;
@@ -31,9 +31,7 @@ public final class GetMiningInfo extends APIServlet.APIRequestHandler {
 		buf.put(lastGenSig);
 		buf.putLong(lastGenerator);
 		
-		Shabal256 md = new Shabal256();
-		md.update(buf.array());
-		byte[] newGenSig = md.digest();
+		byte[] newGenSig = Digests.shabal256(buf.array());
 		
 		response.put("generationSignature", Convert.toHexString(newGenSig));
 		response.put("baseTarget", Long.toString(lastBlock.getBaseTarget()));
@@ -35,14 +35,17 @@ public final class GetUnconfirmedTransactionIds extends APIServlet.APIRequestHan
         }
 
         JSONArray transactionIds = new JSONArray();
-        try (NxtIterator<? extends Transaction> transactionsIterator = Nxt.getTransactionProcessor().getAllUnconfirmedTransactions()) {
-            while (transactionsIterator.hasNext()) {
-                Transaction transaction = transactionsIterator.next();
-                if (accountId != 0 && !(accountId == transaction.getSenderId() || accountId == transaction.getRecipientId())) {
-                    continue;
-                }
+        if (accountId != 0) {
+            for (Transaction transaction : Nxt.getTransactionProcessor().getUnconfirmedTransactions(accountId)) {
                 transactionIds.add(transaction.getStringId());
             }
+        } else {
+            try (NxtIterator<? extends Transaction> transactionsIterator = Nxt.getTransactionProcessor().getAllUnconfirmedTransactions()) {
+                while (transactionsIterator.hasNext()) {
+                    Transaction transaction = transactionsIterator.next();
+                    transactionIds.add(transaction.getStringId());
+                }
+            }
         }
 
         JSONObject response = new JSONObject();
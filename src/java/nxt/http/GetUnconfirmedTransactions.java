@@ -35,14 +35,17 @@ public final class GetUnconfirmedTransactions extends APIServlet.APIRequestHandl
         }
 
         JSONArray transactions = new JSONArray();
-        try (NxtIterator<? extends Transaction> transactionsIterator = Nxt.getTransactionProcessor().getAllUnconfirmedTransactions()) {
-            while (transactionsIterator.hasNext()) {
-                Transaction transaction = transactionsIterator.next();
-                if (accountId != 0 && !(accountId == transaction.getSenderId() || accountId == transaction.getRecipientId())) {
-                    continue;
-                }
+        if (accountId != 0) {
+            for (Transaction transaction : Nxt.getTransactionProcessor().getUnconfirmedTransactions(accountId)) {
                 transactions.add(JSONData.unconfirmedTransaction(transaction));
             }
+        } else {
+            try (NxtIterator<? extends Transaction> transactionsIterator = Nxt.getTransactionProcessor().getAllUnconfirmedTransactions()) {
+                while (transactionsIterator.hasNext()) {
+                    Transaction transaction = transactionsIterator.next();
+                    transactions.add(JSONData.unconfirmedTransaction(transaction));
+                }
+            }
         }
 
         JSONObject response = new JSONObject();
@@ -2,7 +2,7 @@ package nxt.http;
 
 import nxt.*;
 import nxt.at.AT_API_Helper;
-import nxt.crypto.Crypto;
+import nxt.crypto.Digests;
 import nxt.crypto.EncryptedData;
 import nxt.peer.Hallmark;
 import nxt.peer.Peer;
@@ -352,7 +352,7 @@ public final class JSONData {
         byte[] signature = Convert.emptyToNull(transaction.getSignature());
         if (signature != null) {
             json.put("signature", Convert.toHexString(signature));
-            json.put("signatureHash", Convert.toHexString(Crypto.sha256().digest(signature)));
+            json.put("signatureHash", Convert.toHexString(Digests.sha256(signature)));
             json.put("fullHash", transaction.getFullHash());
             json.put("transaction", transaction.getStringId());
         }
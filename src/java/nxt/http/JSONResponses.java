@@ -123,6 +123,7 @@ public final class JSONResponses {
     public static final JSONStreamAware INCORRECT_HEIGHT = incorrect("height");
     public static final JSONStreamAware MISSING_HEIGHT = missing("height");
     public static final JSONStreamAware INCORRECT_PLAIN_MESSAGE = incorrect("messageToEncrypt");
+    public static final JSONStreamAware INCORRECT_CONTINUATION_TOKEN = incorrect("continuationToken");
 
     public static final JSONStreamAware INCORRECT_AUTOMATED_TRANSACTION_NAME_LENGTH = incorrect("description", "(length must not exceed " + Constants.MAX_AUTOMATED_TRANSACTION_NAME_LENGTH+ " characters)");
     public static final JSONStreamAware INCORRECT_AUTOMATED_TRANSACTION_DESCRIPTION_LENGTH = incorrect("description", "(length must not exceed " + Constants.MAX_AUTOMATED_TRANSACTION_DESCRIPTION_LENGTH + " characters)");
@@ -22,6 +22,9 @@ final class ParameterParser {
 
     private static final Logger logger = LoggerFactory.getLogger(ParameterParser.class);
 
+    /** Largest page size, further rows are read with the continuation token */
+    static final int MAX_LIMIT = 1000;
+
     static Alias getAlias(HttpServletRequest req) throws ParameterException {
         long aliasId;
         try {
@@ -400,6 +403,22 @@ final class ParameterParser {
         return lastIndex;
     }
 
+    /**
+     * @return the page size for keyset pagination, at most {@link #MAX_LIMIT}, 0 to page with firstIndex and lastIndex
+     * instead
+     */
+    static int getLimit(HttpServletRequest req) {
+        try {
+            return Math.min(Math.max(0, Integer.parseInt(req.getParameter("limit"))), MAX_LIMIT);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    static String getContinuationToken(HttpServletRequest req) {
+        return Convert.emptyToNull(req.getParameter("continuationToken"));
+    }
+
     static int getNumberOfConfirmations(HttpServletRequest req) throws ParameterException {
         String numberOfConfirmationsValue = Convert.emptyToNull(req.getParameter("numberOfConfirmations"));
         if (numberOfConfirmationsValue != null) {
@@ -3,6 +3,7 @@ package nxt.http;
 import nxt.NxtException;
 import nxt.Transaction;
 import nxt.crypto.Crypto;
+import nxt.crypto.Digests;
 import nxt.util.Convert;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONStreamAware;
@@ -53,7 +54,7 @@ public final class SignTransaction extends APIServlet.APIRequestHandler {
             response.put("transaction", transaction.getStringId());
             response.put("fullHash", transaction.getFullHash());
             response.put("transactionBytes", Convert.toHexString(transaction.getBytes()));
-            response.put("signatureHash", Convert.toHexString(Crypto.sha256().digest(transaction.getSignature())));
+            response.put("signatureHash", Convert.toHexString(Digests.sha256(transaction.getSignature())));
             response.put("verify", transaction.verifySignature() && transaction.verifyPublicKey());
         } catch (NxtException.ValidationException|RuntimeException e) {
             logger.debug(e.getMessage(), e);
@@ -1,6 +1,7 @@
 package nxt.peer;
 
 import nxt.Block;
+import nxt.BlockBatch;
 import nxt.Constants;
 import nxt.Nxt;
 import nxt.util.Convert;
@@ -8,6 +9,9 @@ import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONStreamAware;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -21,12 +25,14 @@ final class GetNextBlocks extends PeerServlet.PeerRequestHandler {
     @Override
     JSONStreamAware processRequest(JSONObject request, Peer peer) {
 
-        JSONObject response = new JSONObject();
-
         List<Block> nextBlocks = new ArrayList<>();
         int totalLength = 0;
         long blockId = Convert.parseUnsignedLong((String) request.get("blockId"));
-        List<? extends Block> blocks = Nxt.getBlockchain().getBlocksAfter(blockId, 1440);
+        int limit = 1440;
+        if (request.get("limit") instanceof Long) {
+            limit = (int) Math.max(1, Math.min(limit, (Long) request.get("limit")));
+        }
+        List<? extends Block> blocks = Nxt.getBlockchain().getBlocksAfter(blockId, limit);
 
         for (Block block : blocks) {
             int length = Constants.BLOCK_HEADER_LENGTH + block.getPayloadLength();
@@ -37,13 +43,39 @@ final class GetNextBlocks extends PeerServlet.PeerRequestHandler {
             totalLength += length;
         }
 
+        if (Boolean.TRUE.equals(request.get("binary")) && BlockBatch.isEncodable(nextBlocks)) {
+            return new BinaryNextBlocks(nextBlocks);
+        }
+        return getJSONResponse(nextBlocks);
+    }
+
+    private static JSONObject getJSONResponse(List<Block> nextBlocks) {
+        JSONObject response = new JSONObject();
         JSONArray nextBlocksArray = new JSONArray();
         for (Block nextBlock : nextBlocks) {
             nextBlocksArray.add(nextBlock.getJSONObject());
         }
         response.put("nextBlocks", nextBlocksArray);
-
         return response;
     }
 
+    private static final class BinaryNextBlocks implements PeerServlet.BinaryResponse {
+
+        private final List<Block> nextBlocks;
+
+        private BinaryNextBlocks(List<Block> nextBlocks) {
+            this.nextBlocks = nextBlocks;
+        }
+
+        @Override
+        public void writeBinary(OutputStream out) throws IOException {
+            BlockBatch.write(nextBlocks, out);
+        }
+
+        @Override
+        public void writeJSONString(Writer out) throws IOException {
+            getJSONResponse(nextBlocks).writeJSONString(out);
+        }
+    }
+
 }
@@ -3,12 +3,27 @@ package nxt.peer;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONStreamAware;
 
+import java.io.IOException;
+import java.io.InputStream;
+
 public interface Peer extends Comparable<Peer> {
 
     public static enum State {
         NON_CONNECTED, CONNECTED, DISCONNECTED
     }
 
+    /**
+     * Reads the response of a request which the peer may answer in binary form. Peers which don't know the binary form
+     * of a request answer it with JSON as usual.
+     */
+    interface ResponseReader<T> {
+
+        T readBinary(InputStream in) throws IOException;
+
+        T readJSON(JSONObject response);
+
+    }
+
     String getPeerAddress();
 
     String getAnnouncedAddress();
@@ -53,6 +68,9 @@ public interface Peer extends Comparable<Peer> {
 
     JSONObject send(JSONStreamAware request);
 
+    /** Same as {@link #send(JSONStreamAware)}, the response is read by reader. Returns null on errors */
+    <T> T send(JSONStreamAware request, ResponseReader<T> reader);
+
     /** Sends a simple GET-Request to the peer and returns the JSON-Object of the response */
     JSONObject sendGetRequest(String pathAndQuery);
 
@@ -21,6 +21,20 @@ final class PeerImpl implements Peer {
 
     private static final Logger logger = LoggerFactory.getLogger(PeerImpl.class);
 
+    private static final ResponseReader<JSONObject> JSON_RESPONSE = new ResponseReader<JSONObject>() {
+
+        @Override
+        public JSONObject readBinary(InputStream in) throws IOException {
+            throw new IOException("Unexpected binary response");
+        }
+
+        @Override
+        public JSONObject readJSON(JSONObject response) {
+            return response;
+        }
+
+    };
+
     private final String peerAddress;
     private volatile String announcedAddress;
     private volatile int port;
@@ -277,11 +291,17 @@ final class PeerImpl implements Peer {
 
     @Override
     public JSONObject send(final JSONStreamAware request) {
+        return send(request, JSON_RESPONSE);
+    }
 
-        JSONObject response;
+    @Override
+    public <T> T send(final JSONStreamAware request, final ResponseReader<T> responseReader) {
+
+        T response;
 
         String log = null;
         boolean showLog = false;
+        boolean reusable = false;
         HttpURLConnection connection = null;
 
         try {
@@ -321,7 +341,17 @@ final class PeerImpl implements Peer {
                 if ("gzip".equals(connection.getHeaderField("Content-Encoding"))) {
                     responseStream = new GZIPInputStream(cis);
                 }
-                if ((Peers.communicationLoggingMask & Peers.LOGGING_MASK_200_RESPONSES) != 0) {
+                String contentType = connection.getContentType();
+                if (contentType != null && contentType.startsWith(PeerServlet.BINARY_CONTENT_TYPE)) {
+                    try (InputStream inputStream = new BufferedInputStream(responseStream)) {
+                        response = responseReader.readBinary(inputStream);
+                        drain(inputStream);
+                    }
+                    if ((Peers.communicationLoggingMask & Peers.LOGGING_MASK_200_RESPONSES) != 0) {
+                        log += " >>> [binary response, length: " + cis.getCount() + "]";
+                        showLog = true;
+                    }
+                } else if ((Peers.communicationLoggingMask & Peers.LOGGING_MASK_200_RESPONSES) != 0) {
                     ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
                     byte[] buffer = new byte[1024];
                     int numberOfBytes;
@@ -336,13 +366,15 @@ final class PeerImpl implements Peer {
                     }
                     log += " >>> " + responseValue;
                     showLog = true;
-                    response = (JSONObject) JSONValue.parse(responseValue);
+                    response = responseReader.readJSON((JSONObject) JSONValue.parse(responseValue));
                 } else {
                     try (Reader reader = new BufferedReader(new InputStreamReader(responseStream, "UTF-8"))) {
-                        response = (JSONObject)JSONValue.parse(reader);
+                        response = responseReader.readJSON((JSONObject) JSONValue.parse(reader));
+                        drain(responseStream);
                     }
                 }
                 updateDownloadedVolume(cis.getCount());
+                reusable = true;
             } else {
 
                 if ((Peers.communicationLoggingMask & Peers.LOGGING_MASK_NON200_RESPONSES) != 0) {
@@ -376,7 +408,8 @@ final class PeerImpl implements Peer {
             logger.info(log + "\n");
         }
 
-        if (connection != null) {
+        // a connection whose response was read completely goes back to the keep-alive cache when not disconnected
+        if (connection != null && ! (reusable && Peers.keepAlive)) {
             connection.disconnect();
         }
 
@@ -390,6 +423,7 @@ final class PeerImpl implements Peer {
 
         String log = null;
         boolean showLog = false;
+        boolean reusable = false;
         HttpURLConnection connection = null;
 
         try {
@@ -436,9 +470,11 @@ final class PeerImpl implements Peer {
                 } else {
                     try (Reader reader = new BufferedReader(new InputStreamReader(responseStream, "UTF-8"))) {
                         response = (JSONObject)JSONValue.parse(reader);
+                        drain(responseStream);
                     }
                 }
                 updateDownloadedVolume(cis.getCount());
+                reusable = true;
             } else {
 
                 if ((Peers.communicationLoggingMask & Peers.LOGGING_MASK_NON200_RESPONSES) != 0) {
@@ -471,13 +507,23 @@ final class PeerImpl implements Peer {
             logger.info(log + "\n");
         }
 
-        if (connection != null) {
+        // a connection whose response was read completely goes back to the keep-alive cache when not disconnected
+        if (connection != null && ! (reusable && Peers.keepAlive)) {
             connection.disconnect();
         }
 
         return response;
     }
 
+    /**
+     * Reads what is left of a response, e.g. the gzip trailer after the end of the JSON.
+     */
+    private static void drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[256];
+        while (in.read(buffer) >= 0) {
+        }
+    }
+
     @Override
     public int compareTo(Peer o) {
         if (getWeight() > o.getWeight()) {
@@ -25,10 +25,20 @@ public final class PeerServlet extends HttpServlet {
 
     private static final Logger logger = LoggerFactory.getLogger(PeerServlet.class);
 
+    static final String BINARY_CONTENT_TYPE = "application/octet-stream";
+
     abstract static class PeerRequestHandler {
         abstract JSONStreamAware processRequest(JSONObject request, Peer peer);
     }
 
+    /**
+     * Response which is sent as {@link #BINARY_CONTENT_TYPE} instead of JSON. Handlers only return it to peers which
+     * asked for the binary form.
+     */
+    interface BinaryResponse extends JSONStreamAware {
+        void writeBinary(OutputStream out) throws IOException;
+    }
+
     private static final Map<String,PeerRequestHandler> peerRequestHandlers;
 
     static {
@@ -125,15 +135,24 @@ public final class PeerServlet extends HttpServlet {
             response = json;
         }
 
-        resp.setContentType("text/plain; charset=UTF-8");
         try {
             long byteCount;
-            if (isGzipEnabled) {
+            if (response instanceof BinaryResponse) {
+                resp.setContentType(BINARY_CONTENT_TYPE);
+                CountingOutputStream cos = new CountingOutputStream(resp.getOutputStream());
+                try (OutputStream out = new BufferedOutputStream(cos)) {
+                    ((BinaryResponse) response).writeBinary(out);
+                }
+                byteCount = isGzipEnabled ? ((Response) ((CompressedResponseWrapper) resp).getResponse()).getContentCount()
+                        : cos.getCount();
+            } else if (isGzipEnabled) {
+                resp.setContentType("text/plain; charset=UTF-8");
                 try (Writer writer = new OutputStreamWriter(resp.getOutputStream(), "UTF-8")) {
                     response.writeJSONString(writer);
                 }
                 byteCount = ((Response) ((CompressedResponseWrapper) resp).getResponse()).getContentCount();
             } else {
+                resp.setContentType("text/plain; charset=UTF-8");
                 CountingOutputStream cos = new CountingOutputStream(resp.getOutputStream());
                 try (Writer writer = new OutputStreamWriter(cos, "UTF-8")) {
                     response.writeJSONString(writer);
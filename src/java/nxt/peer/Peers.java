@@ -57,6 +57,7 @@ public final class Peers {
 
     static final int connectTimeout;
     static final int readTimeout;
+    static final boolean keepAlive;
     static final int blacklistingPeriod;
     static final boolean getMorePeers;
 
@@ -180,6 +181,12 @@ public final class Peers {
         maxNumberOfConnectedPublicPeers = Nxt.getIntProperty("nxt.maxNumberOfConnectedPublicPeers");
         connectTimeout = Nxt.getIntProperty("nxt.connectTimeout");
         readTimeout = Nxt.getIntProperty("nxt.readTimeout");
+        keepAlive = Nxt.getBooleanProperty("nxt.peerKeepAlive");
+        int maxConnectionsPerPeer = Nxt.getIntProperty("nxt.maxConnectionsPerPeer");
+        if (keepAlive && maxConnectionsPerPeer > 0 && System.getProperty("http.maxConnections") == null) {
+            // size of the JDK's keep-alive cache per host, read when the first connection is made
+            System.setProperty("http.maxConnections", String.valueOf(maxConnectionsPerPeer));
+        }
         enableHallmarkProtection = Nxt.getBooleanProperty("nxt.enableHallmarkProtection");
         pushThreshold = Nxt.getIntProperty("nxt.pushThreshold");
         pullThreshold = Nxt.getIntProperty("nxt.pullThreshold");
@@ -1,6 +1,7 @@
 package nxt.util;
 
 import fr.cryptohash.Shabal256;
+import nxt.crypto.Digests;
 
 import java.nio.ByteBuffer;
 import java.util.Arrays;
@@ -21,7 +22,7 @@ public class MiningPlot {
 		base_buffer.putLong(addr);
 		base_buffer.putLong(nonce);
 		byte[] base = base_buffer.array();
-		Shabal256 md = new Shabal256();
+		Shabal256 md = Digests.shabal256();
 		byte[] gendata = new byte[PLOT_SIZE + base.length];
 		System.arraycopy(base, 0, gendata, PLOT_SIZE, base.length);
 		for(int i = PLOT_SIZE; i > 0; i -= HASH_SIZE) {
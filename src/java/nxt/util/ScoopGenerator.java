@@ -0,0 +1,171 @@
+package nxt.util;
+
+import fr.cryptohash.Shabal256;
+import nxt.crypto.Shabal256Lanes;
+
+import java.math.BigInteger;
+
+/**
+ * Verification-only counterpart of {@link MiningPlot}.
+ *
+ * The final plot hash covers the whole nonce, so all hashes of the chain still have to be calculated, but only the
+ * requested scoop is xor-ed out of it. All buffers and the digest are thread-local scratch space, nothing is allocated
+ * per call apart from the resulting hit.
+ *
+ * Batches of nonces are generated {@link #LANES} at a time with {@link Shabal256Lanes}, the hash chains of all nonces
+ * have identical lengths so they can run in lockstep.
+ */
+public final class ScoopGenerator {
+
+    /** Number of plots generated together by {@link #calculateHits} */
+    public static final int LANES = 16;
+
+    private static final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+    private static final ThreadLocal<LaneScratch> laneScratch = ThreadLocal.withInitial(LaneScratch::new);
+
+    /**
+     * Writes scoop number pos of the plot for addr and nonce to out at offset off.
+     */
+    public static void generateScoop(long addr, long nonce, int pos, byte[] out, int off) {
+        Scratch s = scratch.get();
+        s.generate(addr, nonce, pos, out, off);
+    }
+
+    /**
+     * Same as hashing genSig and the generated scoop with Shabal256 and reading the first 8 bytes of the digest as
+     * unsigned little-endian number.
+     */
+    public static BigInteger calculateHit(long addr, long nonce, byte[] genSig, int pos) {
+        Scratch s = scratch.get();
+        s.generate(addr, nonce, pos, s.scoop, 0);
+        return calculateHit(s, genSig, s.scoop, 0);
+    }
+
+    public static BigInteger calculateHit(byte[] genSig, byte[] scoopData, int off) {
+        return calculateHit(scratch.get(), genSig, scoopData, off);
+    }
+
+    /**
+     * Calculates the hits of count nonces, at most {@link #LANES} of them are generated in one pass.
+     */
+    public static BigInteger[] calculateHits(long[] addrs, long[] nonces, byte[][] genSigs, int[] scoops, int count) {
+        BigInteger[] hits = new BigInteger[count];
+        if (count == 1) {
+            hits[0] = calculateHit(addrs[0], nonces[0], genSigs[0], scoops[0]);
+            return hits;
+        }
+        LaneScratch ls = laneScratch.get();
+        Scratch s = scratch.get();
+        for (int start = 0; start < count; start += LANES) {
+            int n = Math.min(LANES, count - start);
+            ls.generate(addrs, nonces, scoops, start, n);
+            for (int i = 0; i < n; i++) {
+                hits[start + i] = calculateHit(s, genSigs[start + i], ls.scoops[i], 0);
+            }
+        }
+        return hits;
+    }
+
+    private static BigInteger calculateHit(Scratch s, byte[] genSig, byte[] scoopData, int off) {
+        Shabal256 md = s.md;
+        md.reset();
+        md.update(genSig);
+        md.update(scoopData, off, MiningPlot.SCOOP_SIZE);
+        md.digest(s.hash, 0, MiningPlot.HASH_SIZE);
+        return toUnsignedBigInteger(readLongLE(s.hash, 0));
+    }
+
+    static long readLongLE(byte[] data, int off) {
+        long value = 0;
+        for (int i = 7; i >= 0; i--) {
+            value = (value << 8) | (data[off + i] & 0xFF);
+        }
+        return value;
+    }
+
+    static BigInteger toUnsignedBigInteger(long value) {
+        if (value >= 0) {
+            return BigInteger.valueOf(value);
+        }
+        return BigInteger.valueOf(value >>> 1).shiftLeft(1).add(BigInteger.valueOf(value & 1));
+    }
+
+    private static final class Scratch {
+
+        private final byte[] gendata = new byte[MiningPlot.PLOT_SIZE + 16];
+        private final byte[] hash = new byte[MiningPlot.HASH_SIZE];
+        private final byte[] scoop = new byte[MiningPlot.SCOOP_SIZE];
+        private final Shabal256 md = new Shabal256();
+
+        private void generate(long addr, long nonce, int pos, byte[] out, int off) {
+            int plotSize = MiningPlot.PLOT_SIZE;
+            int hashSize = MiningPlot.HASH_SIZE;
+            for (int i = 0; i < 8; i++) {
+                gendata[plotSize + i] = (byte) (addr >>> (56 - 8 * i));
+                gendata[plotSize + 8 + i] = (byte) (nonce >>> (56 - 8 * i));
+            }
+            md.reset();
+            for (int i = plotSize; i > 0; i -= hashSize) {
+                int len = plotSize + 16 - i;
+                if (len > MiningPlot.HASH_CAP) {
+                    len = MiningPlot.HASH_CAP;
+                }
+                md.update(gendata, i, len);
+                md.digest(gendata, i - hashSize, hashSize);
+            }
+            md.update(gendata, 0, gendata.length);
+            md.digest(hash, 0, hashSize);
+            int start = pos * MiningPlot.SCOOP_SIZE;
+            for (int i = 0; i < MiningPlot.SCOOP_SIZE; i++) {
+                out[off + i] = (byte) (gendata[start + i] ^ hash[i % hashSize]);
+            }
+        }
+    }
+
+    private static final class LaneScratch {
+
+        private final byte[][] gendata = new byte[LANES][MiningPlot.PLOT_SIZE + 16];
+        private final byte[][] hashes = new byte[LANES][MiningPlot.HASH_SIZE];
+        private final byte[][] scoops = new byte[LANES][MiningPlot.SCOOP_SIZE];
+        private final Shabal256Lanes md = new Shabal256Lanes(LANES);
+
+        /**
+         * Generates the scoops of n nonces starting at index start. Unused lanes repeat the first nonce.
+         */
+        private void generate(long[] addrs, long[] nonces, int[] scoops, int start, int n) {
+            int plotSize = MiningPlot.PLOT_SIZE;
+            int hashSize = MiningPlot.HASH_SIZE;
+            for (int l = 0; l < LANES; l++) {
+                int index = start + (l < n ? l : 0);
+                byte[] data = gendata[l];
+                for (int i = 0; i < 8; i++) {
+                    data[plotSize + i] = (byte) (addrs[index] >>> (56 - 8 * i));
+                    data[plotSize + 8 + i] = (byte) (nonces[index] >>> (56 - 8 * i));
+                }
+            }
+            md.reset();
+            for (int i = plotSize; i > 0; i -= hashSize) {
+                int len = plotSize + 16 - i;
+                if (len > MiningPlot.HASH_CAP) {
+                    len = MiningPlot.HASH_CAP;
+                }
+                md.update(gendata, i, len);
+                md.digest(gendata, i - hashSize);
+            }
+            md.update(gendata, 0, plotSize + 16);
+            md.digest(hashes, 0);
+            for (int l = 0; l < n; l++) {
+                byte[] data = gendata[l];
+                byte[] hash = hashes[l];
+                byte[] out = this.scoops[l];
+                int offset = scoops[start + l] * MiningPlot.SCOOP_SIZE;
+                for (int i = 0; i < MiningPlot.SCOOP_SIZE; i++) {
+                    out[i] = (byte) (data[offset + i] ^ hash[i % hashSize]);
+                }
+            }
+        }
+    }
+
+    private ScoopGenerator() {} //never
+
+}
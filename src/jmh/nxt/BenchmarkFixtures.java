@@ -0,0 +1,72 @@
+package nxt;
+
+import nxt.crypto.Crypto;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic fixture data for the benchmarks. Everything is derived from fixed seeds and a fixed secret phrase so
+ * repeated runs work on identical input.
+ */
+final class BenchmarkFixtures {
+
+    static final String SECRET_PHRASE = "burst benchmark fixture secret phrase";
+    static final byte[] PUBLIC_KEY = Crypto.getPublicKey(SECRET_PHRASE);
+
+    private static final long SEED = 0x5EED5EEDL;
+    private static final int TIMESTAMP = 100000000;
+    private static final int HEIGHT = 500000;
+
+    /**
+     * Signed ordinary payments to random recipients, sorted by id as they would be in a block.
+     */
+    static List<TransactionImpl> transactions(int count) throws NxtException.ValidationException {
+        Random random = new Random(SEED);
+        List<TransactionImpl> transactions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            TransactionImpl transaction = new TransactionImpl.BuilderImpl((byte) 1, PUBLIC_KEY,
+                    (1 + random.nextInt(1000)) * Constants.ONE_NXT, Constants.ONE_NXT, TIMESTAMP + i, (short) 1440,
+                    Attachment.ORDINARY_PAYMENT)
+                    .recipientId(random.nextLong())
+                    .height(HEIGHT)
+                    .build();
+            transaction.sign(SECRET_PHRASE);
+            transactions.add(transaction);
+        }
+        transactions.sort(Comparator.comparingLong(TransactionImpl::getId));
+        return transactions;
+    }
+
+    /**
+     * A signed block carrying the given transactions.
+     */
+    static BlockImpl block(List<TransactionImpl> transactions) throws NxtException.ValidationException {
+        Random random = new Random(SEED);
+        MessageDigest digest = Crypto.sha256();
+        long totalAmountNQT = 0;
+        long totalFeeNQT = 0;
+        int payloadLength = 0;
+        for (TransactionImpl transaction : transactions) {
+            totalAmountNQT += transaction.getAmountNQT();
+            totalFeeNQT += transaction.getFeeNQT();
+            payloadLength += transaction.getSize();
+            digest.update(transaction.getBytes());
+        }
+        byte[] generationSignature = new byte[32];
+        random.nextBytes(generationSignature);
+        byte[] previousBlockHash = new byte[32];
+        random.nextBytes(previousBlockHash);
+        BlockImpl block = new BlockImpl(3, TIMESTAMP + transactions.size(), random.nextLong(), totalAmountNQT, totalFeeNQT,
+                payloadLength, digest.digest(), PUBLIC_KEY, generationSignature, null, previousBlockHash, transactions,
+                random.nextLong() >>> 1, null);
+        block.sign(SECRET_PHRASE);
+        return block;
+    }
+
+    private BenchmarkFixtures() {} // never
+
+}
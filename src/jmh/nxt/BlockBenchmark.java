@@ -0,0 +1,53 @@
+package nxt;
+
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON round trip of a block as exchanged with peers, with an empty and a full block.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlockBenchmark {
+
+    @Param({"0", "255"})
+    public int transactions;
+
+    private BlockImpl block;
+    private JSONObject json;
+
+    @Setup
+    public void setup() throws NxtException.ValidationException {
+        block = BenchmarkFixtures.block(BenchmarkFixtures.transactions(transactions));
+        // parsed from text like a block received from a peer
+        json = (JSONObject) JSONValue.parse(block.getJSONObject().toJSONString());
+    }
+
+    @Benchmark
+    public BlockImpl parseBlock() throws NxtException.ValidationException {
+        return BlockImpl.parseBlock(json);
+    }
+
+    @Benchmark
+    public JSONObject getJSONObject() {
+        return block.getJSONObject();
+    }
+
+}
@@ -0,0 +1,57 @@
+package nxt;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hit calculation as done when verifying a block, once generating the scoop and once with a scoop supplied by the GPU.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeneratorBenchmark {
+
+    private static final long ACCOUNT_ID = 0x1234567890ABCDEFL;
+    private static final long NONCE = 42;
+    private static final int SCOOP = 1234;
+
+    private Generator generator;
+    private byte[] generationSignature;
+    private byte[] scoopData;
+
+    @Setup
+    public void setup() {
+        generator = new GeneratorImpl();
+        Random random = new Random(0x5EED5EEDL);
+        generationSignature = new byte[32];
+        random.nextBytes(generationSignature);
+        scoopData = new byte[64];
+        random.nextBytes(scoopData);
+    }
+
+    @Benchmark
+    public BigInteger calculateHit() {
+        return generator.calculateHit(ACCOUNT_ID, NONCE, generationSignature, SCOOP);
+    }
+
+    @Benchmark
+    public BigInteger calculateHitFromScoop() {
+        return generator.calculateHit(ACCOUNT_ID, NONCE, generationSignature, scoopData);
+    }
+
+}
@@ -0,0 +1,46 @@
+package nxt;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of a signed ordinary payment.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionBenchmark {
+
+    private TransactionImpl transaction;
+    private byte[] bytes;
+
+    @Setup
+    public void setup() throws NxtException.ValidationException {
+        transaction = BenchmarkFixtures.transactions(1).get(0);
+        bytes = transaction.getBytes();
+    }
+
+    @Benchmark
+    public TransactionImpl parseTransaction() throws NxtException.ValidationException {
+        return TransactionImpl.parseTransaction(bytes);
+    }
+
+    @Benchmark
+    public byte[] getBytes() {
+        return transaction.getBytes();
+    }
+
+}
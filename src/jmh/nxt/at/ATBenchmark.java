@@ -0,0 +1,67 @@
+package nxt.at;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single AT run of the maximum number of steps, executing an endless arithmetic loop.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ATBenchmark {
+
+    private AT_Machine_State state;
+
+    @Setup
+    public void setup() {
+        ByteBuffer code = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+        // @1 = 3
+        code.put(OpCode.e_op_code_SET_VAL).putInt(1).putLong(3);
+        int loop = code.position();
+        // @0 += @1, @0 ^= @1, @1 *= @1, @1++, jump loop
+        code.put(OpCode.e_op_code_ADD_DAT).putInt(0).putInt(1);
+        code.put(OpCode.e_op_code_XOR_DAT).putInt(0).putInt(1);
+        code.put(OpCode.e_op_code_MUL_DAT).putInt(1).putInt(1);
+        code.put(OpCode.e_op_code_INC_DAT).putInt(1);
+        code.put(OpCode.e_op_code_JMP_ADR).putInt(loop);
+        int codeLength = code.position();
+
+        ByteBuffer creation = ByteBuffer.allocate(64 + codeLength).order(ByteOrder.LITTLE_ENDIAN);
+        creation.putShort((short) 1); // version
+        creation.putShort((short) 0); // reserved
+        creation.putShort((short) 1); // code pages
+        creation.putShort((short) 1); // data pages
+        creation.putShort((short) 1); // call stack pages
+        creation.putShort((short) 1); // user stack pages
+        creation.putLong(0); // minimum activation amount
+        creation.put((byte) codeLength);
+        creation.put(code.array(), 0, codeLength);
+        creation.put((byte) 0); // no initial data
+
+        state = new AT_Machine_State(new byte[8], new byte[8], creation.array(), 0);
+        AT_Controller.resetMachine(state);
+    }
+
+    @Benchmark
+    public int runSteps() {
+        state.setG_balance(Long.MAX_VALUE / 2);
+        return AT_Controller.runSteps(state);
+    }
+
+}
@@ -0,0 +1,74 @@
+package nxt.crypto;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signing, signature verification and hashing of a message the size of a typical transaction.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CryptoBenchmark {
+
+    private static final String SECRET_PHRASE = "burst benchmark fixture secret phrase";
+
+    private byte[] message;
+    private byte[] publicKey;
+    private byte[] signature;
+    private final byte[] y = new byte[32];
+    private final byte[] v = new byte[32];
+    private final byte[] h = new byte[32];
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0x5EED5EEDL);
+        message = new byte[176];
+        random.nextBytes(message);
+        publicKey = Crypto.getPublicKey(SECRET_PHRASE);
+        signature = Crypto.sign(message, SECRET_PHRASE);
+        System.arraycopy(signature, 0, v, 0, 32);
+        System.arraycopy(signature, 32, h, 0, 32);
+    }
+
+    @Benchmark
+    public byte[] sha256() {
+        return Crypto.sha256().digest(message);
+    }
+
+    @Benchmark
+    public byte[] sha256ThreadLocal() {
+        return Digests.sha256(message);
+    }
+
+    @Benchmark
+    public byte[] sign() {
+        return Crypto.sign(message, SECRET_PHRASE);
+    }
+
+    @Benchmark
+    public boolean verify() {
+        return Crypto.verify(signature, message, publicKey, true);
+    }
+
+    @Benchmark
+    public byte[] curve25519Verify() {
+        Curve25519.verify(y, v, h, publicKey);
+        return y;
+    }
+
+}
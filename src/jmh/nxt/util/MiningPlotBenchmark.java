@@ -0,0 +1,64 @@
+package nxt.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plot generation, the full plot of a nonce and single scoops generated alone or in lanes. All numbers are per nonce.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class MiningPlotBenchmark {
+
+    private static final int BATCH = ScoopGenerator.LANES;
+
+    private final long[] addrs = new long[BATCH];
+    private final long[] nonces = new long[BATCH];
+    private final byte[][] genSigs = new byte[BATCH][32];
+    private final int[] scoops = new int[BATCH];
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0x5EED5EEDL);
+        for (int i = 0; i < BATCH; i++) {
+            addrs[i] = random.nextLong();
+            nonces[i] = random.nextLong() >>> 1;
+            random.nextBytes(genSigs[i]);
+            scoops[i] = random.nextInt(MiningPlot.SCOOPS_PER_PLOT);
+        }
+    }
+
+    @Benchmark
+    public MiningPlot miningPlot() {
+        return new MiningPlot(addrs[0], nonces[0]);
+    }
+
+    @Benchmark
+    public BigInteger calculateHit() {
+        return ScoopGenerator.calculateHit(addrs[0], nonces[0], genSigs[0], scoops[0]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public BigInteger[] calculateHits() {
+        return ScoopGenerator.calculateHits(addrs, nonces, genSigs, scoops, BATCH);
+    }
+
+}